@@ -1,5 +1,8 @@
 package bidiweb.webchannel.client;
 
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The channel abstraction. See closure API spec.
  */
@@ -52,6 +55,47 @@ public interface AsyncWebChannel {
    */
   <T> void send(T message) throws IllegalArgumentException;
 
+  /**
+   * Sends the messages to the server, in the iteration order of the collection.
+   * This is a non-blocking operation, and more efficient than sending the
+   * messages one by one.
+   *
+   * @param messages The messages to send
+   * @throws IllegalArgumentException if the implementation does not support
+   * the type of any of the messages, in which case none is sent
+   */
+  void sendAll(Collection<?> messages) throws IllegalArgumentException;
+
+  /**
+   * Sends a message to the server. This is a non-blocking operation.
+   *
+   * @param message The message to send
+   * @return a future which completes when the server has acknowledged the
+   * (HTTP request carrying the) message, or fails with
+   * {@link UndeliveredMessageException} when the channel is closed before that.
+   * @throws IllegalArgumentException if the implementation does not support
+   * the message type
+   */
+  <T> CompletableFuture<Void> sendAsync(T message) throws IllegalArgumentException;
+
+  /**
+   * Suspends the delivery of messages, e.g. when the application can't keep up
+   * with the incoming messages. The channel stops reading from the network so
+   * that the server will eventually be pushed back. Messages that have already
+   * been received may still be delivered after this call.
+   *
+   * <p>The pauses nest: the delivery is resumed once every call has been
+   * matched by a {@link #resumeReceiving()}, so that independent flow controls
+   * of the same channel don't undo each other's pauses.
+   */
+  void pauseReceiving();
+
+  /**
+   * Resumes the delivery of messages suspended by {@link #pauseReceiving()},
+   * unless it has been paused more times than resumed.
+   */
+  void resumeReceiving();
+
   /**
    * @return a reference to the (mutable) runtime properties of the channel
    * object.
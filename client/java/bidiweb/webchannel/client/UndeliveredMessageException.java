@@ -0,0 +1,36 @@
+package bidiweb.webchannel.client;
+
+/**
+ * The exception to fail a message send with when the channel is closed before the server has
+ * acknowledged the message.
+ *
+ * @see AsyncWebChannel#sendAsync(Object)
+ */
+public class UndeliveredMessageException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Object undeliveredMessage;
+  private final boolean possiblyDelivered;
+
+  /**
+   * @param undeliveredMessage The message as passed to the send call.
+   * @param possiblyDelivered Whether the message has been sent to the server, which may or may
+   *     not have received it.
+   */
+  public UndeliveredMessageException(Object undeliveredMessage, boolean possiblyDelivered) {
+    super(possiblyDelivered
+        ? "Channel closed before the message was acknowledged"
+        : "Channel closed before the message was sent");
+    this.undeliveredMessage = undeliveredMessage;
+    this.possiblyDelivered = possiblyDelivered;
+  }
+
+  public Object getUndeliveredMessage() {
+    return undeliveredMessage;
+  }
+
+  public boolean isPossiblyDelivered() {
+    return possiblyDelivered;
+  }
+}
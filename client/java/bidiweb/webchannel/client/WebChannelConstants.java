@@ -12,4 +12,6 @@ public interface WebChannelConstants {
   String X_CLIENT_WIRE_PROTOCOL = "X-Client-Wire-Protocol";
 
   String X_HTTP_SESSION_ID = "X-HTTP-Session-Id";
+
+  String X_BACK_CHANNEL_STRIPES = "X-WebChannel-Back-Channel-Stripes";
 }
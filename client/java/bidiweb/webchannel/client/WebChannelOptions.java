@@ -2,6 +2,8 @@ package bidiweb.webchannel.client;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
 import javax.annotation.concurrent.ThreadSafe;
 
 /**
@@ -22,6 +24,53 @@ public final class WebChannelOptions {
   private boolean sendRawJson = false;
   private String httpSessionIdParam;
   private boolean backgroundChannelTest = false;
+  private Executor callbackExecutor;
+  private int callbackQueueCapacity = DEFAULT_CALLBACK_QUEUE_CAPACITY;
+  private CallbackOverflowPolicy callbackOverflowPolicy = CallbackOverflowPolicy.BLOCK;
+  private boolean adaptiveTimeouts = false;
+  private long minRttEstimateMs = DEFAULT_MIN_RTT_ESTIMATE_MS;
+  private long maxRttEstimateMs = DEFAULT_MAX_RTT_ESTIMATE_MS;
+  private long backChannelMaxDurationMs = 0;
+  private long backChannelMaxBytes = 0;
+  private int backChannelStripes = 1;
+  private int autoReconnectMaxAttempts = 0;
+  private boolean speculativeOpen = false;
+  private OpenPriority openPriority = OpenPriority.INTERACTIVE;
+  private int messageTraceSampleInterval = 0;
+  private boolean keepAliveBackChannel = false;
+
+  public static final int DEFAULT_CALLBACK_QUEUE_CAPACITY = 1000;
+
+  public static final long DEFAULT_MIN_RTT_ESTIMATE_MS = 100;
+
+  public static final long DEFAULT_MAX_RTT_ESTIMATE_MS = 3 * 1000;
+
+  /**
+   * What to do when the application callbacks can't keep up with the incoming
+   * messages, i.e. when the callback queue is full.
+   */
+  public enum CallbackOverflowPolicy {
+    /** Stop reading from the back channel until the queue is half empty. */
+    BLOCK,
+
+    /** Drop the incoming messages. */
+    DROP,
+
+    /** Fail the channel with an error. */
+    FAIL
+  }
+
+  /**
+   * The priority of the channel open, when the transport limits the rate of
+   * the opens.
+   */
+  public enum OpenPriority {
+    /** A channel the user is waiting for. */
+    INTERACTIVE,
+
+    /** A channel that can be opened later, e.g. reopened after an error. */
+    BACKGROUND
+  }
 
   private WebChannelOptions() {
   }
@@ -62,6 +111,175 @@ public final class WebChannelOptions {
     return this.backgroundChannelTest;
   }
 
+  /**
+   * @return The executor to invoke the EventHandler callbacks on, in order
+   * (i.e. serially for each channel), or null to invoke the callbacks directly
+   * from the thread that runs the channel.
+   */
+  public Executor getCallbackExecutor() {
+    return this.callbackExecutor;
+  }
+
+  /**
+   * @return The maximum number of messages queued for the callback executor.
+   */
+  public int getCallbackQueueCapacity() {
+    return this.callbackQueueCapacity;
+  }
+
+  public CallbackOverflowPolicy getCallbackOverflowPolicy() {
+    return this.callbackOverflowPolicy;
+  }
+
+  /**
+   * @return Whether to derive the protocol timeouts, i.e. the detection of a
+   * dead back channel, the POST timeouts and the retry delays, from the
+   * round-trip time measured by the channel instead of using fixed values.
+   */
+  public boolean getAdaptiveTimeouts() {
+    return this.adaptiveTimeouts;
+  }
+
+  /**
+   * @return The floor of the round-trip time estimate that adaptive timeouts
+   * are derived from.
+   */
+  public long getMinRttEstimateMs() {
+    return this.minRttEstimateMs;
+  }
+
+  /**
+   * @return The ceiling of the round-trip time estimate that adaptive timeouts
+   * are derived from, which is also the estimate before any measurement.
+   */
+  public long getMaxRttEstimateMs() {
+    return this.maxRttEstimateMs;
+  }
+
+  /**
+   * @return The max duration of a back channel request as enforced by the
+   * server, or 0 if unknown. When known, the next back channel request is
+   * opened shortly before the current one is expected to end, so that server
+   * pushes don't wait for the reconnect.
+   */
+  public long getBackChannelMaxDurationMs() {
+    return this.backChannelMaxDurationMs;
+  }
+
+  /**
+   * @return The max bytes of a back channel response as enforced by the
+   * server, or 0 if unknown. When known, the next back channel request is
+   * opened once most of these bytes have been received.
+   */
+  public long getBackChannelMaxBytes() {
+    return this.backChannelMaxBytes;
+  }
+
+  /**
+   * @return The number of concurrent back channel requests to request from
+   * the server, for a higher downstream throughput. The messages are still
+   * delivered in order. Requires server support, see docs/v8.md.
+   */
+  public int getBackChannelStripes() {
+    return this.backChannelStripes;
+  }
+
+  /**
+   * @return The max number of attempts to resume an open channel after a
+   * transient error, with a new session that carries over the undelivered
+   * messages, before the channel is closed. 0 disables the reconnects.
+   */
+  public int getAutoReconnectMaxAttempts() {
+    return this.autoReconnectMaxAttempts;
+  }
+
+  /**
+   * @return Whether to open the channel concurrently with the channel test,
+   * assuming a streaming connection and switching to the buffered mode if the
+   * test detects a buffering proxy. Ignored with httpSessionIdParam, which the
+   * test provides.
+   */
+  public boolean getSpeculativeOpen() {
+    return this.speculativeOpen;
+  }
+
+  public OpenPriority getOpenPriority() {
+    return this.openPriority;
+  }
+
+  /**
+   * @return The interval of the messages whose latency is traced through the
+   * client, from queued to acked by a POST for the sent messages, and from
+   * received to processed by the handler for the received ones, e.g. 100 to
+   * trace one in every 100 messages, or 0 to trace none. The latencies are
+   * reported as Support measurements.
+   */
+  public int getMessageTraceSampleInterval() {
+    return this.messageTraceSampleInterval;
+  }
+
+  /**
+   * @return Whether to keep the connections of the back channel requests
+   * alive, for the next back channel request or a forward channel request to
+   * reuse, instead of closing them after each response. Only applies if the
+   * Support implementation pools its connections. The connection of a failed
+   * or dead back channel request is still closed, and so are all of them once
+   * a buffering proxy is detected.
+   */
+  public boolean getKeepAliveBackChannel() {
+    return this.keepAliveBackChannel;
+  }
+
+  /**
+   * Two options are equal if channels created with either behave the same,
+   * e.g. send the same headers with the handshake.
+   */
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof WebChannelOptions)) {
+      return false;
+    }
+    WebChannelOptions that = (WebChannelOptions) other;
+    return Objects.equals(this.messageHeaders, that.messageHeaders)
+        && Objects.equals(this.initMessageHeaders, that.initMessageHeaders)
+        && Objects.equals(this.messageUrlParams, that.messageUrlParams)
+        && this.clientProtocolHeaderRequired == that.clientProtocolHeaderRequired
+        && this.concurrentRequestLimit == that.concurrentRequestLimit
+        && Objects.equals(this.testUrl, that.testUrl)
+        && this.sendRawJson == that.sendRawJson
+        && Objects.equals(this.httpSessionIdParam, that.httpSessionIdParam)
+        && this.backgroundChannelTest == that.backgroundChannelTest
+        && Objects.equals(this.callbackExecutor, that.callbackExecutor)
+        && this.callbackQueueCapacity == that.callbackQueueCapacity
+        && this.callbackOverflowPolicy == that.callbackOverflowPolicy
+        && this.adaptiveTimeouts == that.adaptiveTimeouts
+        && this.minRttEstimateMs == that.minRttEstimateMs
+        && this.maxRttEstimateMs == that.maxRttEstimateMs
+        && this.backChannelMaxDurationMs == that.backChannelMaxDurationMs
+        && this.backChannelMaxBytes == that.backChannelMaxBytes
+        && this.backChannelStripes == that.backChannelStripes
+        && this.autoReconnectMaxAttempts == that.autoReconnectMaxAttempts
+        && this.speculativeOpen == that.speculativeOpen
+        && this.openPriority == that.openPriority
+        && this.messageTraceSampleInterval == that.messageTraceSampleInterval
+        && this.keepAliveBackChannel == that.keepAliveBackChannel;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(messageHeaders, initMessageHeaders, messageUrlParams,
+        clientProtocolHeaderRequired, concurrentRequestLimit, testUrl,
+        sendRawJson, httpSessionIdParam, backgroundChannelTest,
+        callbackExecutor, callbackQueueCapacity, callbackOverflowPolicy,
+        adaptiveTimeouts, minRttEstimateMs, maxRttEstimateMs,
+        backChannelMaxDurationMs, backChannelMaxBytes, backChannelStripes,
+        autoReconnectMaxAttempts, speculativeOpen, openPriority,
+        messageTraceSampleInterval, keepAliveBackChannel);
+  }
+
   /**
    * The builder class.
    */
@@ -123,6 +341,76 @@ public final class WebChannelOptions {
       return this;
     }
 
+    public Builder callbackExecutor(Executor val) {
+      options.callbackExecutor = val;
+      return this;
+    }
+
+    public Builder callbackQueueCapacity(int val) {
+      options.callbackQueueCapacity = val;
+      return this;
+    }
+
+    public Builder callbackOverflowPolicy(CallbackOverflowPolicy val) {
+      options.callbackOverflowPolicy = val;
+      return this;
+    }
+
+    public Builder adaptiveTimeouts(boolean val) {
+      options.adaptiveTimeouts = val;
+      return this;
+    }
+
+    public Builder minRttEstimateMs(long val) {
+      options.minRttEstimateMs = val;
+      return this;
+    }
+
+    public Builder maxRttEstimateMs(long val) {
+      options.maxRttEstimateMs = val;
+      return this;
+    }
+
+    public Builder backChannelMaxDurationMs(long val) {
+      options.backChannelMaxDurationMs = val;
+      return this;
+    }
+
+    public Builder backChannelMaxBytes(long val) {
+      options.backChannelMaxBytes = val;
+      return this;
+    }
+
+    public Builder backChannelStripes(int val) {
+      options.backChannelStripes = val;
+      return this;
+    }
+
+    public Builder autoReconnectMaxAttempts(int val) {
+      options.autoReconnectMaxAttempts = val;
+      return this;
+    }
+
+    public Builder speculativeOpen(boolean val) {
+      options.speculativeOpen = val;
+      return this;
+    }
+
+    public Builder openPriority(OpenPriority val) {
+      options.openPriority = val;
+      return this;
+    }
+
+    public Builder messageTraceSampleInterval(int val) {
+      options.messageTraceSampleInterval = val;
+      return this;
+    }
+
+    public Builder keepAliveBackChannel(boolean val) {
+      options.keepAliveBackChannel = val;
+      return this;
+    }
+
     public WebChannelOptions build() {
       return options;
     }
@@ -16,6 +16,8 @@ public class WebChannelRuntimeProperties {
   private int nonAckedMessageCount;
   private int lastStatusCode;
   private String httpSessionId;
+  private long smoothedRttMs;
+  private long rttVarianceMs;
 
   public WebChannelRuntimeProperties() {
   }
@@ -90,6 +92,26 @@ public class WebChannelRuntimeProperties {
     this.httpSessionId = httpSessionId;
   }
 
+  /**
+   * @return The smoothed round-trip time of the forward channel requests, or 0
+   * if no request has completed yet.
+   */
+  public synchronized long getSmoothedRttMs() {
+    return smoothedRttMs;
+  }
+
+  public synchronized void setSmoothedRttMs(long smoothedRttMs) {
+    this.smoothedRttMs = smoothedRttMs;
+  }
+
+  public synchronized long getRttVarianceMs() {
+    return rttVarianceMs;
+  }
+
+  public synchronized void setRttVarianceMs(long rttVarianceMs) {
+    this.rttVarianceMs = rttVarianceMs;
+  }
+
   @Override
   public synchronized String toString() {
     return "WebChannelRuntimeProperties{"
@@ -98,6 +120,8 @@ public class WebChannelRuntimeProperties {
         + ", nonAckedMessageCount=" + getNonAckedMessageCount()
         + ", lastStatusCode=" + getLastStatusCode()
         + ", httpSessionId=" + getHttpSessionId()
+        + ", smoothedRttMs=" + getSmoothedRttMs()
+        + ", rttVarianceMs=" + getRttVarianceMs()
         + '}';
   }
 }
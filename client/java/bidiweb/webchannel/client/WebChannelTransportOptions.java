@@ -0,0 +1,290 @@
+package bidiweb.webchannel.client;
+
+import bidiweb.webchannel.client.metrics.MetricsExporter;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * For configuring the runtime behavior shared by all the channels created by
+ * the same transport.
+ *
+ * @see WebChannelOptions for the per-channel options
+ */
+@ThreadSafe
+public final class WebChannelTransportOptions {
+  private int eventLoopCount = 0;   // default per implementation
+  private long timerTickMs = 0;     // precise timers
+  private long connectionTestCacheTtlMs = 0;  // no caching
+  private int warmChannelsPerUrl = 0;         // no pre-opened channels
+  private long warmChannelIdleTimeoutMs = DEFAULT_WARM_CHANNEL_IDLE_TIMEOUT_MS;
+  private double maxOpensPerSecond = 0;       // no rate limit
+  private int openBurst = 0;                  // one second worth of opens
+  private long openJitterMs = 0;
+  private int retryBudgetPercent = 0;         // no retry budget
+  private int retryBudgetMaxRetries = DEFAULT_RETRY_BUDGET_MAX_RETRIES;
+  private int circuitBreakerFailureThreshold = 0;  // no circuit breaker
+  private long circuitBreakerOpenMs = DEFAULT_CIRCUIT_BREAKER_OPEN_MS;
+  private String networkTestUri;              // no network test
+  private long networkTestCacheTtlMs = DEFAULT_NETWORK_TEST_CACHE_TTL_MS;
+  private MetricsExporter metricsExporter;    // no export
+  private long metricsExportIntervalMs = DEFAULT_METRICS_EXPORT_INTERVAL_MS;
+  private boolean jfrEvents = false;
+
+  public static final long DEFAULT_WARM_CHANNEL_IDLE_TIMEOUT_MS = 60 * 1000;
+
+  public static final int DEFAULT_RETRY_BUDGET_MAX_RETRIES = 100;
+
+  public static final long DEFAULT_CIRCUIT_BREAKER_OPEN_MS = 30 * 1000;
+
+  public static final long DEFAULT_NETWORK_TEST_CACHE_TTL_MS = 5 * 1000;
+
+  public static final long DEFAULT_METRICS_EXPORT_INTERVAL_MS = 60 * 1000;
+
+  private WebChannelTransportOptions() {
+  }
+
+  /**
+   * @return The number of threads that run the channels, each channel being
+   * pinned to a single thread.
+   */
+  public int getEventLoopCount() {
+    return this.eventLoopCount;
+  }
+
+  /**
+   * @return The resolution of the timers of the channels, if they are to be
+   * armed on a hashed timing wheel per event loop, or 0 for precise timers.
+   * A coarse resolution, e.g. 10ms, makes the timers cheaper to arm and cancel
+   * when there are many channels per event loop.
+   */
+  public long getTimerTickMs() {
+    return this.timerTickMs;
+  }
+
+  /**
+   * @return For how long the results of the connection test to a server are
+   * reused by the channels subsequently opened to the same server, instead of
+   * testing the connection again, or 0 to test the connection for each channel.
+   * The results are dropped when a channel fails to open.
+   */
+  public long getConnectionTestCacheTtlMs() {
+    return this.connectionTestCacheTtlMs;
+  }
+
+  /**
+   * @return The number of channels to keep opened ahead of time for each URL
+   * and WebChannelOptions that async channels have been created for, so that
+   * the subsequent channels with the same URL and equal options are handed out
+   * already open, or 0 to open each channel on demand.
+   */
+  public int getWarmChannelsPerUrl() {
+    return this.warmChannelsPerUrl;
+  }
+
+  /**
+   * @return For how long a channel opened ahead of time is kept idle before it
+   * is closed, if it has not been handed out. It's replaced as long as channels
+   * are still created for the same URL and options within this time.
+   */
+  public long getWarmChannelIdleTimeoutMs() {
+    return this.warmChannelIdleTimeoutMs;
+  }
+
+  /**
+   * @return The max sustained rate at which the channels are opened, i.e. run
+   * their connection test and handshake, or 0 to open the channels as soon as
+   * open() is called. Opens over the rate are queued, the channels with the
+   * {@link WebChannelOptions.OpenPriority#INTERACTIVE} priority first.
+   */
+  public double getMaxOpensPerSecond() {
+    return this.maxOpensPerSecond;
+  }
+
+  /**
+   * @return The max number of channels opened at once after a quiet period,
+   * or 0 for the number of opens per second.
+   */
+  public int getOpenBurst() {
+    return this.openBurst;
+  }
+
+  /**
+   * @return The max random delay of a rate-limited open once admitted, which
+   * spreads the opens admitted at once.
+   */
+  public long getOpenJitterMs() {
+    return this.openJitterMs;
+  }
+
+  /**
+   * @return The retries of failed requests allowed to all the channels, as a
+   * percentage of their successful requests, or 0 to leave the retries to each
+   * channel. A channel whose retry is denied backs off again, without counting
+   * it as one of its retries.
+   */
+  public int getRetryBudgetPercent() {
+    return this.retryBudgetPercent;
+  }
+
+  /**
+   * @return The max number of retries the retry budget can accumulate, which
+   * is also the initial budget.
+   */
+  public int getRetryBudgetMaxRetries() {
+    return this.retryBudgetMaxRetries;
+  }
+
+  /**
+   * @return The number of consecutive failed requests to a server after which
+   * the channels hold their requests to it back, or 0 for no circuit breaker.
+   */
+  public int getCircuitBreakerFailureThreshold() {
+    return this.circuitBreakerFailureThreshold;
+  }
+
+  /**
+   * @return For how long requests to a server are held back once the circuit
+   * breaker has opened, before a single probe request is allowed.
+   */
+  public long getCircuitBreakerOpenMs() {
+    return this.circuitBreakerOpenMs;
+  }
+
+  /**
+   * @return The URI to request when a channel request fails, to tell a
+   * network error from a server error in the request stats, or null to skip
+   * the test. Any HTTP response means the network is up.
+   */
+  public String getNetworkTestUri() {
+    return this.networkTestUri;
+  }
+
+  /**
+   * @return For how long the result of a network test is reused by all the
+   * channels instead of testing the network again, or 0 to test the network
+   * for each failed channel.
+   */
+  public long getNetworkTestCacheTtlMs() {
+    return this.networkTestCacheTtlMs;
+  }
+
+  /**
+   * @return The exporter to periodically publish the metrics of the
+   * transport with, or null.
+   */
+  public MetricsExporter getMetricsExporter() {
+    return this.metricsExporter;
+  }
+
+  public long getMetricsExportIntervalMs() {
+    return this.metricsExportIntervalMs;
+  }
+
+  /**
+   * @return Whether the channels emit Java Flight Recorder events, i.e. the
+   * phases of their HTTP requests, their state changes, their retries, the
+   * detection of dead back channels and the encoding and decoding of their
+   * messages.
+   */
+  public boolean getJfrEvents() {
+    return this.jfrEvents;
+  }
+
+  /**
+   * The builder class.
+   */
+  public static class Builder {
+    private WebChannelTransportOptions options = new WebChannelTransportOptions();
+
+    public Builder() {
+    }
+
+    public Builder eventLoopCount(int val) {
+      options.eventLoopCount = val;
+      return this;
+    }
+
+    public Builder timerTickMs(long val) {
+      options.timerTickMs = val;
+      return this;
+    }
+
+    public Builder connectionTestCacheTtlMs(long val) {
+      options.connectionTestCacheTtlMs = val;
+      return this;
+    }
+
+    public Builder warmChannelsPerUrl(int val) {
+      options.warmChannelsPerUrl = val;
+      return this;
+    }
+
+    public Builder warmChannelIdleTimeoutMs(long val) {
+      options.warmChannelIdleTimeoutMs = val;
+      return this;
+    }
+
+    public Builder maxOpensPerSecond(double val) {
+      options.maxOpensPerSecond = val;
+      return this;
+    }
+
+    public Builder openBurst(int val) {
+      options.openBurst = val;
+      return this;
+    }
+
+    public Builder openJitterMs(long val) {
+      options.openJitterMs = val;
+      return this;
+    }
+
+    public Builder retryBudgetPercent(int val) {
+      options.retryBudgetPercent = val;
+      return this;
+    }
+
+    public Builder retryBudgetMaxRetries(int val) {
+      options.retryBudgetMaxRetries = val;
+      return this;
+    }
+
+    public Builder circuitBreakerFailureThreshold(int val) {
+      options.circuitBreakerFailureThreshold = val;
+      return this;
+    }
+
+    public Builder circuitBreakerOpenMs(long val) {
+      options.circuitBreakerOpenMs = val;
+      return this;
+    }
+
+    public Builder networkTestUri(String val) {
+      options.networkTestUri = val;
+      return this;
+    }
+
+    public Builder networkTestCacheTtlMs(long val) {
+      options.networkTestCacheTtlMs = val;
+      return this;
+    }
+
+    public Builder metricsExporter(MetricsExporter val) {
+      options.metricsExporter = val;
+      return this;
+    }
+
+    public Builder metricsExportIntervalMs(long val) {
+      options.metricsExportIntervalMs = val;
+      return this;
+    }
+
+    public Builder jfrEvents(boolean val) {
+      options.jfrEvents = val;
+      return this;
+    }
+
+    public WebChannelTransportOptions build() {
+      return options;
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package bidiweb.webchannel.client.flow;
+
+import bidiweb.webchannel.client.ErrorStatus;
+import java.io.IOException;
+
+/**
+ * Signals the error reported by {@link bidiweb.webchannel.client.AsyncWebChannel.EventHandler#onError}
+ * to a Flow subscriber.
+ */
+public class ChannelErrorException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final ErrorStatus errorStatus;
+
+  public ChannelErrorException(ErrorStatus errorStatus) {
+    super("WebChannel error: " + errorStatus);
+    this.errorStatus = errorStatus;
+  }
+
+  public ErrorStatus getErrorStatus() {
+    return errorStatus;
+  }
+}
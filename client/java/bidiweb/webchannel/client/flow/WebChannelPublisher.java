@@ -0,0 +1,269 @@
+package bidiweb.webchannel.client.flow;
+
+import bidiweb.webchannel.client.AsyncWebChannel;
+import bidiweb.webchannel.client.ErrorStatus;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link Flow.Publisher} of the messages received over an {@link AsyncWebChannel}.
+ *
+ * <p>The publisher takes over the event handler of the channel, and therefore needs be
+ * created before the channel is opened. Only a single subscriber is supported.
+ *
+ * <p>The demand of the subscriber is propagated down to the back channel: whenever there is
+ * no outstanding demand the channel is paused (see {@link AsyncWebChannel#pauseReceiving()}),
+ * which stops reading the HTTP response so that the server is pushed back by TCP flow
+ * control. The number of messages buffered by the publisher is therefore bounded by what
+ * has already been read from the network when the channel is paused.
+ *
+ * <p>The channel is closed by the server or the application; the subscriber is then
+ * completed (or failed with a {@link ChannelErrorException}) once all the buffered messages
+ * have been delivered. Cancelling the subscription doesn't close the channel, and any
+ * messages received afterwards are dropped. A non-positive request, on the other hand,
+ * cancels the subscription, closes the channel and fails the subscriber (rule 3.9).
+ *
+ * <p>The pause/resume calls may be made from any thread, so the channel needs be thread-safe,
+ * e.g. as created by the basic transport.
+ */
+@ThreadSafe
+public final class WebChannelPublisher implements Flow.Publisher<Object> {
+
+  private final AsyncWebChannel channel;
+  private final Object lock = new Object();
+
+  @GuardedBy("lock")
+  private Flow.Subscriber<? super Object> subscriber = null;
+
+  @GuardedBy("lock")
+  private final ArrayDeque<Object> buffer = new ArrayDeque<>();
+
+  @GuardedBy("lock")
+  private long demand = 0;
+
+  @GuardedBy("lock")
+  private boolean receivingPaused = true;
+
+  /** Whether a thread is signalling the subscriber, which is to be done serially. */
+  @GuardedBy("lock")
+  private boolean emitting = false;
+
+  @GuardedBy("lock")
+  private boolean cancelled = false;
+
+  @GuardedBy("lock")
+  private boolean completed = false;
+
+  @GuardedBy("lock")
+  private Throwable error = null;
+
+  /** Whether the subscriber has made a non-positive request, which fails it at once. */
+  @GuardedBy("lock")
+  private boolean invalidRequest = false;
+
+  /**
+   * @param channel The channel to receive messages from, which is yet to be opened.
+   */
+  public WebChannelPublisher(AsyncWebChannel channel) {
+    this.channel = Objects.requireNonNull(channel);
+    channel.setChannelHandler(new Handler());
+    // no demand until subscribed
+    channel.pauseReceiving();
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super Object> subscriber) {
+    Objects.requireNonNull(subscriber);
+    boolean accepted;
+    synchronized (lock) {
+      accepted = this.subscriber == null && !cancelled;
+      if (accepted) {
+        this.subscriber = subscriber;
+        this.emitting = true;
+      }
+    }
+
+    if (!accepted) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        public void request(long n) {}
+
+        public void cancel() {}
+      });
+      subscriber.onError(new IllegalStateException("Only a single subscriber is supported"));
+      return;
+    }
+
+    subscriber.onSubscribe(new Subscription());
+    emit();
+  }
+
+  private void drain() {
+    synchronized (lock) {
+      if (emitting) {
+        return; // the emitting thread will pick up the change
+      }
+      emitting = true;
+    }
+    emit();
+  }
+
+  /**
+   * Signals the subscriber until there is nothing more to do. To be called by the thread that
+   * has set {@code emitting}.
+   */
+  private void emit() {
+    while (true) {
+      Flow.Subscriber<? super Object> s;
+      Object next = null;
+      boolean terminate = false;
+      boolean close = false;
+      Throwable terminalError = null;
+
+      synchronized (lock) {
+        s = subscriber;
+        if (s == null || cancelled) {
+          emitting = false;
+          return;
+        }
+
+        if (invalidRequest) {
+          // Rule 3.9: the subscription is cancelled, and the subscriber failed.
+          terminate = true;
+          close = true;
+          terminalError = error;
+          subscriber = null;
+          cancelled = true;
+          buffer.clear();
+        } else if (demand > 0 && !buffer.isEmpty()) {
+          next = buffer.poll();
+          demand--;
+        } else if (completed && buffer.isEmpty()) {
+          terminate = true;
+          terminalError = error;
+          subscriber = null;
+          cancelled = true;
+        } else {
+          emitting = false;
+          updateReceivingPaused();
+          return;
+        }
+      }
+
+      if (terminate) {
+        if (close) {
+          closeChannel();
+        }
+        if (terminalError != null) {
+          s.onError(terminalError);
+        } else {
+          s.onComplete();
+        }
+        return;
+      }
+      s.onNext(next);
+    }
+  }
+
+  /** Closes the channel, whose messages can no longer be delivered to any subscriber. */
+  private void closeChannel() {
+    try {
+      channel.close();
+    } catch (IllegalStateException e) {
+      // already closed by the application
+    }
+  }
+
+  /**
+   * Pauses the channel when there is no outstanding demand, or resumes it otherwise.
+   */
+  @GuardedBy("lock")
+  private void updateReceivingPaused() {
+    boolean pause = demand == 0 && !cancelled && !completed;
+    if (pause == receivingPaused) {
+      return;
+    }
+    receivingPaused = pause;
+    if (pause) {
+      channel.pauseReceiving();
+    } else {
+      channel.resumeReceiving();
+    }
+  }
+
+  private class Subscription implements Flow.Subscription {
+
+    @Override
+    public void request(long n) {
+      synchronized (lock) {
+        if (cancelled) {
+          return;
+        }
+        if (n <= 0) {
+          invalidRequest = true;
+          // Unless the channel has already failed, which is reported first.
+          if (error == null) {
+            error = new IllegalArgumentException("Non-positive request: " + n);
+          }
+        } else {
+          demand += n;
+          if (demand < 0) {
+            demand = Long.MAX_VALUE;
+          }
+        }
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      synchronized (lock) {
+        if (cancelled) {
+          return;
+        }
+        cancelled = true;
+        subscriber = null;
+        buffer.clear();
+        updateReceivingPaused();
+      }
+    }
+  }
+
+  private class Handler extends AsyncWebChannel.EventHandler {
+
+    @Override
+    public void onClose() {
+      synchronized (lock) {
+        completed = true;
+      }
+      drain();
+    }
+
+    @Override
+    public void onError(ErrorStatus status) {
+      synchronized (lock) {
+        if (error == null) {
+          error = new ChannelErrorException(status);
+        }
+        completed = true;
+      }
+      drain();
+    }
+
+    @Override
+    public <T> void onMessage(T message) {
+      if (message == null) {
+        return;
+      }
+      synchronized (lock) {
+        if (cancelled) {
+          return;
+        }
+        buffer.add(message);
+      }
+      drain();
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package bidiweb.webchannel.client.flow;
+
+import bidiweb.webchannel.client.AsyncWebChannel;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link Flow.Subscriber} that sends the messages it receives over an
+ * {@link AsyncWebChannel}, which needs be opened before any message is published.
+ *
+ * <p>At most {@code window} messages are in flight, i.e. requested from the publisher but not
+ * yet acknowledged by the server; a new message is requested whenever a sent message is
+ * acknowledged. The channel is closed when the publisher fails, or when it completes and all
+ * the messages have been acknowledged. The subscription is cancelled when the channel fails
+ * to deliver a message.
+ */
+@ThreadSafe
+public final class WebChannelSubscriber implements Flow.Subscriber<String> {
+
+  public static final int DEFAULT_WINDOW = 100;
+
+  private final AsyncWebChannel channel;
+  private final int window;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+  private final BiConsumer<Void, Throwable> onSendComplete =
+      new BiConsumer<Void, Throwable>() {
+        public void accept(Void value, Throwable error) {
+          if (error == null) {
+            subscription.request(1);
+          } else {
+            subscription.cancel();
+          }
+          if (inFlight.decrementAndGet() == 0 && completed) {
+            closeChannel();
+          }
+        }
+      };
+
+  private volatile Flow.Subscription subscription = null;
+  private volatile boolean completed = false;
+
+  public WebChannelSubscriber(AsyncWebChannel channel) {
+    this(channel, DEFAULT_WINDOW);
+  }
+
+  /**
+   * @param channel The channel to send the messages to.
+   * @param window The maximum number of messages in flight.
+   */
+  public WebChannelSubscriber(AsyncWebChannel channel, int window) {
+    if (window <= 0) {
+      throw new IllegalArgumentException("Non-positive window: " + window);
+    }
+    this.channel = Objects.requireNonNull(channel);
+    this.window = window;
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (this.subscription != null) {
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    subscription.request(window);
+  }
+
+  @Override
+  public void onNext(String message) {
+    inFlight.incrementAndGet();
+    channel.sendAsync(message).whenComplete(onSendComplete);
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    closeChannel();
+  }
+
+  @Override
+  public void onComplete() {
+    completed = true;
+    if (inFlight.get() == 0) {
+      closeChannel();
+    }
+  }
+
+  private void closeChannel() {
+    if (!closed.getAndSet(true)) {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package bidiweb.webchannel.client.metrics;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A snapshot of a {@link Histogram}.
+ */
+@Immutable
+public final class HistogramSnapshot {
+  private final long[] bucketCounts;
+  private final long count;
+  private final long sum;
+  private final long max;
+
+  HistogramSnapshot(long[] bucketCounts, long count, long sum, long max) {
+    this.bucketCounts = bucketCounts;
+    this.count = count;
+    this.sum = sum;
+    this.max = max;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getSum() {
+    return sum;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * @param percentile The percentile, from 0 to 100.
+   * @return The value at the given percentile, within the precision of the buckets, or 0 if no
+   *     value has been recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long total = 0;
+    for (long bucketCount : bucketCounts) {
+      total += bucketCount;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < bucketCounts.length; i++) {
+      seen += bucketCounts[i];
+      if (seen >= rank) {
+        return Math.min(max, Histogram.bucketUpperBound(i));
+      }
+    }
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return "HistogramSnapshot{"
+        + "count=" + count
+        + ", mean=" + getMean()
+        + ", p50=" + getValueAtPercentile(50)
+        + ", p99=" + getValueAtPercentile(99)
+        + ", max=" + max
+        + '}';
+  }
+}
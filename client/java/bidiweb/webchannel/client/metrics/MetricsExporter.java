@@ -0,0 +1,14 @@
+package bidiweb.webchannel.client.metrics;
+
+/**
+ * Publishes the metrics of a transport to a monitoring system.
+ *
+ * <p>Called periodically with a snapshot of the metrics, from a thread that doesn't run any
+ * channel. The snapshots are cumulative, i.e. the counts are totals since the transport has been
+ * created.
+ *
+ * @see bidiweb.webchannel.client.WebChannelTransportOptions.Builder#metricsExporter
+ */
+public interface MetricsExporter {
+  void export(MetricsSnapshot snapshot);
+}
@@ -0,0 +1,52 @@
+package bidiweb.webchannel.client.metrics;
+
+import bidiweb.webchannel.client.support.Support.Measurement;
+import bidiweb.webchannel.client.support.Support.RequestStat;
+import bidiweb.webchannel.client.support.Support.ServerReachability;
+
+import java.util.Collections;
+import java.util.Map;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A snapshot of {@link WebChannelMetrics}.
+ */
+@Immutable
+public final class MetricsSnapshot {
+  private final Map<RequestStat, Long> requestStats;
+  private final Map<ServerReachability, Long> serverReachabilityEvents;
+  private final Map<Measurement, HistogramSnapshot> measurements;
+
+  MetricsSnapshot(
+      Map<RequestStat, Long> requestStats,
+      Map<ServerReachability, Long> serverReachabilityEvents,
+      Map<Measurement, HistogramSnapshot> measurements) {
+    this.requestStats = Collections.unmodifiableMap(requestStats);
+    this.serverReachabilityEvents = Collections.unmodifiableMap(serverReachabilityEvents);
+    this.measurements = Collections.unmodifiableMap(measurements);
+  }
+
+  /** @return The number of each stat event. */
+  public Map<RequestStat, Long> getRequestStats() {
+    return requestStats;
+  }
+
+  /** @return The number of each server reachability event. */
+  public Map<ServerReachability, Long> getServerReachabilityEvents() {
+    return serverReachabilityEvents;
+  }
+
+  /** @return The histogram of each measurement. */
+  public Map<Measurement, HistogramSnapshot> getMeasurements() {
+    return measurements;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricsSnapshot{"
+        + "requestStats=" + requestStats
+        + ", serverReachabilityEvents=" + serverReachabilityEvents
+        + ", measurements=" + measurements
+        + '}';
+  }
+}
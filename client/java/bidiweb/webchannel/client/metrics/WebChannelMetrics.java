@@ -0,0 +1,63 @@
+package bidiweb.webchannel.client.metrics;
+
+import bidiweb.webchannel.client.support.Support.Measurement;
+import bidiweb.webchannel.client.support.Support.RequestStat;
+import bidiweb.webchannel.client.support.Support.ServerReachability;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * The counters of the stat and server reachability events, and the histograms of the
+ * measurements, reported by the channels through the Support hooks.
+ *
+ * <p>All the methods are lock-free, and recording doesn't allocate, so a single instance may be
+ * shared by all the channels of a transport.
+ */
+@ThreadSafe
+public final class WebChannelMetrics {
+  private static final RequestStat[] REQUEST_STATS = RequestStat.values();
+  private static final ServerReachability[] REACHABILITY_EVENTS = ServerReachability.values();
+  private static final Measurement[] MEASUREMENTS = Measurement.values();
+
+  private final AtomicLongArray requestStats = new AtomicLongArray(REQUEST_STATS.length);
+  private final AtomicLongArray reachabilityEvents =
+      new AtomicLongArray(REACHABILITY_EVENTS.length);
+  private final Histogram[] histograms = new Histogram[MEASUREMENTS.length];
+
+  public WebChannelMetrics() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new Histogram();
+    }
+  }
+
+  public void recordStatEvent(RequestStat event) {
+    requestStats.incrementAndGet(event.ordinal());
+  }
+
+  public void recordServerReachabilityEvent(ServerReachability event) {
+    reachabilityEvents.incrementAndGet(event.ordinal());
+  }
+
+  public void recordMeasurement(Measurement measurement, long value) {
+    histograms[measurement.ordinal()].record(value);
+  }
+
+  public MetricsSnapshot snapshot() {
+    Map<RequestStat, Long> requestStatCounts = new EnumMap<>(RequestStat.class);
+    for (RequestStat event : REQUEST_STATS) {
+      requestStatCounts.put(event, requestStats.get(event.ordinal()));
+    }
+    Map<ServerReachability, Long> reachabilityCounts = new EnumMap<>(ServerReachability.class);
+    for (ServerReachability event : REACHABILITY_EVENTS) {
+      reachabilityCounts.put(event, reachabilityEvents.get(event.ordinal()));
+    }
+    Map<Measurement, HistogramSnapshot> measurements = new EnumMap<>(Measurement.class);
+    for (Measurement measurement : MEASUREMENTS) {
+      measurements.put(measurement, histograms[measurement.ordinal()].snapshot());
+    }
+    return new MetricsSnapshot(requestStatCounts, reachabilityCounts, measurements);
+  }
+}
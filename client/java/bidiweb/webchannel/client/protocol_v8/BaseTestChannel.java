@@ -3,12 +3,13 @@ package bidiweb.webchannel.client.protocol_v8;
 import bidiweb.webchannel.client.WebChannelConstants;
 import bidiweb.webchannel.client.support.Support;
 import bidiweb.webchannel.client.support.Support.Debugger;
+import bidiweb.webchannel.client.support.Support.Debugger.Level;
 import bidiweb.webchannel.client.support.Support.HttpRequest;
 import bidiweb.webchannel.client.support.Support.RequestStat;
 import bidiweb.webchannel.client.support.Support.UriBuilder;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 class BaseTestChannel implements Channel {
   private Support support;
@@ -16,7 +17,7 @@ class BaseTestChannel implements Channel {
   private Channel channel;
   private Debugger channelDebug;
 
-  private Map<String, String> extraHeaders = null;
+  private ChannelHeaders headers = null;
   private ChannelRequest request = null;
   private boolean receivedIntermediateResult = false;
 
@@ -43,8 +44,8 @@ class BaseTestChannel implements Channel {
   /**
    * Take the ownership.
    */
-  public void setExtraHeaders(Map<String, String> extraHeaders) {
-    this.extraHeaders = extraHeaders;
+  public void setHeaders(ChannelHeaders headers) {
+    this.headers = headers;
   }
 
   public void connect(String path) {
@@ -70,7 +71,7 @@ class BaseTestChannel implements Channel {
 
     this.request = ChannelRequest.createChannelRequest(support, this, null, null, 0);
 
-    this.request.setExtraHeaders(this.extraHeaders);
+    this.request.setHeaders(this.headers);
 
     this.request.httpGet(sendDataUri.getUri(), false, true);
     this.state = State.INIT;
@@ -81,9 +82,11 @@ class BaseTestChannel implements Channel {
 
     Boolean bufferingProxyResult = channel.getConnectionState().getBufferingProxyResult();
     if (bufferingProxyResult != null) {
-      channelDebug.debug(
-          "TestConnection: skipping stage 2, precomputed result is "
-              + (bufferingProxyResult ? "Buffered" : "Unbuffered"));
+      if (channelDebug.isLoggable(Level.DEBUG)) {
+        channelDebug.debug(
+            "TestConnection: skipping stage 2, precomputed result is "
+                + (bufferingProxyResult ? "Buffered" : "Unbuffered"));
+      }
       support.notifyStatEvent(RequestStat.TEST_STAGE_TWO_START);
       if (bufferingProxyResult) {
         support.notifyStatEvent(RequestStat.PROXY);
@@ -95,7 +98,7 @@ class BaseTestChannel implements Channel {
       return; // Skip the test
     }
     this.request = ChannelRequest.createChannelRequest(support, this, null, null, 0);
-    this.request.setExtraHeaders(this.extraHeaders);
+    this.request.setHeaders(this.headers);
     UriBuilder recvDataUri = this.channel.getBackChannelUri(this.path);
 
     support.notifyStatEvent(RequestStat.TEST_STAGE_TWO_START);
@@ -130,13 +133,19 @@ class BaseTestChannel implements Channel {
         return;
       }
 
+      List<?> respArray;
       try {
-        List<?> respArray = ((WireV8) channel.getWireCodec()).decodeMessage(responseText, 1);
+        respArray = ((WireV8) channel.getWireCodec()).decodeMessage(responseText, 1);
       } catch (Exception ex) {
         channelDebug.dumpException(ex, "codec error");
         channel.testConnectionFailure(this, ChannelRequest.ErrorEnum.BAD_DATA);
         return;
       }
+      List<String> handshakeResult = new ArrayList<>(respArray.size());
+      for (Object value : respArray) {
+        handshakeResult.add(String.valueOf(value));
+      }
+      this.channel.getConnectionState().setHandshakeResult(handshakeResult);
     } else if (this.state == State.CONNECTION_TESTING) {
       if (this.receivedIntermediateResult) {
         support.notifyStatEvent(RequestStat.TEST_STAGE_TWO_DATA_TWO);
@@ -149,6 +158,7 @@ class BaseTestChannel implements Channel {
             this.request.cancel();
             channelDebug.debug("Test connection succeeded; using streaming connection");
             support.notifyStatEvent(RequestStat.NOPROXY);
+            this.channel.getConnectionState().setBufferingProxyResult(false);
             this.channel.testConnectionFinished(this, true);
           }
         } else {
@@ -170,7 +180,9 @@ class BaseTestChannel implements Channel {
   public void onRequestComplete(ChannelRequest request) {
     this.lastStatusCode = this.request.getLastStatusCode();
     if (!this.request.getSuccess()) {
-      channelDebug.debug("TestConnection: request failed, in state " + this.state);
+      if (channelDebug.isLoggable(Level.DEBUG)) {
+        channelDebug.debug("TestConnection: request failed, in state " + this.state);
+      }
       if (this.state == State.INIT) {
         support.notifyStatEvent(RequestStat.TEST_STAGE_ONE_FAILED);
       } else if (this.state == State.CONNECTION_TESTING) {
@@ -190,6 +202,7 @@ class BaseTestChannel implements Channel {
       channelDebug.debug("TestConnection: request complete for stage 2");
 
       boolean goodConn = this.receivedIntermediateResult;
+      this.channel.getConnectionState().setBufferingProxyResult(!goodConn);
       if (goodConn) {
         channelDebug.debug("Test connection succeeded; using streaming connection");
         support.notifyStatEvent(RequestStat.NOPROXY);
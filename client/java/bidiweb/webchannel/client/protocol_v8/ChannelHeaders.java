@@ -0,0 +1,61 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import bidiweb.webchannel.client.support.Support;
+import bidiweb.webchannel.client.support.Support.HeaderSet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The request headers of a channel, merged once into the header sets of the
+ * support for each kind of request, so that no headers are copied or processed
+ * per request.
+ */
+class ChannelHeaders {
+  private final HeaderSet postHeaders;
+  private final HeaderSet getHeaders;
+  private final HeaderSet closingGetHeaders;
+  private final HeaderSet closeRequestHeaders;
+
+  /**
+   * @param headers The extra headers of the channel, which may be null.
+   */
+  public ChannelHeaders(Support support, Map<String, String> headers) {
+    this.getHeaders = support.newHeaderSet(merge(headers, null, null));
+    this.closingGetHeaders = support.newHeaderSet(merge(headers, "Connection", "close"));
+    this.postHeaders =
+        support.newHeaderSet(
+            merge(headers, "Content-Type", "application/x-www-form-urlencoded"));
+    this.closeRequestHeaders = support.newHeaderSet(new HashMap<String, String>());
+  }
+
+  private static Map<String, String> merge(
+      Map<String, String> headers, String name, String value) {
+    Map<String, String> merged = new HashMap<>();
+    if (headers != null) {
+      merged.putAll(headers);
+    }
+    if (name != null) {
+      merged.put(name, value);
+    }
+    return merged;
+  }
+
+  public HeaderSet getPostHeaders() {
+    return this.postHeaders;
+  }
+
+  /**
+   * @param close Whether to close the connection after the response.
+   */
+  public HeaderSet getGetHeaders(boolean close) {
+    return close ? this.closingGetHeaders : this.getHeaders;
+  }
+
+  /**
+   * The terminate request carries none of the extra headers.
+   */
+  public HeaderSet getCloseRequestHeaders() {
+    return this.closeRequestHeaders;
+  }
+}
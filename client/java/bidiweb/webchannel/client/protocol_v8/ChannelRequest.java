@@ -2,6 +2,7 @@ package bidiweb.webchannel.client.protocol_v8;
 
 import bidiweb.webchannel.client.support.Support;
 import bidiweb.webchannel.client.support.Support.Debugger;
+import bidiweb.webchannel.client.support.Support.Debugger.Level;
 import bidiweb.webchannel.client.support.Support.HttpRequest;
 import bidiweb.webchannel.client.support.Support.RequestErrorCode;
 import bidiweb.webchannel.client.support.Support.RequestReadyState;
@@ -10,8 +11,8 @@ import bidiweb.webchannel.client.support.Support.ServerReachability;
 import bidiweb.webchannel.client.support.Support.Uri;
 import bidiweb.webchannel.client.support.Support.UriBuilder;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
 
 class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.TimeoutHandler {
 
@@ -32,7 +33,7 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
   private final String rid;
   private final String sid;
 
-  private Map<String, String> extraHeaders = null;
+  private ChannelHeaders headers = null;
   private boolean successful = false;
 
   private long timeout;
@@ -43,6 +44,7 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
   private Uri baseUri;
   private UriBuilder requestUri;
   private String postData;
+  private List<Wire.QueuedMap> pendingMessages;
 
   private HttpRequest httpRequest;
 
@@ -53,6 +55,9 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
   private boolean sendClose;
   private boolean cancelled;
   private boolean decodeChunks;
+  private boolean paused;
+  private boolean firstByteTraced;
+  private long responseLength;
 
   private enum Type {
     HTTP_REQUEST,
@@ -83,7 +88,7 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
     this.retryId = retryId;
     this.timeout = TIMEOUT_MS;
 
-    this.extraHeaders = null;
+    this.headers = null;
     this.successful = false;
 
     this.watchDogTimer = null;
@@ -93,6 +98,7 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
     this.baseUri = null;
     this.requestUri = null;
     this.postData = null;
+    this.pendingMessages = Collections.emptyList();
 
     this.httpRequest = null;
     this.responseText = new StringBuilder();
@@ -106,6 +112,7 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
 
     this.cancelled = false;
     this.decodeChunks = false;
+    this.paused = false;
   }
 
   public static ChannelRequest createChannelRequest(
@@ -122,8 +129,15 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
     return true;
   }
 
-  public void setExtraHeaders(Map<String, String> extraHeaders) {
-    this.extraHeaders = extraHeaders;
+  public void setHeaders(ChannelHeaders headers) {
+    this.headers = headers;
+  }
+
+  private ChannelHeaders getHeaders() {
+    if (this.headers == null) {
+      this.headers = new ChannelHeaders(support, null);
+    }
+    return this.headers;
   }
 
   public void setTimeout(long timeout) {
@@ -135,6 +149,30 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
     this.cleanup();
   }
 
+  /**
+   * Pauses or resumes the processing of the response, e.g. when the application
+   * can't keep up with the incoming messages. Any response received while paused
+   * is processed upon resume.
+   */
+  public void setPaused(boolean paused) {
+    if (this.paused == paused) {
+      return;
+    }
+    this.paused = paused;
+    if (this.httpRequest == null) {
+      return;
+    }
+    this.httpRequest.setResponsePaused(paused);
+    if (!paused) {
+      this.watchDogTimeoutTime = System.currentTimeMillis() + this.timeout;
+      this.onReadyStateChangeEvent(this.httpRequest);
+    }
+  }
+
+  public boolean isPaused() {
+    return this.paused;
+  }
+
   public boolean isClosed() {
     return false;
   }
@@ -167,6 +205,17 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
     return postData;
   }
 
+  /**
+   * @return The maps carried by this (POST) request.
+   */
+  public List<Wire.QueuedMap> getPendingMessages() {
+    return this.pendingMessages;
+  }
+
+  public void setPendingMessages(List<Wire.QueuedMap> pendingMessages) {
+    this.pendingMessages = pendingMessages;
+  }
+
   public long getRequestStartTime() {
     return this.requestStartTime;
   }
@@ -211,32 +260,31 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
     this.requestStartTime = System.currentTimeMillis();
     ensureWatchDogTimer();
 
-    this.requestUri =
-        support.newUriBuilder(this.baseUri).addQueryParameter("t", Long.toString(this.retryId));
+    this.requestUri = UriTemplate.withParam(support, this.baseUri, "t", this.retryId);
     this.chunkStart = 0;
 
     this.httpRequest = this.channel.createHttpRequest();
 
     this.httpRequest.setReadyStateChangeHandler(this);
-
-    Map<String, String> headers = new HashMap<>();
-    if (this.extraHeaders != null) {
-      headers.putAll(this.extraHeaders);
+    if (this.paused) {
+      this.httpRequest.setResponsePaused(true);
     }
 
     if (this.postData != null) {
       this.verb = "POST";
-      headers.put("Content-Type", "application/x-www-form-urlencoded");
-      this.httpRequest.send(this.requestUri, this.verb, this.postData, headers);
+      this.httpRequest.send(
+          this.requestUri, this.verb, this.postData, this.getHeaders().getPostHeaders());
     } else {
       this.verb = "GET";
-      if (this.sendClose) {
-        headers.put("Connection", "close");
-      }
-      this.httpRequest.send(this.requestUri, this.verb, null, headers);
+      this.httpRequest.send(
+          this.requestUri, this.verb, null, this.getHeaders().getGetHeaders(this.sendClose));
     }
 
     support.notifyServerReachabilityEvent(ServerReachability.REQUEST_MADE);
+    support.getTracer().requestSent(
+        this.rid, this.verb, this.postData != null ? this.postData.length() : 0);
+    this.firstByteTraced = false;
+    this.responseLength = 0;
     channelDebug.httpRequest(this.verb, this.requestUri, this.rid, this.retryId, this.postData);
   }
 
@@ -246,7 +294,12 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
 
     try {
       if (request == this.httpRequest) {
+        if (this.paused) {
+          return; // to be processed upon resume
+        }
+        int length = this.responseText.length();
         this.httpRequest.drainResponseText(this.responseText);
+        this.responseLength += this.responseText.length() - length;
         this.onReadyStateChanged();
       } else {
         channelDebug.warning("Called back with an unexpected http request");
@@ -254,7 +307,9 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
     } catch (Exception ex) {
       channelDebug.debug("Failed call to onReadyStateChangeEvent.");
       if (this.responseText.length() > 0) {
-        channelDebug.dumpException(ex, "ResponseText: " + this.responseText);
+        if (channelDebug.isLoggable(Level.SEVERE)) {
+          channelDebug.dumpException(ex, "ResponseText: " + this.responseText);
+        }
       } else {
         channelDebug.dumpException(ex, "No response text");
       }
@@ -284,12 +339,23 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
       }
     }
 
-    cancelWatchDogTimer();
+    if (readyState == RequestReadyState.COMPLETE) {
+      cancelWatchDogTimer();
+    }
 
     int status = this.httpRequest.getStatus();
+    if (!this.firstByteTraced) {
+      this.firstByteTraced = true;
+      support.getTracer().requestFirstByte(this.rid, this.verb);
+    }
+    if (readyState == RequestReadyState.COMPLETE) {
+      support.getTracer().requestCompleted(this.rid, this.verb, status, this.responseLength);
+    }
     this.lastStatusCode = status;
     if (responseText.length() == 0) {
-      channelDebug.debug("No response text for uri " + this.requestUri + " status " + status);
+      if (channelDebug.isLoggable(Level.DEBUG)) {
+        channelDebug.debug("No response text for uri " + this.requestUri + " status " + status);
+      }
     }
     this.successful = (status == 200);
 
@@ -300,11 +366,15 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
       if (status == 400 && responseText.indexOf("Unknown SID") > 0) {
         this.lastError = ErrorEnum.UNKNOWN_SESSION_ID;
         support.notifyStatEvent(RequestStat.REQUEST_UNKNOWN_SESSION_ID);
-        channelDebug.warning("XMLHTTP Unknown SID (" + this.rid + ")");
+        if (channelDebug.isLoggable(Level.WARNING)) {
+          channelDebug.warning("XMLHTTP Unknown SID (" + this.rid + ")");
+        }
       } else {
         this.lastError = ErrorEnum.STATUS;
         support.notifyStatEvent(RequestStat.REQUEST_BAD_STATUS);
-        channelDebug.warning("XMLHTTP Bad status " + status + " (" + this.rid + ")");
+        if (channelDebug.isLoggable(Level.WARNING)) {
+          channelDebug.warning("XMLHTTP Bad status " + status + " (" + this.rid + ")");
+        }
       }
       this.cleanup();
       this.dispatchFailure();
@@ -331,7 +401,7 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
         this.channel.onRequestComplete(this);
       } else {
         this.successful = false;
-        this.ensureWatchDogTimer();
+        this.extendWatchDogTimer();
       }
     }
   }
@@ -426,6 +496,11 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
 
       HttpRequest request = this.httpRequest;
       this.httpRequest = null;
+      if (!this.sendClose
+          && (!this.successful || request.getReadyState() != RequestReadyState.COMPLETE)) {
+        // Don't leave the connection of a failed or cancelled request open for reuse.
+        request.closeConnection();
+      }
       request.abort();
     }
   }
@@ -440,6 +515,19 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
     this.watchDogTimer = support.setTimeout(this, this.timeout);
   }
 
+  /**
+   * Pushes the watchdog deadline forward upon a partial response. The timer is
+   * not re-armed but reschedules itself for the remaining time when it fires,
+   * so a busy back channel doesn't cancel and arm a timer per chunk.
+   */
+  private void extendWatchDogTimer() {
+    if (this.watchDogTimer == null) {
+      this.ensureWatchDogTimer();
+      return;
+    }
+    this.watchDogTimeoutTime = System.currentTimeMillis() + this.timeout;
+  }
+
   private void cancelWatchDogTimer() {
     if (this.watchDogTimer != null) {
       support.clearTimeout(this.watchDogTimer);
@@ -454,7 +542,8 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
     this.verb = "GET";
 
     this.httpRequest = this.channel.createHttpRequest();
-    this.httpRequest.send(this.requestUri, this.verb, null, null);
+    this.httpRequest.send(
+        this.requestUri, this.verb, null, this.getHeaders().getCloseRequestHeaders());
 
     this.requestStartTime = System.currentTimeMillis();
     this.ensureWatchDogTimer();
@@ -464,10 +553,14 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
   public void onTimeout() {
     this.watchDogTimer = null;
     long now = System.currentTimeMillis();
-    if (now - this.watchDogTimeoutTime >= 0) {
+    if (this.paused) {
+      // The server is expected to be blocked while the response is paused.
+      this.watchDogTimeoutTime = now + this.timeout;
+      this.startWatchDogTimer(this.timeout);
+    } else if (now - this.watchDogTimeoutTime >= 0) {
       this.handleTimeout();
     } else {
-      channelDebug.warning("WatchDog timer called too early");
+      // The deadline has been extended since the timer was armed.
       this.startWatchDogTimer(this.watchDogTimeoutTime - now);
     }
   }
@@ -484,7 +577,10 @@ class ChannelRequest implements Support.RequestReadyStateChangeHandler, Support.
       this.channelDebug.severe("Received watchdog timeout even though request loaded successfully");
     }
 
-    channelDebug.info("TIMEOUT: " + this.requestUri.toString());
+    if (channelDebug.isLoggable(Level.INFO)) {
+      channelDebug.info("TIMEOUT: " + this.requestUri.toString());
+    }
+    support.getTracer().requestTimedOut(this.rid, this.verb);
 
     if (this.type != ChannelRequest.Type.CLOSE_REQUEST) {
       support.notifyServerReachabilityEvent(ServerReachability.REQUEST_FAILED);
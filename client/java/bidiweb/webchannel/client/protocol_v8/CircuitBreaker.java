@@ -0,0 +1,77 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import bidiweb.webchannel.client.protocol_v8.TransportContextStats.CircuitState;
+
+/**
+ * Stops the channels of a transport from making requests to a server after
+ * consecutive failures, until a single probe request succeeds after a cool
+ * down period.
+ *
+ * <p>Thread-safe, as the channels of a transport may run on different threads.
+ */
+class CircuitBreaker {
+  private final int failureThreshold;
+  private final long openDurationMs;
+  private CircuitState state;
+  private int consecutiveFailures;
+  private long openedTime;
+  private long probeTime;
+
+  public CircuitBreaker(int failureThreshold, long openDurationMs) {
+    this.failureThreshold = failureThreshold;
+    this.openDurationMs = openDurationMs;
+    this.state = CircuitState.CLOSED;
+    this.consecutiveFailures = 0;
+    this.openedTime = 0;
+    this.probeTime = 0;
+  }
+
+  /**
+   * @return 0 if a request may be made, i.e. the circuit is closed, or is
+   * half open and no other probe request is in progress, or else the time
+   * until a probe request may be made.
+   */
+  public synchronized long getRequestDelayMs() {
+    long now = System.currentTimeMillis();
+    long delayMs;
+    switch (this.state) {
+      case CLOSED:
+        return 0;
+      case OPEN:
+        delayMs = this.openDurationMs - (now - this.openedTime);
+        if (delayMs > 0) {
+          return delayMs;
+        }
+        this.state = CircuitState.HALF_OPEN;
+        this.probeTime = now;
+        return 0;
+      default:
+        // The probe may have been cancelled, without an outcome.
+        delayMs = this.openDurationMs - (now - this.probeTime);
+        if (delayMs > 0) {
+          return delayMs;
+        }
+        this.probeTime = now;
+        return 0;
+    }
+  }
+
+  public synchronized void onSuccess() {
+    this.state = CircuitState.CLOSED;
+    this.consecutiveFailures = 0;
+  }
+
+  public synchronized void onFailure() {
+    this.consecutiveFailures++;
+    if (this.state == CircuitState.HALF_OPEN
+        || (this.state == CircuitState.CLOSED
+            && this.consecutiveFailures >= this.failureThreshold)) {
+      this.state = CircuitState.OPEN;
+      this.openedTime = System.currentTimeMillis();
+    }
+  }
+
+  public synchronized CircuitState getState() {
+    return this.state;
+  }
+}
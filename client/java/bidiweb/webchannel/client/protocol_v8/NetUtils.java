@@ -1,9 +1,20 @@
 package bidiweb.webchannel.client.protocol_v8;
 
+import bidiweb.webchannel.client.support.Support;
+import bidiweb.webchannel.client.support.Support.HttpRequest;
+import bidiweb.webchannel.client.support.Support.RequestReadyState;
+import bidiweb.webchannel.client.support.Support.RequestReadyStateChangeHandler;
+import bidiweb.webchannel.client.support.Support.TimeoutHandler;
 import bidiweb.webchannel.client.support.Support.Uri;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Detects a network error v.s. a server error, by probing a URI other than
+ * the channel's. Any HTTP response from the probe URI means the network is up.
+ */
 class NetUtils {
-  // to be implemented, to detect network v.s. server error
 
   public static final long NETWORK_TIMEOUT = 10000;
 
@@ -11,14 +22,163 @@ class NetUtils {
     void onTestNetworkResult(boolean result);
   }
 
-  public static void testNetwork(TestNetworkCallback callback, Uri uri) {}
+  /**
+   * Tests the network, unless the verdict of a recent test of the same URI
+   * is cached in the transport context, or another channel of the transport
+   * is testing it already.
+   *
+   * @param context The transport context, or null to always test.
+   * @param uri The URI to probe, or null to skip the test.
+   */
+  public static void testNetwork(
+      final Support support,
+      final TransportContext context,
+      final TestNetworkCallback callback,
+      Uri uri) {
+    if (uri == null) {
+      return;
+    }
+    final String key = uri.toString();
+    if (context == null) {
+      testLoadImage(support, key, NETWORK_TIMEOUT, callback);
+      return;
+    }
+
+    final Boolean verdict = context.getNetworkVerdict(key);
+    if (verdict != null) {
+      support.setImmediate(new TimeoutHandler() {
+        public void onTimeout() {
+          callback.onTestNetworkResult(verdict);
+        }
+      });
+      return;
+    }
+
+    if (!context.startNetworkTest(key)) {
+      waitForNetworkVerdict(support, context, callback, key);
+      return;
+    }
+
+    testLoadImage(support, key, NETWORK_TIMEOUT, new TestNetworkCallback() {
+      public void onTestNetworkResult(boolean result) {
+        context.putNetworkVerdict(key, result);
+        callback.onTestNetworkResult(result);
+      }
+    });
+  }
+
+  /**
+   * Waits for the verdict of the test of another channel, which is delivered
+   * as soon as that test completes, or for the network timeout, e.g. if that
+   * channel has been closed meanwhile.
+   */
+  private static void waitForNetworkVerdict(
+      final Support support,
+      final TransportContext context,
+      final TestNetworkCallback callback,
+      final String key) {
+    // Confined to the thread of this channel.
+    final boolean[] done = {false};
+    final Object[] timer = {null};
+
+    final TransportContext.NetworkVerdictListener listener =
+        new TransportContext.NetworkVerdictListener() {
+          public void onNetworkVerdict(final boolean networkUp) {
+            support.post(new TimeoutHandler() {
+              public void onTimeout() {
+                if (done[0]) {
+                  return;
+                }
+                done[0] = true;
+                support.clearTimeout(timer[0]);
+                callback.onTestNetworkResult(networkUp);
+              }
+            });
+          }
+        };
+
+    if (!context.addNetworkVerdictListener(key, listener)) {
+      final Boolean verdict = context.getNetworkVerdict(key);
+      support.setImmediate(new TimeoutHandler() {
+        public void onTimeout() {
+          callback.onTestNetworkResult(verdict != null && verdict);
+        }
+      });
+      return;
+    }
+
+    timer[0] = support.setTimeout(new TimeoutHandler() {
+      public void onTimeout() {
+        if (done[0]) {
+          return;
+        }
+        done[0] = true;
+        context.removeNetworkVerdictListener(key, listener);
+        callback.onTestNetworkResult(false);
+      }
+    }, NETWORK_TIMEOUT);
+  }
 
   public static void testNetworkWithRetries(
-      Uri uri,
+      final Support support,
+      final Uri uri,
+      final long timeout,
+      final TestNetworkCallback callback,
+      final int retries,
+      final long pauseBetweenRetriesMS) {
+    testLoadImage(support, uri.toString(), timeout, new TestNetworkCallback() {
+      public void onTestNetworkResult(boolean result) {
+        if (result || retries <= 0) {
+          callback.onTestNetworkResult(result);
+          return;
+        }
+        support.setTimeout(new TimeoutHandler() {
+          public void onTimeout() {
+            testNetworkWithRetries(
+                support, uri, timeout, callback, retries - 1, pauseBetweenRetriesMS);
+          }
+        }, pauseBetweenRetriesMS);
+      }
+    });
+  }
+
+  /**
+   * Named after the JS image load, the probe is a GET request, as HEAD is not
+   * supported by Support.HttpRequest.
+   */
+  public static void testLoadImage(
+      final Support support,
+      String url,
       long timeout,
-      TestNetworkCallback callback,
-      int retries,
-      long pauseBetweenRetriesMS) {}
+      final TestNetworkCallback callback) {
+    final HttpRequest request = support.newHttpRequest();
+    final boolean[] done = {false};
 
-  public void testLoadImage(String url, long timeout, TestNetworkCallback callback) {}
+    final Object timer = support.setTimeout(new TimeoutHandler() {
+      public void onTimeout() {
+        if (done[0]) {
+          return;
+        }
+        done[0] = true;
+        request.abort();
+        callback.onTestNetworkResult(false);
+      }
+    }, timeout);
+
+    request.setReadyStateChangeHandler(new RequestReadyStateChangeHandler() {
+      public void onReadyStateChangeEvent(HttpRequest request) {
+        if (done[0] || request.getReadyState() != RequestReadyState.COMPLETE) {
+          return;
+        }
+        done[0] = true;
+        support.clearTimeout(timer);
+        // Any HTTP status, even an error, means the network is up.
+        callback.onTestNetworkResult(request.getStatus() > 0);
+      }
+    });
+
+    Map<String, String> headers = new HashMap<>();
+    headers.put("Connection", "close");
+    request.send(support.newUriBuilder(url), "GET", null, headers);
+  }
 }
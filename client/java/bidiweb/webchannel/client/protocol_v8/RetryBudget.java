@@ -0,0 +1,61 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+/**
+ * Limits the retries of the channels of a transport to a percentage of their
+ * successful requests, so that the retries don't amplify the load of a
+ * struggling server.
+ *
+ * <p>Each successful request deposits a fraction of a token, and each retry
+ * withdraws a whole one. The budget starts full, so that the channels may
+ * retry before any request has succeeded.
+ *
+ * <p>Thread-safe, as the channels of a transport may run on different threads.
+ */
+class RetryBudget {
+  private final double depositPerRequest;
+  private final double maxTokens;
+  private double tokens;
+  private long allowedRetries;
+  private long deniedRetries;
+
+  public RetryBudget(int retryPercent, int maxTokens) {
+    if (retryPercent <= 0 || maxTokens <= 0) {
+      throw new IllegalArgumentException(
+          "Invalid retry budget " + retryPercent + "% of max " + maxTokens);
+    }
+    this.depositPerRequest = retryPercent / 100.0;
+    this.maxTokens = maxTokens;
+    this.tokens = maxTokens;
+    this.allowedRetries = 0;
+    this.deniedRetries = 0;
+  }
+
+  public synchronized void onRequestSucceeded() {
+    this.tokens = Math.min(this.maxTokens, this.tokens + this.depositPerRequest);
+  }
+
+  /**
+   * @return Whether a retry is allowed, which then withdraws a token.
+   */
+  public synchronized boolean tryRetry() {
+    if (this.tokens < 1) {
+      this.deniedRetries++;
+      return false;
+    }
+    this.tokens--;
+    this.allowedRetries++;
+    return true;
+  }
+
+  public synchronized double getTokens() {
+    return this.tokens;
+  }
+
+  public synchronized long getAllowedRetries() {
+    return this.allowedRetries;
+  }
+
+  public synchronized long getDeniedRetries() {
+    return this.deniedRetries;
+  }
+}
@@ -0,0 +1,67 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+/**
+ * Smoothed round-trip time estimate of a channel, per Jacobson/Karels (RFC 6298).
+ */
+class RttEstimator {
+  private static final double ALPHA = 1.0 / 8;
+  private static final double BETA = 1.0 / 4;
+  private static final int VARIANCE_FACTOR = 4;
+
+  private final long minEstimateMs;
+  private final long maxEstimateMs;
+  private double smoothedRttMs;
+  private double rttVarianceMs;
+  private boolean hasSample;
+
+  public RttEstimator(long minEstimateMs, long maxEstimateMs) {
+    if (minEstimateMs > maxEstimateMs) {
+      throw new IllegalArgumentException(
+          "Min RTT estimate " + minEstimateMs + " over max " + maxEstimateMs);
+    }
+    this.minEstimateMs = minEstimateMs;
+    this.maxEstimateMs = maxEstimateMs;
+    this.smoothedRttMs = 0;
+    this.rttVarianceMs = 0;
+    this.hasSample = false;
+  }
+
+  public void addSample(long rttMs) {
+    if (rttMs < 0) {
+      return;
+    }
+    if (!this.hasSample) {
+      this.smoothedRttMs = rttMs;
+      this.rttVarianceMs = rttMs / 2.0;
+      this.hasSample = true;
+      return;
+    }
+    this.rttVarianceMs =
+        (1 - BETA) * this.rttVarianceMs + BETA * Math.abs(this.smoothedRttMs - rttMs);
+    this.smoothedRttMs = (1 - ALPHA) * this.smoothedRttMs + ALPHA * rttMs;
+  }
+
+  public boolean hasSample() {
+    return this.hasSample;
+  }
+
+  public long getSmoothedRtt() {
+    return Math.round(this.smoothedRttMs);
+  }
+
+  public long getRttVariance() {
+    return Math.round(this.rttVarianceMs);
+  }
+
+  /**
+   * @return The smoothed RTT plus four times its variance, within the
+   * configured bounds, or the max estimate until a sample has been taken.
+   */
+  public long getEstimate() {
+    if (!this.hasSample) {
+      return this.maxEstimateMs;
+    }
+    long estimate = Math.round(this.smoothedRttMs + VARIANCE_FACTOR * this.rttVarianceMs);
+    return Math.max(this.minEstimateMs, Math.min(this.maxEstimateMs, estimate));
+  }
+}
@@ -0,0 +1,322 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import bidiweb.webchannel.client.WebChannelTransportOptions;
+
+import bidiweb.webchannel.client.protocol_v8.TransportContextStats.CircuitState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state shared by all the channels created by the same transport, e.g.
+ * the results of the connection tests per server, the retry budget, the
+ * circuit breakers per server and the results of the network tests.
+ *
+ * <p>Thread-safe, as the channels of a transport may run on different threads.
+ */
+public final class TransportContext {
+
+  private final long connectionTestCacheTtlMs;
+
+  private final Map<String, CachedConnectionState> connectionStates =
+      new ConcurrentHashMap<>();
+
+  private final RetryBudget retryBudget;
+
+  private final int circuitBreakerFailureThreshold;
+
+  private final long circuitBreakerOpenMs;
+
+  private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+  private final AtomicLong rejectedRequests = new AtomicLong();
+
+  private final String networkTestUri;
+
+  private final long networkTestCacheTtlMs;
+
+  private final Map<String, CachedNetworkVerdict> networkVerdicts = new ConcurrentHashMap<>();
+
+  /** The start time of the network tests in progress, by URI. */
+  private final Map<String, Long> networkTests = new ConcurrentHashMap<>();
+
+  /** The channels waiting for the network tests in progress, by URI. */
+  private final Map<String, List<NetworkVerdictListener>> networkVerdictListeners =
+      new HashMap<>();
+
+  /**
+   * Notified of the verdict of the network test of another channel, from the
+   * thread of that channel.
+   */
+  interface NetworkVerdictListener {
+    void onNetworkVerdict(boolean networkUp);
+  }
+
+  private static final class CachedNetworkVerdict {
+    private final boolean networkUp;
+    private final long expiryTime;
+
+    private CachedNetworkVerdict(boolean networkUp, long expiryTime) {
+      this.networkUp = networkUp;
+      this.expiryTime = expiryTime;
+    }
+  }
+
+  private static final class CachedConnectionState {
+    private final List<String> handshakeResult;
+    private final Boolean bufferingProxyResult;
+    private final long expiryTime;
+
+    private CachedConnectionState(
+        List<String> handshakeResult, Boolean bufferingProxyResult, long expiryTime) {
+      this.handshakeResult = handshakeResult;
+      this.bufferingProxyResult = bufferingProxyResult;
+      this.expiryTime = expiryTime;
+    }
+  }
+
+  private TransportContext(WebChannelTransportOptions options) {
+    this.connectionTestCacheTtlMs = options.getConnectionTestCacheTtlMs();
+    if (options.getRetryBudgetPercent() > 0) {
+      this.retryBudget =
+          new RetryBudget(options.getRetryBudgetPercent(), options.getRetryBudgetMaxRetries());
+    } else {
+      this.retryBudget = null;
+    }
+    this.circuitBreakerFailureThreshold = options.getCircuitBreakerFailureThreshold();
+    this.circuitBreakerOpenMs = options.getCircuitBreakerOpenMs();
+    this.networkTestUri = options.getNetworkTestUri();
+    this.networkTestCacheTtlMs = options.getNetworkTestCacheTtlMs();
+  }
+
+  public static TransportContext create(WebChannelTransportOptions options) {
+    return new TransportContext(options);
+  }
+
+  /**
+   * @return A connection state with the cached test results for the given
+   * server, or null if there are none.
+   */
+  ConnectionState getConnectionState(String authority) {
+    if (this.connectionTestCacheTtlMs <= 0 || authority == null) {
+      return null;
+    }
+    CachedConnectionState cached = this.connectionStates.get(authority);
+    if (cached == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() - cached.expiryTime >= 0) {
+      this.connectionStates.remove(authority, cached);
+      return null;
+    }
+    ConnectionState result = new ConnectionState();
+    result.setHandshakeResult(cached.handshakeResult);
+    result.setBufferingProxyResult(cached.bufferingProxyResult);
+    return result;
+  }
+
+  /**
+   * Caches the test results of a channel to the given server, once both
+   * stages of the test have completed.
+   */
+  void putConnectionState(String authority, ConnectionState state) {
+    if (this.connectionTestCacheTtlMs <= 0 || authority == null) {
+      return;
+    }
+    if (state.getHandshakeResult() == null || state.getBufferingProxyResult() == null) {
+      return;
+    }
+    this.connectionStates.put(
+        authority,
+        new CachedConnectionState(
+            Collections.unmodifiableList(state.getHandshakeResult()),
+            state.getBufferingProxyResult(),
+            System.currentTimeMillis() + this.connectionTestCacheTtlMs));
+  }
+
+  /**
+   * Drops the cached test results for the given server, e.g. after a failure
+   * to connect to it.
+   */
+  void invalidateConnectionState(String authority) {
+    if (authority != null) {
+      this.connectionStates.remove(authority);
+    }
+  }
+
+  /**
+   * @param retryBackoffMs The backoff of the request if it is a retry.
+   * @return 0 if a channel may make a request to the given server now, or
+   * else the time to wait before trying again: until the circuit breaker of
+   * the server lets a probe through, or the backoff of a retry which the
+   * retry budget doesn't allow.
+   */
+  long getRequestDelayMs(String authority, boolean retry, long retryBackoffMs) {
+    CircuitBreaker circuitBreaker = this.getCircuitBreaker(authority);
+    if (circuitBreaker != null) {
+      long delayMs = circuitBreaker.getRequestDelayMs();
+      if (delayMs > 0) {
+        this.rejectedRequests.incrementAndGet();
+        return delayMs;
+      }
+    }
+    if (retry && this.retryBudget != null && !this.retryBudget.tryRetry()) {
+      return Math.max(1, retryBackoffMs);
+    }
+    return 0;
+  }
+
+  void onRequestSucceeded(String authority) {
+    if (this.retryBudget != null) {
+      this.retryBudget.onRequestSucceeded();
+    }
+    CircuitBreaker circuitBreaker = this.getCircuitBreaker(authority);
+    if (circuitBreaker != null) {
+      circuitBreaker.onSuccess();
+    }
+  }
+
+  void onRequestFailed(String authority) {
+    CircuitBreaker circuitBreaker = this.getCircuitBreaker(authority);
+    if (circuitBreaker != null) {
+      circuitBreaker.onFailure();
+    }
+  }
+
+  private CircuitBreaker getCircuitBreaker(String authority) {
+    if (this.circuitBreakerFailureThreshold <= 0 || authority == null) {
+      return null;
+    }
+    CircuitBreaker circuitBreaker = this.circuitBreakers.get(authority);
+    if (circuitBreaker == null) {
+      circuitBreaker =
+          new CircuitBreaker(this.circuitBreakerFailureThreshold, this.circuitBreakerOpenMs);
+      CircuitBreaker existing = this.circuitBreakers.putIfAbsent(authority, circuitBreaker);
+      if (existing != null) {
+        circuitBreaker = existing;
+      }
+    }
+    return circuitBreaker;
+  }
+
+  /**
+   * @return The URI to test the network with when a request fails, or null
+   * to skip the test.
+   */
+  String getNetworkTestUri() {
+    return this.networkTestUri;
+  }
+
+  /**
+   * @return The cached result of a recent network test of the given URI,
+   * or null if there is none.
+   */
+  Boolean getNetworkVerdict(String uri) {
+    if (this.networkTestCacheTtlMs <= 0) {
+      return null;
+    }
+    CachedNetworkVerdict cached = this.networkVerdicts.get(uri);
+    if (cached == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() - cached.expiryTime >= 0) {
+      this.networkVerdicts.remove(uri, cached);
+      return null;
+    }
+    return cached.networkUp;
+  }
+
+  /**
+   * @return Whether the caller is to test the network with the given URI, or
+   * is to wait for the verdict of the test of another channel.
+   */
+  boolean startNetworkTest(String uri) {
+    if (this.networkTestCacheTtlMs <= 0) {
+      return true;
+    }
+    long now = System.currentTimeMillis();
+    Long startTime = this.networkTests.putIfAbsent(uri, now);
+    if (startTime == null) {
+      return true;
+    }
+    // The test may have been abandoned, e.g. by a closed channel.
+    return now - startTime >= NetUtils.NETWORK_TIMEOUT
+        && this.networkTests.replace(uri, startTime, now);
+  }
+
+  void putNetworkVerdict(String uri, boolean networkUp) {
+    if (this.networkTestCacheTtlMs <= 0) {
+      return;
+    }
+    this.networkVerdicts.put(
+        uri,
+        new CachedNetworkVerdict(networkUp, System.currentTimeMillis() + this.networkTestCacheTtlMs));
+    this.networkTests.remove(uri);
+    List<NetworkVerdictListener> listeners;
+    synchronized (this.networkVerdictListeners) {
+      listeners = this.networkVerdictListeners.remove(uri);
+    }
+    if (listeners != null) {
+      for (NetworkVerdictListener listener : listeners) {
+        listener.onNetworkVerdict(networkUp);
+      }
+    }
+  }
+
+  /**
+   * Registers the listener for the verdict of the network test of the given
+   * URI by another channel, see startNetworkTest().
+   *
+   * @return false if the verdict is already cached, to be read with
+   * getNetworkVerdict() instead.
+   */
+  boolean addNetworkVerdictListener(String uri, NetworkVerdictListener listener) {
+    synchronized (this.networkVerdictListeners) {
+      // Under the lock, not to miss a verdict put meanwhile.
+      if (this.getNetworkVerdict(uri) != null) {
+        return false;
+      }
+      List<NetworkVerdictListener> listeners = this.networkVerdictListeners.get(uri);
+      if (listeners == null) {
+        listeners = new ArrayList<>();
+        this.networkVerdictListeners.put(uri, listeners);
+      }
+      listeners.add(listener);
+      return true;
+    }
+  }
+
+  /** Unregisters the listener of a channel that has stopped waiting. */
+  void removeNetworkVerdictListener(String uri, NetworkVerdictListener listener) {
+    synchronized (this.networkVerdictListeners) {
+      List<NetworkVerdictListener> listeners = this.networkVerdictListeners.get(uri);
+      if (listeners != null && listeners.remove(listener) && listeners.isEmpty()) {
+        this.networkVerdictListeners.remove(uri);
+      }
+    }
+  }
+
+  /**
+   * @return A snapshot of the retry budget and the circuit breakers.
+   */
+  public TransportContextStats getStats() {
+    Map<String, CircuitState> circuitStates = new HashMap<>();
+    for (Map.Entry<String, CircuitBreaker> entry : this.circuitBreakers.entrySet()) {
+      circuitStates.put(entry.getKey(), entry.getValue().getState());
+    }
+    if (this.retryBudget == null) {
+      return new TransportContextStats(0, 0, 0, this.rejectedRequests.get(), circuitStates);
+    }
+    return new TransportContextStats(
+        this.retryBudget.getTokens(),
+        this.retryBudget.getAllowedRetries(),
+        this.retryBudget.getDeniedRetries(),
+        this.rejectedRequests.get(),
+        circuitStates);
+  }
+}
@@ -0,0 +1,83 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of the state shared by the channels of a transport that limits
+ * their requests, i.e. the retry budget and the circuit breakers per server.
+ */
+public final class TransportContextStats {
+
+  /** The state of the circuit breaker of a server. */
+  public enum CircuitState {
+    /** Requests are allowed. */
+    CLOSED,
+
+    /** Requests are rejected after consecutive failures. */
+    OPEN,
+
+    /** A single probe request is allowed, which closes the circuit on success. */
+    HALF_OPEN
+  }
+
+  private final double retryBudgetTokens;
+  private final long allowedRetries;
+  private final long deniedRetries;
+  private final long rejectedRequests;
+  private final Map<String, CircuitState> circuitStates;
+
+  TransportContextStats(
+      double retryBudgetTokens,
+      long allowedRetries,
+      long deniedRetries,
+      long rejectedRequests,
+      Map<String, CircuitState> circuitStates) {
+    this.retryBudgetTokens = retryBudgetTokens;
+    this.allowedRetries = allowedRetries;
+    this.deniedRetries = deniedRetries;
+    this.rejectedRequests = rejectedRequests;
+    this.circuitStates = Collections.unmodifiableMap(circuitStates);
+  }
+
+  /**
+   * @return The number of retries left in the retry budget, or 0 if there is
+   * no retry budget.
+   */
+  public double getRetryBudgetTokens() {
+    return this.retryBudgetTokens;
+  }
+
+  public long getAllowedRetries() {
+    return this.allowedRetries;
+  }
+
+  public long getDeniedRetries() {
+    return this.deniedRetries;
+  }
+
+  /**
+   * @return The number of requests held back by an open circuit breaker.
+   */
+  public long getRejectedRequests() {
+    return this.rejectedRequests;
+  }
+
+  /**
+   * @return The state of the circuit breaker of each server, by authority.
+   */
+  public Map<String, CircuitState> getCircuitStates() {
+    return this.circuitStates;
+  }
+
+  @Override
+  public String toString() {
+    return "TransportContextStats{"
+        + "retryBudgetTokens=" + retryBudgetTokens
+        + ", allowedRetries=" + allowedRetries
+        + ", deniedRetries=" + deniedRetries
+        + ", rejectedRequests=" + rejectedRequests
+        + ", circuitStates=" + circuitStates
+        + '}';
+  }
+}
@@ -0,0 +1,172 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import bidiweb.webchannel.client.support.Support;
+import bidiweb.webchannel.client.support.Support.Uri;
+import bidiweb.webchannel.client.support.Support.UriBuilder;
+
+/**
+ * A channel URI whose static part, i.e. the path and the static query
+ * parameters, is encoded once, so that a request URI is built by appending
+ * the per-request parameters to a reused buffer, instead of cloning and
+ * re-encoding a UriBuilder for every request.
+ *
+ * <p>Not thread-safe, like the channel which owns it. The base URI is not
+ * expected to have a fragment.
+ */
+class UriTemplate {
+  private final String prefix;
+  private final boolean hasQuery;
+  private final String authority;
+  private final Support support;
+  private final StringBuilder buffer;
+
+  public UriTemplate(Support support, UriBuilder base) {
+    this.prefix = base.toString();
+    this.hasQuery = this.prefix.indexOf('?') >= 0;
+    this.authority = base.getAuthority();
+    this.support = support;
+    this.buffer = new StringBuilder(this.prefix.length() + 128);
+    this.start();
+  }
+
+  /**
+   * Starts a new request URI, which discards the parameters appended since
+   * the last build().
+   */
+  public UriTemplate start() {
+    this.buffer.setLength(0);
+    this.buffer.append(this.prefix);
+    return this;
+  }
+
+  public UriTemplate param(String name, String value) {
+    this.appendName(name);
+    appendEncoded(this.buffer, value, this.support);
+    return this;
+  }
+
+  public UriTemplate param(String name, long value) {
+    this.appendName(name);
+    this.buffer.append(value);
+    return this;
+  }
+
+  private void appendName(String name) {
+    if (this.buffer.length() > this.prefix.length() || this.hasQuery) {
+      this.buffer.append('&');
+    } else {
+      this.buffer.append('?');
+    }
+    appendEncoded(this.buffer, name, this.support);
+    this.buffer.append('=');
+  }
+
+  public UriBuilder build() {
+    return new ExpandedUri(this.support, this.buffer.toString(), this.authority);
+  }
+
+  /**
+   * @return The given URI with one more query parameter, which doesn't
+   *     re-parse the URI if it has been built by a template.
+   */
+  public static UriBuilder withParam(Support support, Uri uri, String name, long value) {
+    String base = uri.toString();
+    String authority = uri instanceof StringUri ? ((StringUri) uri).authority : null;
+    StringBuilder sb = new StringBuilder(base.length() + name.length() + 22);
+    sb.append(base).append(base.indexOf('?') >= 0 ? '&' : '?');
+    sb.append(name).append('=').append(value);
+    return new ExpandedUri(support, sb.toString(), authority);
+  }
+
+  /**
+   * Appends the value as is if it only has unreserved characters, which is
+   * the case of the SID and of the other protocol values, so that nothing is
+   * allocated for them.
+   */
+  private static void appendEncoded(StringBuilder sb, String value, Support support) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (!((c >= 'a' && c <= 'z')
+          || (c >= 'A' && c <= 'Z')
+          || (c >= '0' && c <= '9')
+          || c == '-'
+          || c == '_'
+          || c == '.'
+          || c == '~')) {
+        sb.append(support.getUrlEncoder().encode(value));
+        return;
+      }
+    }
+    sb.append(value);
+  }
+
+  private static class StringUri extends Uri {
+    private final String uri;
+    private final String authority;
+
+    StringUri(String uri, String authority) {
+      this.uri = uri;
+      this.authority = authority;
+    }
+
+    @Override
+    public String toString() {
+      return this.uri;
+    }
+  }
+
+  /**
+   * A built URI. Adding parameters to it copies the URI, which is only meant
+   * for the requests that are not on the hot path.
+   */
+  private static class ExpandedUri extends UriBuilder {
+    private final Support support;
+    private String uri;
+    private String authority; // parsed on demand if null
+    private StringUri cachedUri;
+
+    ExpandedUri(Support support, String uri, String authority) {
+      this.support = support;
+      this.uri = uri;
+      this.authority = authority;
+    }
+
+    @Override
+    public UriBuilder addQueryParameter(String name, String value) {
+      StringBuilder sb = new StringBuilder(this.uri);
+      sb.append(this.uri.indexOf('?') >= 0 ? '&' : '?');
+      appendEncoded(sb, name, this.support);
+      sb.append('=');
+      appendEncoded(sb, value, this.support);
+      this.uri = sb.toString();
+      this.cachedUri = null;
+      return this;
+    }
+
+    @Override
+    public String getAuthority() {
+      if (this.authority == null) {
+        this.authority = this.support.newUriBuilder(this.uri).getAuthority();
+      }
+      return this.authority;
+    }
+
+    @Override
+    public Uri getUri() {
+      if (this.cachedUri == null) {
+        this.cachedUri = new StringUri(this.uri, this.authority);
+      }
+      return this.cachedUri;
+    }
+
+    @Override
+    public UriBuilder clone() {
+      return new ExpandedUri(this.support, this.uri, this.authority);
+    }
+
+    @Override
+    public String toString() {
+      return this.uri;
+    }
+  }
+}
@@ -4,7 +4,9 @@ import bidiweb.webchannel.client.WebChannelConstants;
 import bidiweb.webchannel.client.WebChannelOptions;
 import bidiweb.webchannel.client.support.Support;
 import bidiweb.webchannel.client.support.Support.Debugger;
+import bidiweb.webchannel.client.support.Support.Debugger.Level;
 import bidiweb.webchannel.client.support.Support.HttpRequest;
+import bidiweb.webchannel.client.support.Support.Measurement;
 import bidiweb.webchannel.client.support.Support.RequestStat;
 import bidiweb.webchannel.client.support.Support.TimeoutHandler;
 import bidiweb.webchannel.client.support.Support.Uri;
@@ -12,8 +14,10 @@ import bidiweb.webchannel.client.support.Support.UriBuilder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
   // no sub-domains
@@ -33,13 +37,49 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
   private ConnectionState connState;
   private Map<String, String> extraHeaders;
   private Map<String, String> initHeaders;
+  // The above headers merged per kind of request, built on demand
+  private ChannelHeaders requestHeaders;
+  private ChannelHeaders initRequestHeaders;
   private Map<String, String> extraParams;
   private String httpSessionIdParam;
   private String httpSessionId;
   private ChannelRequest backChannelRequest;
+  private ChannelRequest standbyBackChannelRequest;
+  private Object standbyBackChannelTimer;
+  private long backChannelBytes;
+  private long backChannelMaxDurationMs;
+  private long backChannelMaxBytes;
+  private int requestedBackChannelStripes;
+  private int backChannelStripes;
+  private ChannelRequest[] stripeRequests;
+  private Object[] stripeTimers;
+  private int[] stripeRetryCounts;
+  // The arrays received ahead of lastArrayId + 1, e.g. on another stripe or on
+  // the other one of overlapping back channels, held back until the missing
+  // ones arrive
+  private Map<Long, Object> reorderBuffer;
+  private int autoReconnectMaxAttempts;
+  private int reconnectAttempts;
+  private boolean reconnecting;
+  private Object reconnectTimer;
+  private TransportContext transportContext;
+  private String authority;
+  private boolean cachedConnectionState;
+  private Object connectTestTimer;
+  private long reconnectStartTime;
+  private int messageTraceSampleInterval;
+  private boolean keepAliveBackChannel;
+  private boolean bufferingProxyDetected;
+  private int outgoingTraceCount;
+  private int incomingTraceCount;
+  private boolean speculativeOpen;
+  private boolean speculativelyConnected;
   private String path;
   private UriBuilder forwardChannelUri;
   private UriBuilder backChannelUri;
+  // The above URIs with their static params pre-encoded, for building the request URIs
+  private UriTemplate forwardChannelUriTemplate;
+  private UriTemplate backChannelUriTemplate;
   private long nextRid;
   private long nextMapId;
   private boolean failFast;
@@ -52,6 +92,7 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
   private boolean allowChunkedMode;
   private long lastArrayId;
   private long lastPostResponseArrayId;
+  private long lastPostResponseOutstandingBytes;
   private int lastStatusCode;
   private int forwardChannelRetryCount;
   private int backChannelRetryCount;
@@ -66,7 +107,10 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
   private boolean backgroundChannelTest;
   private int channelVersion;
   private State state;
-
+  private boolean backChannelPaused;
+  private int backChannelPauseCount;
+  private RttEstimator rttEstimator;
+  private boolean adaptiveTimeouts;
 
   public WebChannelBase(
       Support support, WebChannelOptions options, int clientVersion, ConnectionState conn) {
@@ -79,13 +123,47 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     this.connState = conn == null ? new ConnectionState() : conn;
     this.extraHeaders = null;
     this.initHeaders = null;
+    this.requestHeaders = null;
+    this.initRequestHeaders = null;
     this.extraParams = null;
     this.httpSessionIdParam = null;
     this.httpSessionId = null;
     this.backChannelRequest = null;
+    this.standbyBackChannelRequest = null;
+    this.standbyBackChannelTimer = null;
+    this.backChannelBytes = 0;
+    this.backChannelMaxDurationMs = options == null ? 0 : options.getBackChannelMaxDurationMs();
+    this.backChannelMaxBytes = options == null ? 0 : options.getBackChannelMaxBytes();
+    this.requestedBackChannelStripes =
+        options == null ? 1 : Math.max(1, options.getBackChannelStripes());
+    this.backChannelStripes = 1;
+    this.stripeRequests = null;
+    this.stripeTimers = null;
+    this.stripeRetryCounts = null;
+    this.reorderBuffer = new HashMap<>();
+    this.autoReconnectMaxAttempts = options == null ? 0 : options.getAutoReconnectMaxAttempts();
+    this.reconnectAttempts = 0;
+    this.reconnecting = false;
+    this.reconnectTimer = null;
+    this.transportContext = null;
+    this.authority = null;
+    this.cachedConnectionState = false;
+    this.connectTestTimer = null;
+    this.reconnectStartTime = 0;
+    this.messageTraceSampleInterval =
+        options == null ? 0 : options.getMessageTraceSampleInterval();
+    this.keepAliveBackChannel =
+        options != null && options.getKeepAliveBackChannel() && support.supportsConnectionReuse();
+    this.bufferingProxyDetected = false;
+    this.outgoingTraceCount = 0;
+    this.incomingTraceCount = 0;
+    this.speculativeOpen = options != null && options.getSpeculativeOpen();
+    this.speculativelyConnected = false;
     this.path = null;
     this.forwardChannelUri = null;
     this.backChannelUri = null;
+    this.forwardChannelUriTemplate = null;
+    this.backChannelUriTemplate = null;
     this.nextRid = 0;
     this.nextMapId = 0;
     this.failFast = false;
@@ -98,6 +176,7 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     this.allowChunkedMode = true;
     this.lastArrayId = -1;
     this.lastPostResponseArrayId = -1;
+    this.lastPostResponseOutstandingBytes = 0;
     this.lastStatusCode = -1;
     this.forwardChannelRetryCount = 0;
     this.backChannelRetryCount = 0;
@@ -113,6 +192,15 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     this.backgroundChannelTest = options != null && options.getBackgroundChannelTest();
     this.channelVersion = Wire.LATEST_CHANNEL_VERSION;
     this.state = State.INIT;
+    this.backChannelPaused = false;
+    this.backChannelPauseCount = 0;
+    this.rttEstimator =
+        options == null
+            ? new RttEstimator(
+                WebChannelOptions.DEFAULT_MIN_RTT_ESTIMATE_MS,
+                WebChannelOptions.DEFAULT_MAX_RTT_ESTIMATE_MS)
+            : new RttEstimator(options.getMinRttEstimateMs(), options.getMaxRttEstimateMs());
+    this.adaptiveTimeouts = options != null && options.getAdaptiveTimeouts();
   }
 
   public enum State {
@@ -147,10 +235,49 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
 
   public static final int INACTIVE_CHANNEL_RETRY_FACTOR = 2;
 
+  /** The standby back channel is opened past this share of the max bytes. */
+  public static final double STANDBY_BACK_CHANNEL_BYTES_RATIO = 0.75;
+
+  /** The standby back channel is opened this many RTTs before the max duration. */
+  public static final int STANDBY_BACK_CHANNEL_LEAD_RTT_FACTOR = 2;
+
+  /**
+   * The max number of arrays received ahead of a missing one, e.g. with striped
+   * or overlapping back channels, beyond which the channel fails.
+   */
+  public static final int MAX_REORDER_BUFFER_SIZE = 10000;
+
+  /** The POST timeout in RTT estimates, with adaptive timeouts. */
+  public static final int FORWARD_CHANNEL_TIMEOUT_RTT_FACTOR = 8;
+
   private static final int MAX_MAPS_PER_REQUEST = 1000;
 
   public static final long OUTSTANDING_DATA_BACKCHANNEL_RETRY_CUTOFF = 37500;
 
+  public RttEstimator getRttEstimator() {
+    return this.rttEstimator;
+  }
+
+  /**
+   * @return The RTT estimate measured by the channel with adaptive timeouts,
+   * or else the fixed RTT_ESTIMATE.
+   */
+  private long getRttEstimate() {
+    if (!this.adaptiveTimeouts) {
+      return RTT_ESTIMATE;
+    }
+    return this.rttEstimator.getEstimate();
+  }
+
+  private long getForwardChannelRequestTimeout() {
+    if (!this.adaptiveTimeouts || !this.rttEstimator.hasSample()) {
+      return this.forwardChannelRequestTimeoutMs;
+    }
+    return Math.min(
+        this.forwardChannelRequestTimeoutMs,
+        FORWARD_CHANNEL_TIMEOUT_RTT_FACTOR * this.rttEstimator.getEstimate());
+  }
+
   public ForwardChannelRequestPool getForwardChannelRequestPool() {
     return this.forwardChannelRequestPool;
   }
@@ -177,6 +304,8 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
 
   public void setExtraHeaders(Map<String, String> extraHeaders) {
     this.extraHeaders = extraHeaders;
+    this.requestHeaders = null;
+    this.initRequestHeaders = null;
   }
 
   public Map<String, String> getInitHeaders() {
@@ -185,6 +314,30 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
 
   public void setInitHeaders(Map<String, String> initHeaders) {
     this.initHeaders = initHeaders;
+    this.initRequestHeaders = null;
+  }
+
+  private ChannelHeaders getRequestHeaders() {
+    if (this.requestHeaders == null) {
+      this.requestHeaders = new ChannelHeaders(support, this.extraHeaders);
+    }
+    return this.requestHeaders;
+  }
+
+  private ChannelHeaders getInitRequestHeaders() {
+    if (this.initHeaders == null || this.initHeaders.isEmpty()) {
+      return this.getRequestHeaders();
+    }
+    if (this.initRequestHeaders == null) {
+      // mix the init headers
+      Map<String, String> headers = new HashMap<>();
+      if (this.extraHeaders != null) {
+        headers.putAll(this.extraHeaders);
+      }
+      headers.putAll(this.initHeaders);
+      this.initRequestHeaders = new ChannelHeaders(support, headers);
+    }
+    return this.initRequestHeaders;
   }
 
   public void setHttpSessionIdParam(String httpSessionIdParam) {
@@ -244,10 +397,89 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     return BACK_CHANNEL_MAX_RETRIES;
   }
 
+  public boolean isBackChannelPaused() {
+    return this.backChannelPaused;
+  }
+
+  /**
+   * Pauses or resumes the back channel. While paused, the response of the
+   * current back channel request is not read, and no new back channel request
+   * will be made.
+   *
+   * <p>The pauses nest, so that the back channel is resumed once every pause
+   * has been matched by a resume, e.g. when both the application's flow control
+   * and its callback queue pause it. A resume without a pause is ignored.
+   */
+  public void setBackChannelPaused(boolean paused) {
+    if (paused) {
+      this.backChannelPauseCount++;
+    } else if (this.backChannelPauseCount > 0) {
+      this.backChannelPauseCount--;
+    }
+    paused = this.backChannelPauseCount > 0;
+    if (this.backChannelPaused == paused) {
+      return;
+    }
+    if (channelDebug.isLoggable(Level.DEBUG)) {
+      channelDebug.debug("setBackChannelPaused: " + paused);
+    }
+    this.backChannelPaused = paused;
+    if (paused) {
+      this.clearDeadBackchannelTimer();
+    }
+    if (this.standbyBackChannelRequest != null) {
+      this.standbyBackChannelRequest.setPaused(paused);
+    }
+    for (int stripe = 1; stripe < this.backChannelStripes; stripe++) {
+      if (this.stripeRequests[stripe] != null) {
+        this.stripeRequests[stripe].setPaused(paused);
+      } else if (!paused && this.state == State.OPENED) {
+        this.ensureStripe(stripe, 0);
+      }
+    }
+    if (this.backChannelRequest != null) {
+      this.backChannelRequest.setPaused(paused);
+    } else if (!paused && this.state == State.OPENED) {
+      this.ensureBackChannel();
+    }
+    if (!paused
+        && this.state == State.OPENED
+        && this.backChannelRequest != null
+        && this.lastPostResponseArrayId > this.lastArrayId
+        && this.shouldRetryBackChannel(this.lastPostResponseOutstandingBytes)) {
+      // The timer cleared upon the pause, for the arrays still outstanding.
+      this.startDeadBackChannelTimer();
+    }
+  }
+
+  /**
+   * Sets the state shared with the other channels of the transport.
+   */
+  public void setTransportContext(TransportContext transportContext) {
+    this.transportContext = transportContext;
+  }
+
+  public TransportContext getTransportContext() {
+    return this.transportContext;
+  }
+
+  /**
+   * @return The authority of the server, if the channel shares a transport
+   * context with other channels.
+   */
+  public String getAuthority() {
+    return this.authority;
+  }
+
   public boolean isClosed() {
     return this.state == State.CLOSED;
   }
 
+  private void setState(State state) {
+    support.getTracer().stateChanged(this.state.name(), state.name());
+    this.state = state;
+  }
+
   public State getState() {
     return this.state;
   }
@@ -269,6 +501,14 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     if (this.backChannelRequest != null) {
       count++;
     }
+    if (this.standbyBackChannelRequest != null) {
+      count++;
+    }
+    for (int stripe = 1; stripe < this.backChannelStripes; stripe++) {
+      if (this.stripeRequests[stripe] != null) {
+        count++;
+      }
+    }
     count += this.forwardChannelRequestPool.getRequestCount();
     return count;
   }
@@ -284,7 +524,22 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     support.notifyStatEvent(RequestStat.CONNECT_ATTEMPT);
 
     this.path = channelPath;
-    this.extraParams = extraParams != null ? extraParams : new HashMap<String, String>();
+    // A copy, since the OSID and OAID of a reconnect are added to it, while the
+    // given params are those of the options, which may be shared by channels.
+    this.extraParams =
+        extraParams != null
+            ? new HashMap<String, String>(extraParams)
+            : new HashMap<String, String>();
+
+    if (this.transportContext != null) {
+      this.authority = support.newUriBuilder(channelPath).getAuthority();
+      ConnectionState cached = this.transportContext.getConnectionState(this.authority);
+      if (cached != null) {
+        channelDebug.debug("connect() using the cached connection test results.");
+        this.connState = cached;
+        this.cachedConnectionState = true;
+      }
+    }
 
     if (oldSessionId != null && oldArrayId != null) {
       this.extraParams.put("OSID", oldSessionId);
@@ -297,16 +552,48 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
       this.connState.setBufferingProxyResult(false);
     }
 
+    if (this.shouldOpenSpeculatively()) {
+      // Assume a streaming connection, until the test says otherwise.
+      channelDebug.debug("connect() opening the channel during the channel-test.");
+      this.speculativelyConnected = true;
+      this.useChunked = this.allowChunkedMode;
+      this.connectChannel();
+    }
+
     this.connectTest(testPath);
   }
 
-  private void connectTest(String testPath) {
+  /**
+   * The channel is opened concurrently with the test unless the test results
+   * are known already, or the test provides the HTTP session id of the channel.
+   */
+  private boolean shouldOpenSpeculatively() {
+    return this.speculativeOpen
+        && this.getHttpSessionIdParam() == null
+        && (this.connState.getHandshakeResult() == null
+            || this.connState.getBufferingProxyResult() == null);
+  }
+
+  private void connectTest(final String testPath) {
     channelDebug.debug("connectTest_()");
     if (!this.okToMakeRequest()) {
       return;
     }
+    long delay = this.getRequestDelay(false, 0);
+    if (delay > 0) {
+      this.connectTestTimer =
+          support.setTimeout(
+              new TimeoutHandler() {
+                public void onTimeout() {
+                  WebChannelBase.this.connectTestTimer = null;
+                  WebChannelBase.this.connectTest(testPath);
+                }
+              },
+              delay);
+      return;
+    }
     this.connectionTest = new BaseTestChannel(support, this);
-    this.connectionTest.setExtraHeaders(this.extraHeaders);
+    this.connectionTest.setHeaders(this.getRequestHeaders());
     this.connectionTest.connect(testPath);
   }
 
@@ -317,17 +604,17 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
 
     if (this.state == State.OPENED) {
       long rid = this.nextRid++;
-      UriBuilder uri = forwardChannelUri.clone();
-      uri.addQueryParameter("SID", this.sid);
-      uri.addQueryParameter("RID", Long.toString(rid));
-      uri.addQueryParameter("TYPE", "terminate");
+      UriTemplate uri = this.forwardChannelUriTemplate.start();
+      uri.param("SID", this.sid);
+      uri.param("RID", rid);
+      uri.param("TYPE", "terminate");
 
       // Add the reconnect parameters.
       this.addAdditionalParams(uri);
 
       ChannelRequest request =
           ChannelRequest.createChannelRequest(support, this, this.sid, Long.toString(rid));
-      request.sendCloseRequest(uri);
+      request.sendCloseRequest(uri.build());
     }
 
     this.onClose();
@@ -344,6 +631,17 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     }
   }
 
+  private void addAdditionalParams(UriTemplate uri) {
+    if (this.handler != null) {
+      Map<String, String> params = this.handler.getAdditionalParams(this);
+      if (params != null) {
+        for (String key : params.keySet()) {
+          uri.param(key, params.get(key));
+        }
+      }
+    }
+  }
+
   private boolean okToMakeRequest() {
     if (this.handler != null) {
       ErrorEnum result = this.handler.okToMakeRequest(this);
@@ -356,8 +654,25 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     return true;
   }
 
+  /**
+   * @param retry Whether the request is the retry of a failed request.
+   * @param retryCount The number of retries of the request so far.
+   * @return The time to wait before making the request, if the transport
+   * holds the requests to the server back, e.g. while its circuit breaker is
+   * open, or 0.
+   */
+  private long getRequestDelay(boolean retry, int retryCount) {
+    if (this.handler == null) {
+      return 0;
+    }
+    long retryBackoff = retry ? this.getRetryTime(Math.max(1, retryCount)) : 0;
+    return this.handler.getRequestDelayMs(this, retry, retryBackoff);
+  }
+
   private void signalError(ErrorEnum error) {
-    channelDebug.info("Error code " + error);
+    if (channelDebug.isLoggable(Level.INFO)) {
+      channelDebug.info("Error code " + error);
+    }
     if (error == WebChannelBase.ErrorEnum.REQUEST_FAILED) {
       // Create a separate Internet connection to check
       // if it"s a server error or user"s network error.
@@ -365,7 +680,12 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
       if (this.handler != null) {
         imageUri = this.handler.getNetworkTestImageUri(this);
       }
-      NetUtils.testNetwork(this, imageUri);
+      if (imageUri == null
+          && this.transportContext != null
+          && this.transportContext.getNetworkTestUri() != null) {
+        imageUri = support.newUriBuilder(this.transportContext.getNetworkTestUri()).getUri();
+      }
+      NetUtils.testNetwork(support, this.transportContext, this, imageUri);
     } else {
       support.notifyStatEvent(RequestStat.ERROR_OTHER);
     }
@@ -374,23 +694,55 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
 
   public void onTestNetworkResult(boolean networkUp) {
     if (networkUp) {
-      channelDebug.info("Successfully pinged google.com");
+      channelDebug.info("Successfully tested the network");
       support.notifyStatEvent(RequestStat.ERROR_OTHER);
     } else {
-      channelDebug.info("Failed to ping google.com");
+      channelDebug.info("Failed to test the network");
       support.notifyStatEvent(RequestStat.ERROR_NETWORK);
     }
   }
 
-  private void onSuccess() {
+  private void onSuccess(ChannelRequest request) {
+    if (this.messageTraceSampleInterval > 0) {
+      long now = System.nanoTime();
+      for (Wire.QueuedMap map : request.getPendingMessages()) {
+        if (map.dequeueTime != 0) {
+          support.notifyMeasurement(
+              Measurement.MESSAGE_ACK_TIME_US, (now - map.dequeueTime) / 1000);
+          support.notifyMeasurement(
+              Measurement.MESSAGE_SEND_LATENCY_US, (now - map.enqueueTime) / 1000);
+        }
+      }
+    }
     if (this.handler != null) {
-      this.handler.channelSuccess(this, this.pendingMaps);
+      this.handler.channelSuccess(this, request.getPendingMessages());
     }
   }
 
+  private void clearPendingMaps(ChannelRequest request) {
+    if (!this.forwardChannelRequestPool.hasPendingRequest()) {
+      this.pendingMaps.clear();
+      return;
+    }
+    // Other POSTs are still in flight.
+    Set<Wire.QueuedMap> delivered =
+        Collections.newSetFromMap(new IdentityHashMap<Wire.QueuedMap, Boolean>());
+    delivered.addAll(request.getPendingMessages());
+    this.pendingMaps.removeAll(delivered);
+  }
+
   private void onError(ErrorEnum error) {
-    channelDebug.debug("HttpChannel: error - " + error);
-    this.state = State.CLOSED;
+    if (channelDebug.isLoggable(Level.DEBUG)) {
+      channelDebug.debug("HttpChannel: error - " + error);
+    }
+    if (this.maybeReconnect(error)) {
+      return;
+    }
+    if (this.state != State.OPENED) {
+      // The cached test results may be stale.
+      this.invalidateConnectionState();
+    }
+    this.setState(State.CLOSED);
     if (this.handler != null) {
       this.handler.channelError(this, error);
     }
@@ -398,19 +750,107 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     this.cancelRequests();
   }
 
+  /**
+   * Re-runs the handshake after a transient error of an open channel, with the
+   * OSID and OAID of the failed session, and with the pending maps requeued
+   * in front of the outgoing ones, so that no message is lost.
+   *
+   * @return true if the channel is reconnecting, instead of being closed.
+   */
+  private boolean maybeReconnect(ErrorEnum error) {
+    if (this.state != State.OPENED && !this.reconnecting) {
+      return false;
+    }
+    if (error != ErrorEnum.REQUEST_FAILED
+        && error != ErrorEnum.NETWORK
+        && error != ErrorEnum.UNKNOWN_SESSION_ID) {
+      return false;
+    }
+    if (this.reconnectAttempts >= this.autoReconnectMaxAttempts) {
+      return false;
+    }
+
+    this.cancelRequests();
+    this.requeuePendingMaps();
+
+    if (!this.reconnecting) {
+      this.extraParams.put("OSID", this.sid);
+      // Only the arrays up to lastArrayId have been delivered, those held back
+      // in the reorder buffer are sent again by a resuming server.
+      this.extraParams.put("OAID", Long.toString(this.lastArrayId));
+      this.reconnecting = true;
+      this.reconnectStartTime = System.currentTimeMillis();
+    }
+    this.reconnectAttempts++;
+    if (channelDebug.isLoggable(Level.INFO)) {
+      channelDebug.info("Reconnecting, attempt " + this.reconnectAttempts);
+    }
+
+    this.setState(State.INIT);
+    this.sid = "";
+    this.backChannelStripes = 1;
+    this.reorderBuffer.clear();
+    this.forwardChannelRetryCount = 0;
+    this.backChannelRetryCount = 0;
+
+    // After the backoff, the reconnect is admitted like any other open, e.g.
+    // so that the channels failed by a server restart aren't all reconnected at
+    // once.
+    this.reconnectTimer =
+        this.setTimeoutOrImmediate(
+            new TimeoutHandler() {
+              public void onTimeout() {
+                WebChannelBase.this.reconnectTimer =
+                    support.admitOpen(
+                        new TimeoutHandler() {
+                          public void onTimeout() {
+                            WebChannelBase.this.reconnectTimer = null;
+                            support.notifyStatEvent(RequestStat.CONNECT_ATTEMPT);
+                            WebChannelBase.this.connectChannel();
+                          }
+                        });
+              }
+            },
+            this.traceRetry("reconnect", this.reconnectAttempts,
+                this.getRetryTime(this.reconnectAttempts)));
+    return true;
+  }
+
+  /**
+   * Completes a reconnect upon the handshake response of the new session.
+   */
+  private void onReconnected() {
+    support.notifyMeasurement(
+        Measurement.RECONNECT_GAP_MS, System.currentTimeMillis() - this.reconnectStartTime);
+    this.reconnecting = false;
+    this.reconnectAttempts = 0;
+    this.extraParams.remove("OSID");
+    this.extraParams.remove("OAID");
+    this.forwardChannelUri = this.getForwardChannelUri(this.path);
+    this.forwardChannelUriTemplate = new UriTemplate(support, this.forwardChannelUri);
+  }
+
+  private void invalidateConnectionState() {
+    if (this.transportContext != null) {
+      this.transportContext.invalidateConnectionState(this.authority);
+    }
+  }
+
   private void onClose() {
-    this.state = WebChannelBase.State.CLOSED;
+    this.setState(State.CLOSED);
     this.lastStatusCode = -1;
     if (this.handler != null) {
       if (this.pendingMaps.size() == 0 && this.outgoingMaps.size() == 0) {
         this.handler.channelClosed(this, null, null);
       } else {
-        channelDebug.debug(
-            "Number of undelivered maps"
-                + ", pending: "
-                + this.pendingMaps.size()
-                + ", outgoing: "
-                + this.outgoingMaps.size());
+        if (channelDebug.isLoggable(Level.DEBUG)) {
+          channelDebug.debug(
+              "Number of undelivered maps"
+                  + ", pending: "
+                  + this.pendingMaps.size()
+                  + ", outgoing: "
+                  + this.outgoingMaps.size());
+        }
 
         List<Wire.QueuedMap> copyOfPendingMaps = new ArrayList<>(this.pendingMaps);
         List<Wire.QueuedMap> copyOfUndeliveredMaps = new ArrayList<>(outgoingMaps);
@@ -428,11 +868,24 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
       this.connectionTest = null;
     }
 
+    if (this.connectTestTimer != null) {
+      support.clearTimeout(this.connectTestTimer);
+      this.connectTestTimer = null;
+    }
+
     if (this.backChannelRequest != null) {
       this.backChannelRequest.cancel();
       this.backChannelRequest = null;
     }
 
+    this.cancelStandbyBackChannel();
+    this.cancelStripes();
+
+    if (this.reconnectTimer != null) {
+      support.clearTimeout(this.reconnectTimer);
+      this.reconnectTimer = null;
+    }
+
     if (this.backChannelTimer != null) {
       support.clearTimeout(this.backChannelTimer);
       this.backChannelTimer = null;
@@ -459,6 +912,7 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     channelDebug.debug("connectChannel()");
     this.ensureInState(State.INIT, State.CLOSED);
     this.forwardChannelUri = this.getForwardChannelUri(this.path);
+    this.forwardChannelUriTemplate = new UriTemplate(support, this.forwardChannelUri);
     this.ensureForwardChannel();
   }
 
@@ -481,18 +935,29 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     }
 
     this.forwardChannelTimer =
-        support.setTimeout(
+        support.setImmediate(
             new TimeoutHandler() {
               public void onTimeout() {
                 WebChannelBase.this.onStartForwardChannelTimer(null);
               }
-            },
-            0);
+            });
     this.forwardChannelRetryCount = 0;
   }
 
-  private void onStartForwardChannelTimer(ChannelRequest retryRequest) {
+  private void onStartForwardChannelTimer(final ChannelRequest retryRequest) {
     this.forwardChannelTimer = null;
+    long delay = this.getRequestDelay(retryRequest != null, this.forwardChannelRetryCount);
+    if (delay > 0) {
+      this.forwardChannelTimer =
+          support.setTimeout(
+              new TimeoutHandler() {
+                public void onTimeout() {
+                  WebChannelBase.this.onStartForwardChannelTimer(retryRequest);
+                }
+              },
+              delay);
+      return;
+    }
     this.startForwardChannel(retryRequest);
   }
 
@@ -506,7 +971,7 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
         return;
       }
       this.open();
-      this.state = State.OPENING;
+      this.setState(State.OPENING);
     } else if (this.state == State.OPENED) {
       if (retryRequest != null) {
         this.makeForwardChannelRequest(retryRequest);
@@ -530,33 +995,33 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
 
   public void makeForwardChannelRequest(ChannelRequest retryRequest) {
     long rid;
-    String requestText;
     if (retryRequest != null) {
-      this.requeuePendingMaps();
-      rid = this.nextRid - 1; // Must use last RID
-      requestText = this.dequeueOutgoingMaps();
+      // Only the maps of the failed POST, the other POSTs may still be in
+      // flight, and with its RID rather than the last one for the same reason.
+      this.requeuePendingMaps(retryRequest);
+      rid = Long.parseLong(retryRequest.getRequestId());
     } else {
       rid = this.nextRid++;
-      requestText = this.dequeueOutgoingMaps();
     }
 
-    UriBuilder uri = this.forwardChannelUri.clone();
-    uri.addQueryParameter("SID", this.sid);
-    uri.addQueryParameter("RID", Long.toString(rid));
-    uri.addQueryParameter("AID", Long.toString(this.lastArrayId));
+    UriTemplate uri = this.forwardChannelUriTemplate.start();
+    uri.param("SID", this.sid);
+    uri.param("RID", rid);
+    uri.param("AID", this.lastArrayId);
 
     this.addAdditionalParams(uri);
 
     ChannelRequest request =
         ChannelRequest.createChannelRequest(
             support, this, this.sid, Long.toString(rid), this.forwardChannelRetryCount + 1);
-    request.setExtraHeaders(this.extraHeaders);
+    request.setHeaders(this.getRequestHeaders());
+    support.notifyMeasurement(Measurement.OUTGOING_QUEUE_DEPTH, this.outgoingMaps.size());
+    String requestText = this.dequeueOutgoingMaps(request);
 
-    request.setTimeout(
-        Math.round(this.forwardChannelRequestTimeoutMs * 0.50)
-            + Math.round(this.forwardChannelRequestTimeoutMs * 0.50 * Math.random()));
+    long timeout = this.getForwardChannelRequestTimeout();
+    request.setTimeout(Math.round(timeout * 0.50) + Math.round(timeout * 0.50 * Math.random()));
     this.forwardChannelRequestPool.addRequest(request);
-    request.httpPost(uri.getUri(), requestText, true);
+    request.httpPost(uri.build().getUri(), requestText, true);
   }
 
   private void open() {
@@ -567,34 +1032,26 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     ChannelRequest request =
         ChannelRequest.createChannelRequest(support, this, "", Long.toString(rid));
 
-    // mix the init headers
-    Map<String, String> extraHeaders = this.extraHeaders;
-    if (this.initHeaders != null && !this.initHeaders.isEmpty()) {
-      if (extraHeaders != null && !extraHeaders.isEmpty()) {
-        extraHeaders = new HashMap<>(extraHeaders);
-        extraHeaders.putAll(this.initHeaders);
-      } else {
-        extraHeaders = this.initHeaders;
-      }
-    }
-
-    request.setExtraHeaders(this.extraHeaders);
-    String requestText = this.dequeueOutgoingMaps();
-    UriBuilder uri = this.forwardChannelUri.clone();
-    uri.addQueryParameter("RID", Long.toString(rid));
+    request.setHeaders(this.getInitRequestHeaders());
+    String requestText = this.dequeueOutgoingMaps(request);
+    UriTemplate uri = this.forwardChannelUriTemplate.start();
+    uri.param("RID", rid);
     if (this.clientVersion > 0) {
-      uri.addQueryParameter("CVER", Integer.toString(this.clientVersion));
+      uri.param("CVER", this.clientVersion);
     }
 
     if (this.getBackgroundChannelTest() && this.getHttpSessionIdParam() != null) {
-      uri.addQueryParameter(
-          WebChannelConstants.X_HTTP_SESSION_ID, this.getHttpSessionIdParam());
+      uri.param(WebChannelConstants.X_HTTP_SESSION_ID, this.getHttpSessionIdParam());
+    }
+
+    if (this.requestedBackChannelStripes > 1) {
+      uri.param("BCS", this.requestedBackChannelStripes);
     }
 
     this.addAdditionalParams(uri);
 
     this.forwardChannelRequestPool.addRequest(request);
-    request.httpPost(uri.getUri(), requestText, true);
+    request.httpPost(uri.build().getUri(), requestText, true);
   }
 
   private void requeuePendingMaps() {
@@ -602,7 +1059,20 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     this.pendingMaps.clear();
   }
 
-  private String dequeueOutgoingMaps() {
+  /**
+   * Requeues the maps of a failed request in front of the outgoing ones, and
+   * leaves those of the other requests pending.
+   */
+  private void requeuePendingMaps(ChannelRequest request) {
+    List<Wire.QueuedMap> failed = request.getPendingMessages();
+    Set<Wire.QueuedMap> requeued =
+        Collections.newSetFromMap(new IdentityHashMap<Wire.QueuedMap, Boolean>());
+    requeued.addAll(failed);
+    this.pendingMaps.removeAll(requeued);
+    this.outgoingMaps.addAll(0, failed);
+  }
+
+  private String dequeueOutgoingMaps(ChannelRequest request) {
     int count = Math.min(this.outgoingMaps.size(), MAX_MAPS_PER_REQUEST);
     String result =
         this
@@ -617,8 +1087,21 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
                   }
                 });
 
-    this.pendingMaps.addAll(this.outgoingMaps.subList(0, count));
+    List<Wire.QueuedMap> dequeued = new ArrayList<>(this.outgoingMaps.subList(0, count));
+    if (this.messageTraceSampleInterval > 0) {
+      long now = System.nanoTime();
+      for (Wire.QueuedMap map : dequeued) {
+        // A requeued map is only traced once
+        if (map.enqueueTime != 0 && map.dequeueTime == 0) {
+          map.dequeueTime = now;
+          support.notifyMeasurement(
+              Measurement.MESSAGE_QUEUE_TIME_US, (now - map.enqueueTime) / 1000);
+        }
+      }
+    }
+    this.pendingMaps.addAll(dequeued);
     this.outgoingMaps.subList(0, count).clear();
+    request.setPendingMessages(dequeued);
 
     return result;
   }
@@ -628,15 +1111,17 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
         this.state != State.CLOSED, "Invalid operation: sending map when state is closed");
 
     if (this.outgoingMaps.size() == MAX_MAPS_PER_REQUEST) {
-      this
-          .channelDebug.severe(
-              "Already have "
-                  + MAX_MAPS_PER_REQUEST
-                  + " queued maps upon queueing "
-                  + map.toString()); // FIXME: string
+      if (this.channelDebug.isLoggable(Level.SEVERE)) {
+        this.channelDebug.severe(
+            "Already have " + MAX_MAPS_PER_REQUEST + " queued maps upon queueing " + map);
+      }
     }
 
-    this.outgoingMaps.add(new Wire.QueuedMap(this.nextMapId++, map, context));
+    Wire.QueuedMap queuedMap = new Wire.QueuedMap(this.nextMapId++, map, context);
+    if (this.shouldTraceMessage(this.outgoingTraceCount++)) {
+      queuedMap.enqueueTime = System.nanoTime();
+    }
+    this.outgoingMaps.add(queuedMap);
     if (this.state == State.OPENING || this.state == State.OPENED) {
       this.ensureForwardChannel();
     }
@@ -644,15 +1129,19 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
 
   public void setFailFast(boolean failFast) {
     this.failFast = failFast;
-    channelDebug.info("setFailFast: " + failFast);
+    if (channelDebug.isLoggable(Level.INFO)) {
+      channelDebug.info("setFailFast: " + failFast);
+    }
     if ((this.forwardChannelRequestPool.hasPendingRequest() || this.forwardChannelTimer != null)
         && this.forwardChannelRetryCount > this.getForwardChannelMaxRetries()) {
-      channelDebug.info(
-          "Retry count "
-              + this.forwardChannelRetryCount
-              + " > new maxRetries "
-              + this.getForwardChannelMaxRetries()
-              + ". Fail immediately!");
+      if (channelDebug.isLoggable(Level.INFO)) {
+        channelDebug.info(
+            "Retry count "
+                + this.forwardChannelRetryCount
+                + " > new maxRetries "
+                + this.getForwardChannelMaxRetries()
+                + ". Fail immediately!");
+      }
 
       if (!this
           .forwardChannelRequestPool.forceComplete(
@@ -672,9 +1161,21 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     channelDebug.debug("Request complete");
     ChannelType type;
     if (this.backChannelRequest == request) {
+      support.notifyMeasurement(
+          Measurement.BACK_CHANNEL_LIFETIME_MS,
+          System.currentTimeMillis() - request.getRequestStartTime());
       this.clearDeadBackchannelTimer();
+      this.clearStandbyBackChannelTimer();
       this.backChannelRequest = null;
       type = ChannelType.BACK_CHANNEL;
+    } else if (this.standbyBackChannelRequest == request) {
+      // The current back channel is still open, or has been retried.
+      channelDebug.debug("Standby back channel complete");
+      this.standbyBackChannelRequest = null;
+      return;
+    } else if (this.getStripe(request) > 0) {
+      this.onStripeComplete(this.getStripe(request), request);
+      return;
     } else if (this.forwardChannelRequestPool.hasRequest(request)) {
       this.forwardChannelRequestPool.removeRequest(request);
       type = ChannelType.FORWARD_CHANNEL;
@@ -684,20 +1185,34 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
 
     this.lastStatusCode = request.getLastStatusCode();
 
+    if (this.transportContext != null) {
+      if (request.getSuccess()) {
+        this.transportContext.onRequestSucceeded(this.authority);
+      } else {
+        this.transportContext.onRequestFailed(this.authority);
+      }
+    }
+
     if (this.state == State.CLOSED) {
       return;
     }
 
+    ChannelRequest.ErrorEnum lastError = request.getLastError();
+    if (type == ChannelType.BACK_CHANNEL
+        && (request.getSuccess() || !WebChannelBase.isFatalError(lastError, this.lastStatusCode))
+        && this.promoteStandbyBackChannel()) {
+      return;
+    }
+
     if (request.getSuccess()) {
       if (type == ChannelType.FORWARD_CHANNEL) {
         int size = request.getPostData() != null ? request.getPostData().length() : 0;
-        support.notifyTimingEvent(
-            size,
-            System.currentTimeMillis() - request.getRequestStartTime(),
-            this.forwardChannelRetryCount);
+        long rtt = System.currentTimeMillis() - request.getRequestStartTime();
+        this.rttEstimator.addSample(rtt);
+        support.notifyTimingEvent(size, rtt, this.forwardChannelRetryCount);
         this.ensureForwardChannel();
-        this.onSuccess();
-        this.pendingMaps.clear();
+        this.onSuccess(request);
+        this.clearPendingMaps(request);
       } else {
         this.ensureBackChannel();
       }
@@ -705,12 +1220,13 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     }
     // Else unsuccessful. Fall through.
 
-    ChannelRequest.ErrorEnum lastError = request.getLastError();
     if (!WebChannelBase.isFatalError(lastError, this.lastStatusCode)) {
       // Maybe retry.
-      channelDebug.debug(
-          "Maybe retrying, last error: "
-              + ChannelRequest.errorStringFromCode(lastError, this.lastStatusCode));
+      if (channelDebug.isLoggable(Level.DEBUG)) {
+        channelDebug.debug(
+            "Maybe retrying, last error: "
+                + ChannelRequest.errorStringFromCode(lastError, this.lastStatusCode));
+      }
       if (type == ChannelType.FORWARD_CHANNEL) {
         if (this.maybeRetryForwardChannel(request)) {
           return;
@@ -748,51 +1264,358 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
       return;
     }
 
+    if (this.backChannelPaused) {
+      return; // to be started upon resume
+    }
+
     if (this.backChannelTimer != null) {
       return;
     }
 
     this.backChannelAttemptId = 1;
     this.backChannelTimer =
-        support.setTimeout(
+        support.setImmediate(
             new TimeoutHandler() {
               public void onTimeout() {
-                WebChannelBase.this.onStartBackChannelTimer();
+                WebChannelBase.this.onStartBackChannelTimer(false);
               }
-            },
-            0);
+            });
     this.backChannelRetryCount = 0;
   }
 
-  private void onStartBackChannelTimer() {
+  /**
+   * @param retry Whether the request is the retry of a failed back channel
+   * request.
+   */
+  private void onStartBackChannelTimer(boolean retry) {
     this.backChannelTimer = null;
-    this.startBackChannel();
+    this.startBackChannel(retry);
   }
 
-  private void startBackChannel() {
+  private void startBackChannel(final boolean retry) {
     if (!this.okToMakeRequest()) {
       // channel is cancelled
       return;
     }
 
+    if (this.backChannelPaused) {
+      channelDebug.debug("Back channel paused, request deferred");
+      return;
+    }
+
+    long delay = this.getRequestDelay(retry, this.backChannelRetryCount);
+    if (delay > 0) {
+      this.backChannelTimer =
+          support.setTimeout(
+              new TimeoutHandler() {
+                public void onTimeout() {
+                  WebChannelBase.this.onStartBackChannelTimer(retry);
+                }
+              },
+              delay);
+      return;
+    }
+
+    this.backChannelRequest = this.createBackChannelRequest();
+    this.sendBackChannelRequest(this.backChannelRequest, 0);
+    this.backChannelBytes = 0;
+    this.armStandbyBackChannelTimer(this.backChannelRequest);
+
+    for (int stripe = 1; stripe < this.backChannelStripes; stripe++) {
+      this.ensureStripe(stripe, 0);
+    }
+
+    channelDebug.debug("New Request created");
+  }
+
+  private ChannelRequest createBackChannelRequest() {
     channelDebug.debug("Creating new HttpRequest");
-    this.backChannelRequest =
+    ChannelRequest request =
         ChannelRequest.createChannelRequest(
             support, this, this.sid, "rpc", this.backChannelAttemptId);
-    this.backChannelRequest.setExtraHeaders(this.extraHeaders);
-
-    UriBuilder uri = this.backChannelUri.clone();
-    uri.addQueryParameter("RID", "rpc");
-    uri.addQueryParameter("SID", this.sid);
-    uri.addQueryParameter("CI", this.useChunked ? "0" : "1");
-    uri.addQueryParameter("AID", Long.toString(this.lastArrayId));
+    request.setHeaders(this.getRequestHeaders());
+    return request;
+  }
+
+  private void sendBackChannelRequest(ChannelRequest request, int stripe) {
+    UriTemplate uri = this.backChannelUriTemplate.start();
+    uri.param("RID", "rpc");
+    uri.param("SID", this.sid);
+    uri.param("CI", this.useChunked ? "0" : "1");
+    uri.param("AID", this.lastArrayId);
+    if (this.backChannelStripes > 1) {
+      uri.param("STRIPE", stripe);
+      uri.param("STRIPES", this.backChannelStripes);
+    }
 
     this.addAdditionalParams(uri);
 
-    uri.addQueryParameter("TYPE", "xmlhttp");
-    this.backChannelRequest.httpGet(uri.getUri(), true, false);
+    uri.param("TYPE", "xmlhttp");
 
-    channelDebug.debug("New Request created");
+    boolean keepAlive = this.keepAliveBackChannel && !this.bufferingProxyDetected;
+    if (this.keepAliveBackChannel) {
+      support.notifyStatEvent(
+          keepAlive
+              ? RequestStat.BACKCHANNEL_KEEP_ALIVE_REQUESTED
+              : RequestStat.BACKCHANNEL_CLOSE_REQUESTED);
+    }
+    request.httpGet(uri.build().getUri(), true, keepAlive);
+  }
+
+  /**
+   * Schedules the standby back channel ahead of the end of the given request,
+   * if the max duration of a back channel request is configured.
+   */
+  private void armStandbyBackChannelTimer(ChannelRequest request) {
+    if (this.backChannelMaxDurationMs <= 0 || this.standbyBackChannelTimer != null) {
+      return;
+    }
+    long elapsed = System.currentTimeMillis() - request.getRequestStartTime();
+    long delay =
+        this.backChannelMaxDurationMs
+            - STANDBY_BACK_CHANNEL_LEAD_RTT_FACTOR * this.getRttEstimate()
+            - elapsed;
+    this.standbyBackChannelTimer =
+        this.setTimeoutOrImmediate(
+            new TimeoutHandler() {
+              public void onTimeout() {
+                WebChannelBase.this.standbyBackChannelTimer = null;
+                WebChannelBase.this.startStandbyBackChannel();
+              }
+            },
+            Math.max(0, delay));
+  }
+
+  private void clearStandbyBackChannelTimer() {
+    if (this.standbyBackChannelTimer != null) {
+      support.clearTimeout(this.standbyBackChannelTimer);
+      this.standbyBackChannelTimer = null;
+    }
+  }
+
+  /**
+   * Opens the next back channel request while the current one is expected to
+   * end soon, so that no server push waits for a new request to be set up.
+   * The arrays received on both requests are de-duplicated by array id.
+   */
+  private void startStandbyBackChannel() {
+    if (this.backChannelRequest == null
+        || this.standbyBackChannelRequest != null
+        || this.backChannelStripes > 1
+        || this.backChannelPaused
+        || this.state != State.OPENED) {
+      return;
+    }
+    if (!this.okToMakeRequest() || this.getRequestDelay(false, 0) > 0) {
+      return;
+    }
+    channelDebug.debug("Opening standby back channel");
+    this.standbyBackChannelRequest = this.createBackChannelRequest();
+    this.sendBackChannelRequest(this.standbyBackChannelRequest, 0);
+  }
+
+  /**
+   * Makes the standby back channel the current one, if any, as the current one
+   * has completed or failed.
+   */
+  private boolean promoteStandbyBackChannel() {
+    if (this.standbyBackChannelRequest == null) {
+      return false;
+    }
+    channelDebug.debug("Switching to the standby back channel");
+    this.backChannelRequest = this.standbyBackChannelRequest;
+    this.standbyBackChannelRequest = null;
+    this.backChannelBytes = 0;
+    this.backChannelRetryCount = 0;
+    this.armStandbyBackChannelTimer(this.backChannelRequest);
+    return true;
+  }
+
+  private void cancelStandbyBackChannel() {
+    this.clearStandbyBackChannelTimer();
+    if (this.standbyBackChannelRequest != null) {
+      this.standbyBackChannelRequest.cancel();
+      this.standbyBackChannelRequest = null;
+    }
+  }
+
+  /**
+   * Applies the number of back channel stripes granted by the server in the
+   * handshake response, which is at most the requested one.
+   */
+  private void negotiateBackChannelStripes(ChannelRequest request) {
+    if (this.requestedBackChannelStripes <= 1) {
+      return;
+    }
+    HttpRequest req = request.getHttpRequest();
+    String stripes =
+        req == null ? null : req.getResponseHeader(WebChannelConstants.X_BACK_CHANNEL_STRIPES);
+    if (stripes == null) {
+      channelDebug.debug("Back channel stripes not supported by the server");
+      return;
+    }
+    try {
+      this.backChannelStripes =
+          Math.max(1, Math.min(this.requestedBackChannelStripes, Integer.parseInt(stripes.trim())));
+    } catch (NumberFormatException ex) {
+      if (channelDebug.isLoggable(Level.WARNING)) {
+        channelDebug.warning("Bad back channel stripes: " + stripes);
+      }
+      return;
+    }
+    if (channelDebug.isLoggable(Level.DEBUG)) {
+      channelDebug.debug("STRIPES=" + this.backChannelStripes);
+    }
+    if (this.backChannelStripes > 1) {
+      this.stripeRequests = new ChannelRequest[this.backChannelStripes];
+      this.stripeTimers = new Object[this.backChannelStripes];
+      this.stripeRetryCounts = new int[this.backChannelStripes];
+    }
+  }
+
+  /**
+   * @return The index of the given request among the extra back channel
+   * stripes, or -1. The stripe 0 is the back channel request itself.
+   */
+  private int getStripe(ChannelRequest request) {
+    for (int stripe = 1; stripe < this.backChannelStripes; stripe++) {
+      if (this.stripeRequests[stripe] == request) {
+        return stripe;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The stripe on which the given array is sent, 0 if the back
+   * channel is not striped.
+   */
+  private int getStripe(long arrayId) {
+    return this.backChannelStripes > 1 ? (int) (arrayId % this.backChannelStripes) : 0;
+  }
+
+  private void ensureStripe(final int stripe, long delay) {
+    if (this.stripeRequests[stripe] != null || this.stripeTimers[stripe] != null) {
+      return;
+    }
+    this.stripeTimers[stripe] =
+        this.setTimeoutOrImmediate(
+            new TimeoutHandler() {
+              public void onTimeout() {
+                WebChannelBase.this.stripeTimers[stripe] = null;
+                WebChannelBase.this.startStripe(stripe);
+              }
+            },
+            delay);
+  }
+
+  private void startStripe(int stripe) {
+    if (this.state != State.OPENED || this.backChannelPaused) {
+      return;
+    }
+    if (!this.okToMakeRequest()) {
+      return;
+    }
+    int retryCount = this.stripeRetryCounts[stripe];
+    long delay = this.getRequestDelay(retryCount > 0, retryCount);
+    if (delay > 0) {
+      this.ensureStripe(stripe, delay);
+      return;
+    }
+    if (channelDebug.isLoggable(Level.DEBUG)) {
+      channelDebug.debug("Opening back channel stripe " + stripe);
+    }
+    this.stripeRequests[stripe] = this.createBackChannelRequest();
+    this.sendBackChannelRequest(this.stripeRequests[stripe], stripe);
+  }
+
+  private void onStripeComplete(int stripe, ChannelRequest request) {
+    this.stripeRequests[stripe] = null;
+    this.lastStatusCode = request.getLastStatusCode();
+    if (this.state == State.CLOSED) {
+      return;
+    }
+
+    if (request.getSuccess()) {
+      this.stripeRetryCounts[stripe] = 0;
+      this.ensureStripe(stripe, 0);
+      return;
+    }
+
+    if (!WebChannelBase.isFatalError(request.getLastError(), this.lastStatusCode)
+        && this.stripeRetryCounts[stripe] < this.getBackChannelMaxRetries()) {
+      if (channelDebug.isLoggable(Level.DEBUG)) {
+        channelDebug.debug("Going to retry back channel stripe " + stripe);
+      }
+      this.stripeRetryCounts[stripe]++;
+      this.ensureStripe(stripe, this.getRetryTime(this.stripeRetryCounts[stripe]));
+      return;
+    }
+
+    // The arrays of the stripe would be missing from the ordered delivery.
+    if (channelDebug.isLoggable(Level.DEBUG)) {
+      channelDebug.debug("Back channel stripe " + stripe + " failed");
+    }
+    this.signalError(ErrorEnum.REQUEST_FAILED);
+  }
+
+  private void cancelStripes() {
+    for (int stripe = 1; stripe < this.backChannelStripes; stripe++) {
+      if (this.stripeTimers[stripe] != null) {
+        support.clearTimeout(this.stripeTimers[stripe]);
+        this.stripeTimers[stripe] = null;
+      }
+      if (this.stripeRequests[stripe] != null) {
+        this.stripeRequests[stripe].cancel();
+        this.stripeRequests[stripe] = null;
+      }
+    }
+  }
+
+  /**
+   * Merges the arrays received on a back channel into the arrays received on
+   * the other ones, e.g. the other stripes or the overlapping back channel, by
+   * array id. The arrays already delivered are dropped.
+   *
+   * @return The arrays that follow the last delivered one, in order, or null
+   *     if more than MAX_REORDER_BUFFER_SIZE arrays would be held back.
+   */
+  private List<?> reorderArrays(List<?> responseJsonArray) {
+    if (this.reorderBuffer.isEmpty() && this.followsLastArray(responseJsonArray)) {
+      return responseJsonArray;
+    }
+    for (Object array : responseJsonArray) {
+      long arrayId = ((Number) ((List<?>) array).get(0)).longValue();
+      if (arrayId > this.lastArrayId && !this.reorderBuffer.containsKey(arrayId)) {
+        if (this.reorderBuffer.size() >= MAX_REORDER_BUFFER_SIZE) {
+          return null;
+        }
+        this.reorderBuffer.put(arrayId, array);
+      }
+    }
+    List<Object> result = new ArrayList<>();
+    for (long nextId = this.lastArrayId + 1; ; nextId++) {
+      Object array = this.reorderBuffer.remove(nextId);
+      if (array == null) {
+        break;
+      }
+      result.add(array);
+    }
+    return result;
+  }
+
+  /**
+   * @return Whether the given arrays are the ones right after the last
+   * delivered one, in order, as on a single back channel.
+   */
+  private boolean followsLastArray(List<?> responseJsonArray) {
+    long nextId = this.lastArrayId + 1;
+    for (Object array : responseJsonArray) {
+      if (((Number) ((List<?>) array).get(0)).longValue() != nextId++) {
+        return false;
+      }
+    }
+    return true;
   }
 
   private boolean maybeRetryForwardChannel(final ChannelRequest request) {
@@ -810,21 +1633,36 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     channelDebug.debug("Going to retry POST");
 
     this.forwardChannelTimer =
-        support.setTimeout(
+        this.setTimeoutOrImmediate(
             new TimeoutHandler() {
               public void onTimeout() {
                 WebChannelBase.this.onStartForwardChannelTimer(request);
               }
             },
-            this.getRetryTime(this.forwardChannelRetryCount));
+            this.traceRetry("forward", this.forwardChannelRetryCount,
+                this.getRetryTime(this.forwardChannelRetryCount)));
 
     this.forwardChannelRetryCount++;
     return true;
   }
 
+  /** The first retry is immediate, see getRetryTime(). */
+  private Object setTimeoutOrImmediate(TimeoutHandler handler, long timeout) {
+    if (timeout <= 0) {
+      return support.setImmediate(handler);
+    }
+    return support.setTimeout(handler, timeout);
+  }
+
   private long getRetryTime(int retryCount) {
-    long retryTime =
-        this.baseRetryDelayMs + (long) Math.floor(Math.random() * this.retryDelaySeedMs);
+    long baseRetryDelayMs = this.baseRetryDelayMs;
+    long retryDelaySeedMs = this.retryDelaySeedMs;
+    if (this.adaptiveTimeouts && this.rttEstimator.hasSample()) {
+      long rttEstimate = this.rttEstimator.getEstimate();
+      baseRetryDelayMs = Math.min(baseRetryDelayMs, rttEstimate);
+      retryDelaySeedMs = Math.min(retryDelaySeedMs, 2 * rttEstimate);
+    }
+    long retryTime = baseRetryDelayMs + (long) Math.floor(Math.random() * retryDelaySeedMs);
     if (!this.isActive()) {
       channelDebug.debug("Inactive channel");
       retryTime = retryTime * INACTIVE_CHANNEL_RETRY_FACTOR;
@@ -834,6 +1672,12 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     return retryTime;
   }
 
+  /** @return The given retry delay, once traced. */
+  private long traceRetry(String retryType, int retryCount, long delayMs) {
+    support.getTracer().retryScheduled(retryType, retryCount, delayMs);
+    return delayMs;
+  }
+
   public void setRetryDelay(long baseDelayMs, long delaySeedMs) {
     this.baseRetryDelayMs = baseDelayMs;
     this.retryDelaySeedMs = delaySeedMs;
@@ -853,13 +1697,14 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
 
     this.backChannelAttemptId++;
     this.backChannelTimer =
-        support.setTimeout(
+        this.setTimeoutOrImmediate(
             new TimeoutHandler() {
               public void onTimeout() {
-                WebChannelBase.this.onStartBackChannelTimer();
+                WebChannelBase.this.onStartBackChannelTimer(true);
               }
             },
-            this.getRetryTime(this.backChannelRetryCount));
+            this.traceRetry("back", this.backChannelRetryCount,
+                this.getRetryTime(this.backChannelRetryCount)));
 
     this.backChannelRetryCount++;
     return true;
@@ -878,25 +1723,80 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
       this.forwardChannelRequestPool.applyClientProtocol(clientProtocol);
     }
 
+    if (this.speculativelyConnected) {
+      this.onSpeculativeTestFinished(testChannel, useChunked);
+      return;
+    }
+
     this.useChunked = this.allowChunkedMode && useChunked;
+    this.bufferingProxyDetected = !useChunked;
     this.lastStatusCode = testChannel.getLastStatusCode();
 
+    if (this.transportContext != null
+        && !this.backgroundChannelTest
+        && !this.cachedConnectionState) {
+      this.transportContext.putConnectionState(this.authority, this.connState);
+    }
+
     this.connectChannel();
   }
 
   public void testConnectionFailure(
       BaseTestChannel testChannel, ChannelRequest.ErrorEnum errorCode) {
     channelDebug.debug("Test Connection Failed");
+    this.invalidateConnectionState();
+    if (this.speculativelyConnected && this.state != State.CLOSED) {
+      // The channel being opened reports its own errors.
+      channelDebug.debug("Ignoring the test failure of the channel being opened.");
+      return;
+    }
     this.lastStatusCode = testChannel.getLastStatusCode();
     this.signalError(ErrorEnum.REQUEST_FAILED);
   }
 
+  /**
+   * Applies the result of the test of a channel that has been opened
+   * concurrently, i.e. switches to the buffered mode if the test says so.
+   */
+  private void onSpeculativeTestFinished(BaseTestChannel testChannel, boolean useChunked) {
+    if (this.transportContext != null && !this.cachedConnectionState) {
+      this.transportContext.putConnectionState(this.authority, this.connState);
+    }
+    if (this.state == State.CLOSED || !this.useChunked || useChunked) {
+      return;
+    }
+    channelDebug.debug("Buffering proxy detected, switching to the buffered mode.");
+    this.useChunked = false;
+    this.bufferingProxyDetected = true;
+    if (this.backChannelRequest == null) {
+      return; // CI=1 applies to the back channel yet to be made
+    }
+    this.clearDeadBackchannelTimer();
+    this.cancelStandbyBackChannel();
+    this.cancelStripes();
+    this.backChannelRequest.cancel();
+    this.backChannelRequest = null;
+    this.ensureBackChannel();
+  }
+
+  /**
+   * Traces one in every messageTraceSampleInterval messages, counted per
+   * direction.
+   */
+  private boolean shouldTraceMessage(int count) {
+    return this.messageTraceSampleInterval > 0 && count % this.messageTraceSampleInterval == 0;
+  }
+
   public void onRequestData(ChannelRequest request, String responseText) {
     if (this.state == State.CLOSED
         || (this.backChannelRequest != request
+            && this.standbyBackChannelRequest != request
+            && this.getStripe(request) < 0
             && !this.forwardChannelRequestPool.hasRequest(request))) {
       return;
     }
+    // The arrays are sampled in onInput(), once they are known to be delivered.
+    long arrivalTime = this.messageTraceSampleInterval > 0 ? System.nanoTime() : 0;
     this.lastStatusCode = request.getLastStatusCode();
 
     if (this.forwardChannelRequestPool.hasRequest(request)
@@ -905,7 +1805,9 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
       try {
         response = this.wireCodec.decodeMessage(responseText, 1);
       } catch (Exception ex) {
-        channelDebug.dumpException(ex, "Failed to decode " + responseText);
+        if (channelDebug.isLoggable(Level.SEVERE)) {
+          channelDebug.dumpException(ex, "Failed to decode " + responseText);
+        }
         response = null;
       }
       if (response != null && response.size() == 3) {
@@ -916,7 +1818,18 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
       }
     } else {
       if (this.backChannelRequest == request) {
-        this.clearDeadBackchannelTimer();
+        if (this.backChannelStripes <= 1) {
+          // Striped, the timer is cleared once the outstanding arrays have
+          // been received on all the stripes, see onInput().
+          this.clearDeadBackchannelTimer();
+        }
+        if (this.backChannelMaxBytes > 0 && responseText != null) {
+          this.backChannelBytes += responseText.length();
+          if (this.backChannelBytes
+              >= this.backChannelMaxBytes * STANDBY_BACK_CHANNEL_BYTES_RATIO) {
+            this.startStandbyBackChannel();
+          }
+        }
       }
 
       if (responseText != null) {
@@ -924,9 +1837,12 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
         if (!responseText.isEmpty()) {
           try {
             List<?> decodedResponse = this.wireCodec.decodeMessage(responseText, 3);
-            this.onInput(decodedResponse, responseText, request);
+            long decodeTime = arrivalTime != 0 ? System.nanoTime() - arrivalTime : 0;
+            this.onInput(decodedResponse, responseText, request, arrivalTime, decodeTime);
           } catch (Exception ex) {
-            channelDebug.dumpException(ex, "Failed to decode " + responseText);
+            if (channelDebug.isLoggable(Level.SEVERE)) {
+              channelDebug.dumpException(ex, "Failed to decode " + responseText);
+            }
             this.signalError(ErrorEnum.BAD_RESPONSE);
           }
         }
@@ -953,6 +1869,7 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
           this.setHttpSessionId(httpSessionIdHeader);
           String httpSessionIdParam = this.getHttpSessionIdParam();
           this.forwardChannelUri.addQueryParameter(httpSessionIdParam, httpSessionIdHeader);
+          this.forwardChannelUriTemplate = new UriTemplate(support, this.forwardChannelUri);
         } else {
           this.channelDebug.warning(
               "Missing X_HTTP_SESSION_ID in the handshake response");
@@ -961,13 +1878,28 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     }
   };
 
+  /**
+   * @param arrivalTime System.nanoTime() when the response text has been
+   * received, if the arrays are traced, or 0.
+   * @param decodeTime The time taken to decode the response text, in
+   * nanoseconds, if the arrays are traced.
+   */
   @SuppressWarnings("unchecked")
   private void onInput(List<?> responseJsonArray, String responseTextForDebugging,
-      ChannelRequest request) throws ClassCastException {
+      ChannelRequest request, long arrivalTime, long decodeTime) throws ClassCastException {
     // channelHandleMultipleArrays ignored
 
     List<Object> batch = null;
 
+    if (this.state == State.OPENED) {
+      responseJsonArray = this.reorderArrays(responseJsonArray);
+      if (responseJsonArray == null) {
+        channelDebug.warning("Too many arrays received out of order");
+        this.signalError(ErrorEnum.BAD_DATA);
+        return;
+      }
+    }
+
     for (int i = 0; i < responseJsonArray.size(); i++) {
       List<Object> nextArray = (List<Object>) responseJsonArray.get(i);
       this.lastArrayId = ((Number) nextArray.get(0)).longValue();
@@ -982,24 +1914,35 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
             Number negotiatedVersion = (Number) nextArray.get(3);
             if (negotiatedVersion != null) {
               this.channelVersion = negotiatedVersion.intValue();
-              channelDebug.debug("VER=" + this.channelVersion);
+              if (channelDebug.isLoggable(Level.DEBUG)) {
+                channelDebug.debug("VER=" + this.channelVersion);
+              }
             }
           }
           if (nextArray.size() >= 5) {
             Number negotiatedServerVersion = (Number) nextArray.get(4);
             if (negotiatedServerVersion != null) {
               this.serverVersion = negotiatedServerVersion.intValue();
-              channelDebug.debug("SVER=" + this.serverVersion);
+              if (channelDebug.isLoggable(Level.DEBUG)) {
+                channelDebug.debug("SVER=" + this.serverVersion);
+              }
             }
           }
 
           this.applyControlHeaders(request);
+          this.negotiateBackChannelStripes(request);
 
-          this.state = State.OPENED;
-          if (this.handler != null) {
+          this.setState(State.OPENED);
+          if (this.reconnecting) {
+            this.onReconnected();
+            if (this.handler != null) {
+              this.handler.channelReconnected(this);
+            }
+          } else if (this.handler != null) {
             this.handler.channelOpened(this);
           }
           this.backChannelUri = this.getBackChannelUri(this.path);
+          this.backChannelUriTemplate = new UriTemplate(support, this.backChannelUri);
           // Open connection to receive data
           this.ensureBackChannel();
         } else if (nextArray.get(0).equals("stop") || nextArray.get(0).equals("close")) {
@@ -1026,7 +1969,18 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
           if (batch != null) {
             batch.add(nextArray);
           } else if (this.handler != null) {
+            boolean traced =
+                arrivalTime != 0 && this.shouldTraceMessage(this.incomingTraceCount++);
+            long handlerStartTime = traced ? System.nanoTime() : 0;
             this.handler.channelHandleArray(this, nextArrayObject, responseTextForDebugging);
+            if (traced) {
+              long now = System.nanoTime();
+              support.notifyMeasurement(Measurement.ARRAY_DECODE_TIME_US, decodeTime / 1000);
+              support.notifyMeasurement(
+                  Measurement.ARRAY_HANDLER_TIME_US, (now - handlerStartTime) / 1000);
+              support.notifyMeasurement(
+                  Measurement.ARRAY_DELIVERY_LATENCY_US, (now - arrivalTime) / 1000);
+            }
           }
         }
         this.backChannelRetryCount = 0;
@@ -1035,6 +1989,9 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
     if (batch != null && !batch.isEmpty()) {
       this.handler.channelHandleMultipleArrays(this, batch);
     }
+    if (this.backChannelStripes > 1 && this.lastArrayId >= this.lastPostResponseArrayId) {
+      this.clearDeadBackchannelTimer();
+    }
   }
 
   private void handlePostResponse(List<?> responseValues, ChannelRequest forwardReq) {
@@ -1044,28 +2001,34 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
       return;
     }
     this.lastPostResponseArrayId = ((Number) responseValues.get(1)).longValue();
+    this.lastPostResponseOutstandingBytes = ((Number) responseValues.get(2)).longValue();
     long outstandingArrays = this.lastPostResponseArrayId - this.lastArrayId;
     if (0 < outstandingArrays) {
-      long numOutstandingBackchannelBytes =
-          ((Number) responseValues.get(2)).longValue();
-      channelDebug.debug(
-          numOutstandingBackchannelBytes
-              + " bytes (in "
-              + outstandingArrays
-              + " arrays) are outstanding on the BackChannel");
+      long numOutstandingBackchannelBytes = this.lastPostResponseOutstandingBytes;
+      if (channelDebug.isLoggable(Level.DEBUG)) {
+        channelDebug.debug(
+            numOutstandingBackchannelBytes
+                + " bytes (in "
+                + outstandingArrays
+                + " arrays) are outstanding on the BackChannel");
+      }
       if (!this.shouldRetryBackChannel(numOutstandingBackchannelBytes)) {
         return;
       }
-      if (this.deadBackChannelTimer == null) {
-        this.deadBackChannelTimer =
-            support.setTimeout(
-                new TimeoutHandler() {
-                  public void onTimeout() {
-                    WebChannelBase.this.onBackChannelDead();
-                  }
-                },
-                2 * WebChannelBase.RTT_ESTIMATE);
-      }
+      this.startDeadBackChannelTimer();
+    }
+  }
+
+  private void startDeadBackChannelTimer() {
+    if (this.deadBackChannelTimer == null) {
+      this.deadBackChannelTimer =
+          support.setTimeout(
+              new TimeoutHandler() {
+                public void onTimeout() {
+                  WebChannelBase.this.onBackChannelDead();
+                }
+              },
+              2 * this.getRttEstimate());
     }
   }
 
@@ -1076,37 +2039,78 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
       return;
     } else if (this.backChannelRequest == null) {
       channelDebug.warning("We do not have a BackChannel established");
-    } else if (this.backChannelRequest.getRequestStartTime() + WebChannelBase.RTT_ESTIMATE
+    } else if (this.backChannelRequest.getRequestStartTime() + this.getRttEstimate()
         < forwardReq.getRequestStartTime()) {
       this.clearDeadBackchannelTimer();
+      this.cancelStandbyBackChannel();
       this.backChannelRequest.cancel();
       this.backChannelRequest = null;
     } else {
+      this.restartStaleStripes(forwardReq);
       return;
     }
+    this.restartStaleStripes(forwardReq);
     this.maybeRetryBackChannel();
     support.notifyStatEvent(RequestStat.BACKCHANNEL_MISSING);
   }
 
+  /**
+   * Restarts the back channel stripes which the server doesn't know about,
+   * i.e. which have been started long enough before the given POST.
+   */
+  private void restartStaleStripes(ChannelRequest forwardReq) {
+    for (int stripe = 1; stripe < this.backChannelStripes; stripe++) {
+      ChannelRequest request = this.stripeRequests[stripe];
+      if (request != null
+          && request.getRequestStartTime() + this.getRttEstimate()
+              < forwardReq.getRequestStartTime()) {
+        if (channelDebug.isLoggable(Level.DEBUG)) {
+          channelDebug.debug("Restarting back channel stripe " + stripe);
+        }
+        request.cancel();
+        this.stripeRequests[stripe] = null;
+        this.ensureStripe(stripe, 0);
+      }
+    }
+  }
+
   private boolean shouldRetryBackChannel(long outstandingBytes) {
     return outstandingBytes < OUTSTANDING_DATA_BACKCHANNEL_RETRY_CUTOFF
         && !this.isBuffered()
+        && !this.backChannelPaused
         && this.backChannelRetryCount == 0;
   }
 
   private void onBackChannelDead() {
     if (this.deadBackChannelTimer != null) {
       this.deadBackChannelTimer = null;
+      support.getTracer().deadBackChannelDetected();
+      int stripe = this.getStripe(this.lastArrayId + 1);
+      if (stripe > 0) {
+        // The next array is stuck on one of the other stripes.
+        if (this.stripeRequests[stripe] != null) {
+          this.stripeRequests[stripe].cancel();
+          this.stripeRequests[stripe] = null;
+        }
+        this.ensureStripe(stripe, 0);
+        support.notifyStatEvent(RequestStat.BACKCHANNEL_DEAD);
+        return;
+      }
+      this.clearStandbyBackChannelTimer();
       this.backChannelRequest.cancel();
       this.backChannelRequest = null;
-      this.maybeRetryBackChannel();
+      if (!this.promoteStandbyBackChannel()) {
+        this.maybeRetryBackChannel();
+      }
       support.notifyStatEvent(RequestStat.BACKCHANNEL_DEAD);
     }
   }
 
   public UriBuilder getForwardChannelUri(String path) {
     UriBuilder uri = this.createDataUri(path, null);
-    channelDebug.debug("GetForwardChannelUri: " + uri);
+    if (channelDebug.isLoggable(Level.DEBUG)) {
+      channelDebug.debug("GetForwardChannelUri: " + uri);
+    }
     return uri;
   }
 
@@ -1137,7 +2141,9 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
 
   public UriBuilder getBackChannelUri(String path) {
     UriBuilder uri = this.createDataUri(path, null);
-    channelDebug.debug("GetBackChannelUri: " + uri);
+    if (channelDebug.isLoggable(Level.DEBUG)) {
+      channelDebug.debug("GetBackChannelUri: " + uri);
+    }
     return uri;
   }
 
@@ -1159,8 +2165,19 @@ class WebChannelBase implements Channel, NetUtils.TestNetworkCallback {
       return WebChannelBase.ErrorEnum.OK;
     }
 
+    /**
+     * @param retry Whether the request is the retry of a failed request.
+     * @param retryBackoffMs The backoff of the request if it is a retry.
+     * @return The time to wait before making a request, or 0 to make it now.
+     */
+    public long getRequestDelayMs(WebChannelBase channel, boolean retry, long retryBackoffMs) {
+      return 0;
+    }
+
     public void channelOpened(WebChannelBase channel) {}
 
+    public void channelReconnected(WebChannelBase channel) {}
+
     public void channelHandleArray(
         WebChannelBase channel, Object data, String responseTextForDebugging) {}
 
@@ -2,6 +2,7 @@ package bidiweb.webchannel.client.protocol_v8;
 
 import bidiweb.webchannel.client.AsyncWebChannel;
 import bidiweb.webchannel.client.ErrorStatus;
+import bidiweb.webchannel.client.UndeliveredMessageException;
 import bidiweb.webchannel.client.WebChannel;
 import bidiweb.webchannel.client.WebChannelConstants;
 import bidiweb.webchannel.client.WebChannelOptions;
@@ -9,18 +10,25 @@ import bidiweb.webchannel.client.WebChannelRuntimeProperties;
 import bidiweb.webchannel.client.WebChannelTransport;
 import bidiweb.webchannel.client.support.Support;
 import bidiweb.webchannel.client.support.Support.Debugger;
+import bidiweb.webchannel.client.support.Support.Debugger.Level;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 // no disposeInternal (eventHandler, so not needed)
 // sendrawjson automatically
 class WebChannelBaseTransport extends WebChannelTransport {
   private Support support;
+  private TransportContext context;
 
-  public WebChannelBaseTransport(Support support) {
+  public WebChannelBaseTransport(Support support, TransportContext context) {
     this.support = support;
+    this.context = context;
   }
 
   public WebChannel createWebChannel(String urlPath, WebChannelOptions options) {
@@ -29,7 +37,7 @@ class WebChannelBaseTransport extends WebChannelTransport {
   }
 
   public AsyncWebChannel createAsyncWebChannel(String urlPath, WebChannelOptions options) {
-    return new InternalChannel(support, urlPath, options);
+    return new InternalChannel(support, urlPath, options, this.context);
   }
 }
 
@@ -44,10 +52,12 @@ class InternalChannel implements AsyncWebChannel {
   private Handler channelHandler;
   private EventHandler eventHandler;
 
-  public InternalChannel(Support support, String url, WebChannelOptions options) {
+  public InternalChannel(
+      Support support, String url, WebChannelOptions options, TransportContext context) {
     this.support = support;
 
     this.channel = new WebChannelBase(support, options, WebChannelTransport.CLIENT_VERSION, null);
+    this.channel.setTransportContext(context);
     this.url = url;
 
     if (options != null && options.getTestUrl() != null) {
@@ -91,9 +101,11 @@ class InternalChannel implements AsyncWebChannel {
         if (this.messageUrlParams != null
             && this.messageUrlParams.containsKey(httpSessionIdParam)) {
           this.messageUrlParams.remove(httpSessionIdParam);
-          this.channelDebug.warning(
-              "Ignore httpSessionIdParam also specified with messageUrlParams: "
-                  + httpSessionIdParam);
+          if (this.channelDebug.isLoggable(Level.WARNING)) {
+            this.channelDebug.warning(
+                "Ignore httpSessionIdParam also specified with messageUrlParams: "
+                    + httpSessionIdParam);
+          }
         }
       }
     }
@@ -115,15 +127,65 @@ class InternalChannel implements AsyncWebChannel {
   }
 
   public <T> void send(T message) throws IllegalArgumentException {
+    this.channel.sendMap(toRawJson(message), null);
+  }
+
+  public void sendAll(Collection<?> messages) throws IllegalArgumentException {
+    List<Map<String, String>> maps = new ArrayList<>(messages.size());
+    for (Object message : messages) {
+      maps.add(toRawJson(message));
+    }
+    for (Map<String, String> map : maps) {
+      this.channel.sendMap(map, null);
+    }
+  }
+
+  public <T> CompletableFuture<Void> sendAsync(T message) throws IllegalArgumentException {
+    Map<String, String> rawJson = toRawJson(message);
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    this.channel.sendMap(rawJson, future);
+    return future;
+  }
+
+  private static Map<String, String> toRawJson(Object message) {
     if (!(message instanceof String)) {
       throw new IllegalArgumentException(
           "Serialized JSON string only. " + message.getClass());
     }
 
-    String json = (String) message;
-    Map<String, String> rawJson = new HashMap<>();
-    rawJson.put("__data__", json);
-    this.channel.sendMap(rawJson, null);
+    return Collections.singletonMap("__data__", (String) message);
+  }
+
+  /**
+   * Completes the futures of the maps acknowledged by a single POST.
+   */
+  @SuppressWarnings("unchecked")
+  private static void completeSends(List<Wire.QueuedMap> maps) {
+    for (Wire.QueuedMap map : maps) {
+      if (map.context instanceof CompletableFuture) {
+        ((CompletableFuture<Void>) map.context).complete(null);
+      }
+    }
+  }
+
+  private static void failSends(List<Wire.QueuedMap> maps, boolean possiblyDelivered) {
+    if (maps == null) {
+      return;
+    }
+    for (Wire.QueuedMap map : maps) {
+      if (map.context instanceof CompletableFuture) {
+        ((CompletableFuture<?>) map.context).completeExceptionally(
+            new UndeliveredMessageException(map.map.get("__data__"), possiblyDelivered));
+      }
+    }
+  }
+
+  public void pauseReceiving() {
+    this.channel.setBackChannelPaused(true);
+  }
+
+  public void resumeReceiving() {
+    this.channel.setBackChannelPaused(false);
   }
 
   // FIXME: make this a view to the channel state
@@ -132,13 +194,33 @@ class InternalChannel implements AsyncWebChannel {
     result.setConcurrentRequestLimit(channel.getForwardChannelRequestPool().getMaxSize());
     result.setSpdyEnabled(true);
     result.setLastStatusCode(channel.getLastStatusCode());
+    result.setSmoothedRttMs(channel.getRttEstimator().getSmoothedRtt());
+    result.setRttVarianceMs(channel.getRttEstimator().getRttVariance());
     return result;
   }
 
   private class Handler extends WebChannelBase.Handler {
 
+    public long getRequestDelayMs(
+        WebChannelBase channel, boolean retry, long retryBackoffMs) {
+      TransportContext context = channel.getTransportContext();
+      if (context == null) {
+        return 0;
+      }
+      long delayMs = context.getRequestDelayMs(channel.getAuthority(), retry, retryBackoffMs);
+      if (delayMs > 0) {
+        if (channelDebug.isLoggable(Level.WARNING)) {
+          channelDebug.warning(
+              "Request to " + url + " held back by the transport for " + delayMs + "ms");
+        }
+      }
+      return delayMs;
+    }
+
     public void channelOpened(WebChannelBase channel) {
-      channelDebug.info("WebChannel opened on " + url);
+      if (channelDebug.isLoggable(Level.INFO)) {
+        channelDebug.info("WebChannel opened on " + url);
+      }
       try {
         eventHandler.onOpen();
       } catch (Exception ex) {
@@ -146,11 +228,25 @@ class InternalChannel implements AsyncWebChannel {
       }
     }
 
+    public void channelReconnected(WebChannelBase channel) {
+      if (channelDebug.isLoggable(Level.INFO)) {
+        channelDebug.info("WebChannel reconnected on " + url);
+      }
+    }
+
+    public void channelSuccess(WebChannelBase channel, List<Wire.QueuedMap> data) {
+      completeSends(data);
+    }
+
     public void channelClosed(
         WebChannelBase channel,
         List<Wire.QueuedMap> pendingData,
         List<Wire.QueuedMap> undeliveredData) {
-      channelDebug.info("WebChannel closed on " + url);
+      if (channelDebug.isLoggable(Level.INFO)) {
+        channelDebug.info("WebChannel closed on " + url);
+      }
+      failSends(pendingData, true);
+      failSends(undeliveredData, false);
       try {
         eventHandler.onClose();
       } catch (Exception ex) {
@@ -159,7 +255,9 @@ class InternalChannel implements AsyncWebChannel {
     }
 
     public void channelError(WebChannelBase channel, WebChannelBase.ErrorEnum error) {
-      channelDebug.info("WebChannel aborted on " + url + " due to channel error: " + error);
+      if (channelDebug.isLoggable(Level.INFO)) {
+        channelDebug.info("WebChannel aborted on " + url + " due to channel error: " + error);
+      }
       try {
         eventHandler.onError(new ErrorStatus(ErrorStatus.StatusEnum.NETWORK_ERROR, error));
       } catch (Exception ex) {
@@ -172,8 +270,10 @@ class InternalChannel implements AsyncWebChannel {
       try {
         eventHandler.onMessage(data);
       } catch (Exception ex) {
-        channelDebug.dumpException(
-            ex, "event handler onMessage() exception! Payload: " + responseTextForDebugging);
+        if (channelDebug.isLoggable(Level.SEVERE)) {
+          channelDebug.dumpException(
+              ex, "event handler onMessage() exception! Payload: " + responseTextForDebugging);
+        }
       }
     }
   }
@@ -6,6 +6,14 @@ import bidiweb.webchannel.client.support.Support;
 public class WebChannelTransports {
 
   public static WebChannelTransport createTransport(Support support) {
-    return new WebChannelBaseTransport(support);
+    return new WebChannelBaseTransport(support, null);
+  }
+
+  /**
+   * @param context The state to share with the other transports created with
+   *     the same context, e.g. for the channels running on other threads.
+   */
+  public static WebChannelTransport createTransport(Support support, TransportContext context) {
+    return new WebChannelBaseTransport(support, context);
   }
 }
@@ -15,6 +15,10 @@ interface Wire {
     public long mapId;
     public Map<String, String> map;
     public Object context;
+
+    // System.nanoTime() when queued and when sent in a POST, or 0 if not traced
+    public long enqueueTime;
+    public long dequeueTime;
   }
 
   interface BadMessageHandler {
@@ -27,6 +27,8 @@ class WireV8 {
 
   public String encodeMessageQueue(
       List<Wire.QueuedMap> messageQueue, int count, Wire.BadMessageHandler badMessageHandler) {
+    Support.Tracer tracer = support.getTracer();
+    long startTime = tracer.isEnabled() ? System.nanoTime() : 0;
     List<String> buffer = new ArrayList<>();
 
     buffer.add("count=" + count);
@@ -61,11 +63,20 @@ class WireV8 {
       }
     }
 
-    return sb.toString();
+    String result = sb.toString();
+    if (tracer.isEnabled()) {
+      tracer.messagesEncoded(count, result.length(), System.nanoTime() - startTime);
+    }
+    return result;
   }
 
   public List<?> decodeMessage(String messageText, int arrayLevel) {
     JsonDecoder jsonDecoder = support.getJsonDecoder();
-    return jsonDecoder.decodeArray(messageText, arrayLevel);
+    long startTime = System.nanoTime();
+    List<?> result = jsonDecoder.decodeArray(messageText, arrayLevel);
+    long duration = System.nanoTime() - startTime;
+    support.notifyMeasurement(Support.Measurement.DECODE_TIME_US, duration / 1000);
+    support.getTracer().responseDecoded(messageText.length(), duration);
+    return result;
   }
 }
@@ -1,5 +1,7 @@
 package bidiweb.webchannel.client.support;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
@@ -54,10 +56,31 @@ public abstract class Support {
 
   public static abstract class Debugger {
 
+    public enum Level {
+      DEBUG,
+      INFO,
+      WARNING,
+      SEVERE
+    }
+
+    /**
+     * Whether messages of the given level are logged. Callers check this
+     * before building a message, so that nothing is formatted or allocated
+     * when logging is off.
+     *
+     * <p>By default, the debug messages are off, since they are built per
+     * request and per response chunk; a Debugger that logs them overrides this.
+     */
+    public boolean isLoggable(Level level) {
+      return level != Level.DEBUG;
+    }
+
     public abstract void info(String text);
 
     public void debug(String text) {
-      this.info(text);
+      if (this.isLoggable(Level.DEBUG)) {
+        this.info(text);
+      }
     }
 
     public abstract void warning(String text);
@@ -72,6 +95,9 @@ public abstract class Support {
     public abstract void assertCondition(boolean condition, String text);
 
     public void httpRequest(String verb, UriBuilder uri, String id, long attempt, String postData) {
+      if (!isLoggable(Level.DEBUG)) {
+        return;
+      }
       // WARNING: Do not use info() log until we strip out the PII.
       debug(
           "HTTP REQ ("
@@ -97,6 +123,9 @@ public abstract class Support {
         long attempt,
         RequestReadyState readyState,
         int statusCode) {
+      if (!isLoggable(Level.DEBUG)) {
+        return;
+      }
       // WARNING: Do not use info() log until we strip out the PII.
       debug(
           "HTTP RESP ("
@@ -114,6 +143,9 @@ public abstract class Support {
     }
 
     public void httpChannelResponseText(String id, StringBuilder responseText, String desc) {
+      if (!isLoggable(Level.DEBUG)) {
+        return;
+      }
       // TODO: Optimized/finalized the logger part of the support code.
       // WARNING: Do not use info() log until we strip out the PII.
       debug(
@@ -160,6 +192,19 @@ public abstract class Support {
     public void drainResponseText(StringBuilder buffer) {
     }
 
+    /**
+     * Suspends or resumes reading the response body from the network. While paused,
+     * the implementation should stop draining the underlying connection so that the
+     * server gets pushed back by the transport-level flow control.
+     *
+     * <p>Optional. Implementations that can't pause the connection may ignore this,
+     * in which case the response text is simply buffered until resumed.
+     *
+     * @param paused Whether to stop reading the response.
+     */
+    public void setResponsePaused(boolean paused) {
+    }
+
     public abstract RequestReadyState getReadyState();
 
     public abstract RequestErrorCode getLastErrorCode();
@@ -177,7 +222,49 @@ public abstract class Support {
         @Nullable String postData,
         @Nullable Map<String, String> headers);
 
+    /**
+     * Same as above, with headers prepared once by {@link Support#newHeaderSet},
+     * which the default implementation turns back into a map.
+     */
+    public void send(
+        UriBuilder uri,
+        String verb,
+        @Nullable String postData,
+        @Nullable HeaderSet headers) {
+      this.send(uri, verb, postData, headers == null ? null : headers.asMap());
+    }
+
     public abstract void abort();
+
+    /**
+     * Closes the connection of the request instead of leaving it open for the
+     * next requests to reuse, e.g. once its response has failed. Unlike abort(),
+     * also applies to a completed request. A no-op unless the implementation
+     * reuses its connections.
+     */
+    public void closeConnection() {}
+  }
+
+  /**
+   * An immutable set of request headers, prepared once, e.g. per channel and
+   * kind of request, in whatever form the HTTP implementation can apply to
+   * each request at the least cost.
+   */
+  public static class HeaderSet {
+    private final Map<String, String> headers;
+
+    public HeaderSet(Map<String, String> headers) {
+      this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+    }
+
+    public Map<String, String> asMap() {
+      return this.headers;
+    }
+
+    @Override
+    public String toString() {
+      return this.headers.toString();
+    }
   }
 
   public interface RequestReadyStateChangeHandler {
@@ -275,7 +362,12 @@ public abstract class Support {
     REQUEST_TIMEOUT,
     BACKCHANNEL_MISSING,
     BACKCHANNEL_DEAD,
-    BROWSER_OFFLINE
+    BROWSER_OFFLINE,
+    // With keepAliveBackChannel, whether a back channel request has asked to
+    // keep its connection open for reuse or to close it. Whether a connection
+    // is actually reused is up to the HttpRequest implementation.
+    BACKCHANNEL_KEEP_ALIVE_REQUESTED,
+    BACKCHANNEL_CLOSE_REQUESTED
   }
 
   public enum ServerReachability {
@@ -285,6 +377,44 @@ public abstract class Support {
     BACK_CHANNEL_ACTIVITY
   }
 
+  /**
+   * The values measured by the channel, see notifyMeasurement().
+   */
+  public enum Measurement {
+    /** The round-trip time of a successful forward channel request, in ms. */
+    FORWARD_CHANNEL_RTT_MS,
+
+    /** The duration of a back channel request, in ms. */
+    BACK_CHANNEL_LIFETIME_MS,
+
+    /** The time to reconnect a channel after a transient error, in ms. */
+    RECONNECT_GAP_MS,
+
+    /** The number of queued outgoing maps when a forward channel request is made. */
+    OUTGOING_QUEUE_DEPTH,
+
+    /** The time to decode a response, in microseconds. */
+    DECODE_TIME_US,
+
+    /** The time a traced message has been queued before sent in a POST, in microseconds. */
+    MESSAGE_QUEUE_TIME_US,
+
+    /** The time from sending a traced message in a POST to the POST ack, in microseconds. */
+    MESSAGE_ACK_TIME_US,
+
+    /** The time from queueing a traced message to the POST ack, in microseconds. */
+    MESSAGE_SEND_LATENCY_US,
+
+    /** The time taken to decode the response chunk of a traced array, in microseconds. */
+    ARRAY_DECODE_TIME_US,
+
+    /** The time the handler has taken to process a traced array, in microseconds. */
+    ARRAY_HANDLER_TIME_US,
+
+    /** The time from receiving a traced array to processed by the handler, in microseconds. */
+    ARRAY_DELIVERY_LATENCY_US
+  }
+
   // stats
 
   public void notifyStatEvent(RequestStat event) {
@@ -299,6 +429,13 @@ public abstract class Support {
     // optional
   }
 
+  /**
+   * Called on the hot path of the channel, and so should be cheap.
+   */
+  public void notifyMeasurement(Measurement measurement, long value) {
+    // optional
+  }
+
   public void onStartExecution() {
     // not needed
   }
@@ -307,6 +444,45 @@ public abstract class Support {
     // not needed now
   }
 
+  // tracing
+
+  /**
+   * The protocol events of a channel. All the methods do nothing by default.
+   *
+   * <p>The callers check isEnabled() before measuring anything extra for the
+   * tracer, so a disabled tracer only costs the calls to no-op methods.
+   */
+  public static abstract class Tracer {
+    public boolean isEnabled() {
+      return false;
+    }
+
+    /** @param bytes The length of the POST data, or 0 for a GET. */
+    public void requestSent(String rid, String verb, int bytes) {}
+
+    public void requestFirstByte(String rid, String verb) {}
+
+    /** @param bytes The length of the response text received. */
+    public void requestCompleted(String rid, String verb, int status, long bytes) {}
+
+    public void requestTimedOut(String rid, String verb) {}
+
+    public void stateChanged(String fromState, String toState) {}
+
+    /**
+     * @param retryType "forward", "back" or "reconnect"
+     */
+    public void retryScheduled(String retryType, int retryCount, long delayMs) {}
+
+    public void deadBackChannelDetected() {}
+
+    public void messagesEncoded(int count, int length, long durationNanos) {}
+
+    public void responseDecoded(int length, long durationNanos) {}
+  }
+
+  private static final Tracer NO_OP_TRACER = new Tracer() {};
+
   // timer (future) support
 
   public interface TimeoutHandler {
@@ -320,6 +496,49 @@ public abstract class Support {
    */
   public abstract Object setTimeout(TimeoutHandler handler, long timeout);
 
+  /**
+   * Runs the handler soon, on the thread of the channel, after the code that
+   * is running and before any timer with a positive timeout that is due later.
+   * The handlers are run in the order they are set.
+   *
+   * <p>Implementations may override the default, which is a zero timeout, with
+   * a cheaper FIFO queue.
+   *
+   * @param handler The event handler of the timeout event
+   * @return  The timer object to hold, which can be cleared by clearTimeout()
+   */
+  public Object setImmediate(TimeoutHandler handler) {
+    return setTimeout(handler, 0);
+  }
+
+  /**
+   * Runs the handler on the thread of the channel. Unlike the other methods,
+   * may be called from any thread, e.g. to deliver a result shared by the
+   * channels of a transport.
+   *
+   * <p>Implementations whose setTimeout() isn't thread-safe must override the
+   * default, which is a zero timeout.
+   *
+   * @param handler The event handler of the timeout event
+   */
+  public void post(TimeoutHandler handler) {
+    setTimeout(handler, 0);
+  }
+
+  /**
+   * Runs the handler once the transport admits another open of the channel,
+   * i.e. a reconnect, on the thread of the channel. The transport may delay the
+   * opens to limit their rate.
+   *
+   * <p>Implementations may override the default, which admits the open at once.
+   *
+   * @param handler The event handler of the admission
+   * @return  The timer object to hold, which can be cleared by clearTimeout()
+   */
+  public Object admitOpen(TimeoutHandler handler) {
+    return setImmediate(handler);
+  }
+
   /**
    * @param timer The timer object to clear.
    */
@@ -368,8 +587,28 @@ public abstract class Support {
 
   public abstract Debugger getDebugger();
 
+  /**
+   * Receives the protocol events of the channel, e.g. to record them in a
+   * profiler, on the thread of the channel. The default tracer ignores them.
+   */
+  public Tracer getTracer() {
+    return NO_OP_TRACER;
+  }
+
   public abstract HttpRequest newHttpRequest();
 
+  public HeaderSet newHeaderSet(Map<String, String> headers) {
+    return new HeaderSet(headers);
+  }
+
+  /**
+   * Whether the HttpRequests reuse the connections left open by the previous
+   * requests, which the channel may then keep alive.
+   */
+  public boolean supportsConnectionReuse() {
+    return false;
+  }
+
   public abstract UrlEncoder getUrlEncoder();
 
   public JsonEncoder getJsonEncoder() {
@@ -0,0 +1,73 @@
+package bidiweb.webchannel.client.support.basic;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.util.ClassInfo;
+import com.google.api.client.util.FieldInfo;
+import com.google.common.collect.ImmutableList;
+import bidiweb.webchannel.client.support.Support.HeaderSet;
+
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Implementation of WebChannel HeaderSet, with the headers resolved once against the fields of
+ * {@link HttpHeaders}, so that applying them to a request takes no field lookups.
+ *
+ * <p>Note that HttpHeaders store some of the headers directly in its fields with additional type
+ * information. These known fields are stored as a list, which is why we handle these separately
+ * to prevent cast exceptions. Obviously, there is now no way to pass multiple values for these
+ * known list fields. This is enforced by the current WebChannel API, but does not seem to be
+ * limiting as we don't expect a need to pass more information other than Authentication cookies.
+ */
+@Immutable
+final class BasicHeaderSet extends HeaderSet {
+  private static final ClassInfo HEADERS_CLASS_INFO = new HttpHeaders().getClassInfo();
+
+  /** The field of each header, or null for the headers which are not known fields. */
+  private final FieldInfo[] fields;
+
+  /** The names of the headers, lower-cased as HttpHeaders keys its unknown fields. */
+  private final String[] names;
+
+  private final Object[] values;
+
+  @Nullable private final String contentType;
+
+  BasicHeaderSet(Map<String, String> headers) {
+    super(headers);
+    int size = headers.size();
+    this.fields = new FieldInfo[size];
+    this.names = new String[size];
+    this.values = new Object[size];
+    int i = 0;
+    for (Map.Entry<String, String> header : asMap().entrySet()) {
+      fields[i] = HEADERS_CLASS_INFO.getFieldInfo(header.getKey());
+      if (fields[i] != null) {
+        values[i] = ImmutableList.of(header.getValue());
+      } else {
+        names[i] = header.getKey().toLowerCase(Locale.US);
+        values[i] = header.getValue();
+      }
+      i++;
+    }
+    this.contentType = headers.get("Content-Type");
+  }
+
+  @Nullable
+  String getContentType() {
+    return contentType;
+  }
+
+  /** Sets the headers on the given (new) headers of a request. */
+  void applyTo(HttpHeaders target) {
+    for (int i = 0; i < values.length; i++) {
+      if (fields[i] != null) {
+        fields[i].setValue(target, values[i]);
+      } else {
+        target.getUnknownKeys().put(names[i], values[i]);
+      }
+    }
+  }
+}
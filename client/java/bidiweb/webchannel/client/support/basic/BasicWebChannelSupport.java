@@ -1,15 +1,19 @@
 package bidiweb.webchannel.client.support.basic;
 
+import bidiweb.webchannel.client.WebChannelOptions.OpenPriority;
+import bidiweb.webchannel.client.metrics.WebChannelMetrics;
 import bidiweb.webchannel.client.support.Support;
 import com.google.common.base.Preconditions;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Native Java WebChannel Support layer implementation.
@@ -18,38 +22,145 @@ import java.util.concurrent.TimeUnit;
  */
 class BasicWebChannelSupport extends Support {
 
+  /** Stateless, so shared by all the channels. */
+  private static final Debugger DEBUGGER = new BasicWebChannelSupportDebugger();
+
   /** For handling all the WebChannel client calls and callbacks, including the timers. */
   private final ScheduledExecutorService apiThreadExecutor;
   /** For handling any (potentially blocking) network traffic. */
   private final ExecutorService networkExecutor;
+  /** For arming the timers with a coarse resolution, if any. Ticks on {@code apiThreadExecutor}. */
+  @Nullable private final HashedWheelTimer timer;
+
+  /** The queue of the zero-delay timers, if any. Drained on {@code apiThreadExecutor}. */
+  @Nullable private final MicrotaskQueue microtasks;
+
+  /** For recording the stats of the channel, if any. Shared with the other channels. */
+  @Nullable private final WebChannelMetrics metrics;
+
+  /** For recording the protocol events of the channel. */
+  private final Tracer tracer;
+
+  /** For admitting the reconnects of the channel, if the rate of the opens is limited. */
+  @Nullable private final OpenScheduler openScheduler;
+
+  private final OpenPriority openPriority;
 
   /** The given {@code apiThreadExecutor} must be single-threaded. */
   public BasicWebChannelSupport(
       ScheduledExecutorService apiThreadExecutor, ExecutorService networkExecutor) {
+    this(
+        apiThreadExecutor,
+        null,
+        null,
+        networkExecutor,
+        null,
+        false,
+        null,
+        OpenPriority.INTERACTIVE);
+  }
+
+  /** Runs the channel on the given event loop, using its timer wheel and microtask queue. */
+  public BasicWebChannelSupport(EventLoop eventLoop, ExecutorService networkExecutor) {
+    this(eventLoop, networkExecutor, null, false);
+  }
+
+  /**
+   * Runs the channel on the given event loop, using its timer wheel and microtask queue, and
+   * records the stats of the channel to the given metrics.
+   *
+   * @param jfrEvents Whether to emit the protocol events of the channel as JFR events.
+   */
+  public BasicWebChannelSupport(
+      EventLoop eventLoop,
+      ExecutorService networkExecutor,
+      @Nullable WebChannelMetrics metrics,
+      boolean jfrEvents) {
+    this(eventLoop, networkExecutor, metrics, jfrEvents, null, OpenPriority.INTERACTIVE);
+  }
+
+  /**
+   * As above, and admits the reconnects of the channel with the given scheduler of the opens of
+   * the transport, if any.
+   */
+  BasicWebChannelSupport(
+      EventLoop eventLoop,
+      ExecutorService networkExecutor,
+      @Nullable WebChannelMetrics metrics,
+      boolean jfrEvents,
+      @Nullable OpenScheduler openScheduler,
+      OpenPriority openPriority) {
+    this(
+        eventLoop,
+        eventLoop.getTimer(),
+        eventLoop.getMicrotasks(),
+        networkExecutor,
+        metrics,
+        jfrEvents,
+        openScheduler,
+        openPriority);
+  }
+
+  private BasicWebChannelSupport(
+      ScheduledExecutorService apiThreadExecutor,
+      @Nullable HashedWheelTimer timer,
+      @Nullable MicrotaskQueue microtasks,
+      ExecutorService networkExecutor,
+      @Nullable WebChannelMetrics metrics,
+      boolean jfrEvents,
+      @Nullable OpenScheduler openScheduler,
+      OpenPriority openPriority) {
     Preconditions.checkNotNull(apiThreadExecutor);
     Preconditions.checkNotNull(networkExecutor);
     this.apiThreadExecutor = apiThreadExecutor;
+    this.timer = timer;
+    this.microtasks = microtasks;
     this.networkExecutor = networkExecutor;
+    this.metrics = metrics;
+    this.tracer = jfrEvents ? JfrTracer.INSTANCE : super.getTracer();
+    this.openScheduler = openScheduler;
+    this.openPriority = openPriority;
+  }
+
+  @Override
+  public Tracer getTracer() {
+    return tracer;
   }
 
   @Override
   public void notifyStatEvent(RequestStat event) {
-    // optional for now.
+    if (metrics != null) {
+      metrics.recordStatEvent(event);
+    }
   }
 
   @Override
   public void notifyServerReachabilityEvent(ServerReachability event) {
-    // optional for now.
+    if (metrics != null) {
+      metrics.recordServerReachabilityEvent(event);
+    }
   }
 
   @Override
   public void notifyTimingEvent(int size, long rtt, int retries) {
-    // optional for now.
+    if (metrics != null) {
+      metrics.recordMeasurement(Measurement.FORWARD_CHANNEL_RTT_MS, rtt);
+    }
+  }
+
+  @Override
+  public void notifyMeasurement(Measurement measurement, long value) {
+    if (metrics != null) {
+      metrics.recordMeasurement(measurement, value);
+    }
   }
 
   @Override
   public Object setTimeout(final TimeoutHandler handler, long timeout) {
     Preconditions.checkNotNull(handler);
+    if (timer != null && timeout > 0) {
+      return timer.newTimeout(handler, timeout);
+    }
     return apiThreadExecutor.schedule(new Runnable() {
       public void run() {
         handler.onTimeout();
@@ -57,8 +168,80 @@ class BasicWebChannelSupport extends Support {
     }, timeout, TimeUnit.MILLISECONDS);
   }
 
+  @Override
+  public Object setImmediate(TimeoutHandler handler) {
+    Preconditions.checkNotNull(handler);
+    if (microtasks == null) {
+      return super.setImmediate(handler);
+    }
+    return microtasks.add(handler);
+  }
+
+  @Override
+  public void post(final TimeoutHandler handler) {
+    Preconditions.checkNotNull(handler);
+    apiThreadExecutor.execute(
+        new Runnable() {
+          public void run() {
+            handler.onTimeout();
+          }
+        });
+  }
+
+  @Override
+  public Object admitOpen(TimeoutHandler handler) {
+    Preconditions.checkNotNull(handler);
+    if (openScheduler == null) {
+      return super.admitOpen(handler);
+    }
+    QueuedOpen open = new QueuedOpen(handler);
+    open.pending = openScheduler.submit(open, openPriority);
+    return open;
+  }
+
+  /** An open queued by admitOpen(), which runs its handler on the API thread once admitted. */
+  private final class QueuedOpen implements Runnable {
+    private final TimeoutHandler handler;
+
+    /** Confined to the API thread, as is {@link #cancelled}. */
+    private OpenScheduler.PendingOpen pending;
+
+    private boolean cancelled = false;
+
+    private QueuedOpen(TimeoutHandler handler) {
+      this.handler = handler;
+    }
+
+    @Override
+    public void run() {
+      apiThreadExecutor.execute(
+          new Runnable() {
+            public void run() {
+              // Unless cleared after having been admitted.
+              if (!cancelled) {
+                handler.onTimeout();
+              }
+            }
+          });
+    }
+  }
+
   @Override
   public void clearTimeout(Object timer) {
+    if (timer instanceof QueuedOpen) {
+      QueuedOpen open = (QueuedOpen) timer;
+      open.cancelled = true;
+      this.openScheduler.cancel(open.pending);
+      return;
+    }
+    if (timer instanceof MicrotaskQueue.Microtask) {
+      this.microtasks.cancel((MicrotaskQueue.Microtask) timer);
+      return;
+    }
+    if (timer instanceof HashedWheelTimer.Timeout) {
+      this.timer.cancel((HashedWheelTimer.Timeout) timer);
+      return;
+    }
     Preconditions.checkArgument(timer instanceof ScheduledFuture);
     ((ScheduledFuture) timer).cancel(false);
   }
@@ -75,7 +258,18 @@ class BasicWebChannelSupport extends Support {
 
   @Override
   public Debugger getDebugger() {
-    return new BasicWebChannelSupportDebugger();
+    return DEBUGGER;
+  }
+
+  @Override
+  public boolean supportsConnectionReuse() {
+    // NetHttpTransport pools its connections unless keep-alive is disabled for HttpURLConnection.
+    return Boolean.parseBoolean(System.getProperty("http.keepAlive", "true"));
+  }
+
+  @Override
+  public HeaderSet newHeaderSet(Map<String, String> headers) {
+    return new BasicHeaderSet(headers);
   }
 
   @Override
@@ -12,6 +12,20 @@ import bidiweb.webchannel.client.support.Support.Debugger;
 class BasicWebChannelSupportDebugger extends Debugger {
   static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
 
+  @Override
+  public boolean isLoggable(Level level) {
+    switch (level) {
+      case DEBUG:
+        return logger.atFine().isEnabled();
+      case INFO:
+        return logger.atInfo().isEnabled();
+      case WARNING:
+        return logger.atWarning().isEnabled();
+      default:
+        return logger.atSevere().isEnabled();
+    }
+  }
+
   @Override
   public void debug(String text) {
     logger.atFine().log("%s", text);
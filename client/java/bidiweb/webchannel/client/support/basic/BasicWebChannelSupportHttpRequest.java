@@ -12,9 +12,9 @@ import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableList;
 import com.google.common.flogger.GoogleLogger;
 import com.google.common.io.Closeables;
+import bidiweb.webchannel.client.support.Support.HeaderSet;
 import bidiweb.webchannel.client.support.Support.RequestErrorCode;
 import bidiweb.webchannel.client.support.Support.RequestReadyState;
 import bidiweb.webchannel.client.support.Support.UriBuilder;
@@ -22,6 +22,7 @@ import bidiweb.webchannel.client.support.Support.UriBuilder;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.nio.CharBuffer;
@@ -77,6 +78,16 @@ class BasicWebChannelSupportHttpRequest
   @GuardedBy("lock")
   private boolean aborted = false;
 
+  @GuardedBy("lock")
+  private boolean responsePaused = false;
+
+  /** The response being read, if any, whose connection {@link #closeConnection} closes. */
+  @GuardedBy("lock")
+  @Nullable private HttpResponse response = null;
+
+  @GuardedBy("lock")
+  private boolean connectionClosed = false;
+
   @GuardedBy("lock")
   private final StringBuilder responseTextBuilder = new StringBuilder();
 
@@ -111,6 +122,16 @@ class BasicWebChannelSupportHttpRequest
     }
   }
 
+  @Override
+  public void setResponsePaused(boolean paused) {
+    synchronized (lock) {
+      responsePaused = paused;
+      if (!paused) {
+        lock.notifyAll();
+      }
+    }
+  }
+
   @Override
   public RequestReadyState getReadyState() {
     synchronized (lock) {
@@ -138,12 +159,25 @@ class BasicWebChannelSupportHttpRequest
       final String verb,
       @Nullable final String postData,
       @Nullable final Map<String, String> headers) {
+    send(uri, verb, postData, headers == null ? null : new BasicHeaderSet(headers));
+  }
+
+  @Override
+  public void send(
+      final UriBuilder uri,
+      final String verb,
+      @Nullable final String postData,
+      @Nullable HeaderSet headers) {
     Preconditions.checkState(
         responseFuture == null, "Send() was called twice on the same HttpRequest");
+    final BasicHeaderSet basicHeaders =
+        headers == null || headers instanceof BasicHeaderSet
+            ? (BasicHeaderSet) headers
+            : new BasicHeaderSet(headers.asMap());
     this.responseFuture =
         networkExecutor.submit(new Runnable() {
           public void run() {
-            sendSynchronously(uri, verb, postData, headers);
+            sendSynchronously(uri, verb, postData, basicHeaders);
           }
         });
   }
@@ -153,7 +187,7 @@ class BasicWebChannelSupportHttpRequest
       UriBuilder uri,
       String verb,
       @Nullable String postData,
-      @Nullable Map<String, String> headers) {
+      @Nullable BasicHeaderSet headers) {
     try {
       logger.atFine().log(
           "Sending HTTP %s request: %s to url: %s with headers: %s (%s)",
@@ -163,9 +197,18 @@ class BasicWebChannelSupportHttpRequest
           httpRequestFactory.buildRequest(verb, new GenericUrl(uri.getUri().toString()), content);
       request.setThrowExceptionOnExecuteError(false);
       if (headers != null) {
-        copyHeaders(headers, request.getHeaders());
+        headers.applyTo(request.getHeaders());
       }
       HttpResponse response = request.execute();
+      boolean closed;
+      synchronized (lock) {
+        this.response = response;
+        closed = connectionClosed;
+      }
+      if (closed) {
+        // Closed while connecting, which fails the read below.
+        disconnect(response);
+      }
       readHttpResponse(response);
     } catch (IOException e) {
       processRequestError(e);
@@ -178,12 +221,12 @@ class BasicWebChannelSupportHttpRequest
    * <p>Note that the Content-Type is taken from the given headers.
    */
   private static HttpContent prepareContent(
-      @Nullable String content, @Nullable Map<String, String> headers) {
+      @Nullable String content, @Nullable BasicHeaderSet headers) {
     if (content == null) {
       return new EmptyContent();
     }
     Preconditions.checkNotNull(headers, "headers can't be null when content is not null");
-    String contentType = headers.get("Content-Type");
+    String contentType = headers.getContentType();
     Preconditions.checkNotNull(
         contentType, "Content-Type must be specified in headers when content is not null");
     final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
@@ -195,26 +238,6 @@ class BasicWebChannelSupportHttpRequest
     };
   }
 
-  /**
-   * Copy the headers from the source map of strings to the target HTTP headers.
-   *
-   * <p>Note that HttpHeaders store some of the headers directly in its fields with additional type
-   * information. These known fields are stored as a list, which is why we handle these separately
-   * to prevent cast exceptions. Obviously, there is now no way to pass multiple values for these
-   * known list fields. This is enforced by the current WebChannel API, but does not seem to be
-   * limiting as we don't expect a need to pass more information other than Authentication cookies.
-   */
-  private static void copyHeaders(Map<String, String> source, HttpHeaders target) {
-    for (Map.Entry<String, String> header : source.entrySet()) {
-      if (target.getClassInfo().getFieldInfo(header.getKey()) != null) {
-        // This is a known HttpHeaders field that is expected to be passed as a list.
-        target.set(header.getKey(), ImmutableList.of(header.getValue()));
-      } else {
-        target.set(header.getKey(), header.getValue());
-      }
-    }
-  }
-
   /**
    * Reads the HTTP response for the channel request and updates the channel state accordingly.
    *
@@ -285,14 +308,35 @@ class BasicWebChannelSupportHttpRequest
     CharBuffer buffer = CharBuffer.allocate(READ_CHUNK_SIZE_BYTES);
     Reader reader = new InputStreamReader(content, encoding);
     try {
+      awaitResponseResumed();
       while (readChunk(reader, buffer)) {
         processChunk(buffer);
+        awaitResponseResumed();
       }
     } finally {
       Closeables.closeQuietly(reader);
     }
   }
 
+  /**
+   * Blocks while the response is paused, leaving any unread data in the socket so that the
+   * server gets pushed back by TCP flow control.
+   *
+   * <p>To be called from {@code networkExecutor}.
+   */
+  private void awaitResponseResumed() throws InterruptedIOException {
+    synchronized (lock) {
+      while (responsePaused && !aborted) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while the response is paused");
+        }
+      }
+    }
+  }
+
   /**
    * Read a chunk of the data from the given reader.
    *
@@ -377,12 +421,43 @@ class BasicWebChannelSupportHttpRequest
     }
   }
 
+  @Override
+  public void closeConnection() {
+    HttpResponse response;
+    synchronized (lock) {
+      if (connectionClosed) {
+        return;
+      }
+      connectionClosed = true;
+      response = this.response;
+    }
+    if (response != null) {
+      disconnect(response);
+    }
+  }
+
+  /**
+   * Disconnects the given response, which closes its connection rather than returning it to the
+   * pool, and unblocks any pending read of its content.
+   *
+   * <p>Called on the calling thread rather than posted to {@code networkExecutor}, whose threads
+   * may all be blocked reading the responses of dead requests.
+   */
+  private static void disconnect(HttpResponse response) {
+    try {
+      response.disconnect();
+    } catch (IOException e) {
+      logger.atFine().withCause(e).log("Failed to disconnect the channel response");
+    }
+  }
+
   @Override
   public void abort() {
     synchronized (lock) {
       Preconditions.checkState(!aborted, "Duplicit abort call");
       Preconditions.checkNotNull(responseFuture, "Unexpected abort call before any send call");
       aborted = true;
+      lock.notifyAll();
       responseFuture.cancel(true);
     }
   }
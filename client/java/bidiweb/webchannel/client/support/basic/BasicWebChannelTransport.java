@@ -1,35 +1,83 @@
 package bidiweb.webchannel.client.support.basic;
 
 import bidiweb.webchannel.client.AsyncWebChannel;
+import bidiweb.webchannel.client.UndeliveredMessageException;
 import bidiweb.webchannel.client.WebChannel;
 import bidiweb.webchannel.client.WebChannelOptions;
 import bidiweb.webchannel.client.WebChannelRuntimeProperties;
 import bidiweb.webchannel.client.WebChannelTransport;
+import bidiweb.webchannel.client.WebChannelTransportOptions;
 
+import bidiweb.webchannel.client.metrics.MetricsExporter;
+import bidiweb.webchannel.client.metrics.MetricsSnapshot;
+import bidiweb.webchannel.client.metrics.WebChannelMetrics;
+import bidiweb.webchannel.client.protocol_v8.TransportContext;
+import bidiweb.webchannel.client.protocol_v8.TransportContextStats;
 import bidiweb.webchannel.client.protocol_v8.WebChannelTransports;
 import com.google.common.base.Preconditions;
+import com.google.common.flogger.GoogleLogger;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import javax.annotation.Nonnull;
-import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
 /**
  * WebChannel Transport for creating native thread-safe Java WebChannels.
  *
- * <p>WebChannels created by the same transport instance use two shared executors. One single
- * threaded {@code apiThreadExecutor} for asynchronous API calls, handler, and internal callback
- * calls. The other unbounded cached {@code networkExecutor} for handling blocking network traffic.
- * As a result, clients are likely to get <i>O(n)</i> threads for <i>n</i> active channels. The
- * inactive threads are evicted when unused for some time. You can explicitly force freeing any
+ * <p>WebChannels created by the same transport instance use two kinds of shared executors. A group
+ * of single-threaded event loops for asynchronous API calls, handler, and internal callback calls,
+ * each channel being pinned to one of the loops (its {@code apiThreadExecutor}) in a round-robin
+ * fashion. The other unbounded cached {@code networkExecutor} for handling blocking network
+ * traffic. As a result, clients are likely to get <i>O(n)</i> threads for <i>n</i> active channels.
+ * The inactive threads are evicted when unused for some time. You can explicitly force freeing any
  * resources (i.e., all the threads from the executors) by calling the shutdown method. Note however
  * that any active channels created by the shut down Transport would be broken.
  *
+ * <p>By default, a transport has a single event loop, and so runs all its channels on at most one
+ * core. Use {@link #createTransport(WebChannelTransportOptions)} to create a transport with one
+ * event loop per core or a configured number of event loops. The per-loop metrics are available
+ * from {@link #getEventLoopStats()}.
+ *
+ * <p>With a large number of channels per event loop, set {@link
+ * WebChannelTransportOptions.Builder#timerTickMs} to have the timers of the channels armed on a
+ * hashed timing wheel per loop, trading their precision for O(1) arming and cancellation.
+ *
+ * <p>Set {@link WebChannelTransportOptions.Builder#warmChannelsPerUrl} to have channels opened
+ * ahead of time for each URL and options that channels have been created for, so that the
+ * subsequent channels are handed out already open.
+ *
+ * <p>Set {@link WebChannelTransportOptions.Builder#maxOpensPerSecond} to limit the rate at which
+ * the channels are opened, e.g. when many channels are reopened at once after a server restart.
+ * The open() calls over the rate are queued, and the queue metrics are available from {@link
+ * #getOpenSchedulerStats()}. Closing a channel whose open() is still queued cancels the open,
+ * without any event delivered to the channel handler. The automatic reconnects of the channels are
+ * admitted in the same way.
+ *
+ * <p>Set {@link WebChannelTransportOptions.Builder#retryBudgetPercent} and {@link
+ * WebChannelTransportOptions.Builder#circuitBreakerFailureThreshold} to limit the retries of all
+ * the channels, and to stop the channels from making requests to a failing server.
+ *
+ * <p>The stats and the protocol stage timings of all the channels are recorded to lock-free
+ * histograms and counters, available from {@link #getMetrics()}, and exported periodically if
+ * {@link WebChannelTransportOptions.Builder#metricsExporter} is set.
+ *
+ * <p>Set {@link WebChannelTransportOptions.Builder#jfrEvents} to have the requests, retries, state
+ * changes and codec runs of the channels recorded as Java Flight Recorder events.
+ *
  * <p>To ensure isolation of WebChannels, you can use one transport per channel or group of channels
  * that need to be isolated.
  *
@@ -48,6 +96,10 @@ import javax.annotation.concurrent.ThreadSafe;
  * handler can only be set before the channel open() call and the open() call must be made before
  * send() and close() calls. Violation results in a runtime exception.
  *
+ * <p>The channel handler is called from the API thread of the channel, and so should not block.
+ * Set {@link WebChannelOptions.Builder#callbackExecutor} to have the handler called from another
+ * executor instead, through a bounded per-channel queue that preserves the order of the events.
+ *
  * <p>The getRuntimeProperties() method is not implemented as the underlying channel implementation
  * is not thread safe. Calling it will result in a runtime exception.
  *
@@ -55,10 +107,15 @@ import javax.annotation.concurrent.ThreadSafe;
  */
 @ThreadSafe
 public final class BasicWebChannelTransport extends WebChannelTransport {
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
   private static final AtomicLong instanceCounter = new AtomicLong();
 
   /** For handling asynchronous API calls, handler, and internal callback calls, e.g., timers. */
-  private final ScheduledExecutorService apiThreadExecutor;
+  private final EventLoop[] eventLoops;
+
+  /** For pinning the channels to the event loops. */
+  private final AtomicInteger nextEventLoop = new AtomicInteger();
 
   /** For handling any (potentially blocking) network traffic. */
   private final ExecutorService networkExecutor;
@@ -66,25 +123,123 @@ public final class BasicWebChannelTransport extends WebChannelTransport {
   /** Flags a transport that has been shut down to free resources and cannot create new channels. */
   private final AtomicBoolean shutdown = new AtomicBoolean(false);
 
-  private BasicWebChannelTransport() {
+  /** The protocol state shared by all the channels, e.g. the connection test results. */
+  private final TransportContext context;
+
+  /** The stats of all the channels. */
+  private final WebChannelMetrics metrics = new WebChannelMetrics();
+
+  /** Whether the channels emit JFR events. */
+  private final boolean jfrEvents;
+
+  /** For limiting the rate of the channel opens, or null if disabled. */
+  @Nullable private final OpenScheduler openScheduler;
+
+  /** The channels opened ahead of time, or null if disabled. */
+  @Nullable private final WarmChannelPool warmChannelPool;
+
+  private BasicWebChannelTransport(
+      int eventLoopCount, long timerTickMs, WebChannelTransportOptions transportOptions) {
+    context = TransportContext.create(transportOptions);
+    jfrEvents = transportOptions.getJfrEvents();
     long index = instanceCounter.getAndIncrement();
     // TODO: If we end up creating many short-lived Transports and thus many of these
-    // executors, we may consider reusing them in some way. Similarly, there is a risk of reusing
-    // the same single-thread apiThreadExecutor for all the channels. One option would be to keep
+    // executors, we may consider reusing them in some way. One option would be to keep
     // track of the channels created by the transport and return the executor to a pool when all its
     // channels are closed. However, this sounds like a lot of complication for an uncertain
     // benefit. Let's not optimize too heavily at this point though.
-    apiThreadExecutor =
-        Executors.newScheduledThreadPool(
-            1,
-            new ThreadFactoryBuilder()
-                .setNameFormat(String.format("webchannel-transport-%d-api-thread", index))
-                .build());
+    eventLoops = new EventLoop[eventLoopCount];
+    for (int i = 0; i < eventLoopCount; i++) {
+      String nameFormat =
+          eventLoopCount == 1
+              ? String.format("webchannel-transport-%d-api-thread", index)
+              : String.format("webchannel-transport-%d-api-thread-%d", index, i);
+      eventLoops[i] =
+          new EventLoop(
+              i, new ThreadFactoryBuilder().setNameFormat(nameFormat).build(), timerTickMs);
+    }
     networkExecutor =
         Executors.newCachedThreadPool(
             new ThreadFactoryBuilder()
                 .setNameFormat(String.format("webchannel-transport-%d-network-%%d", index))
                 .build());
+    openScheduler = createOpenScheduler(transportOptions);
+    scheduleMetricsExport(transportOptions);
+    warmChannelPool = createWarmChannelPool(transportOptions);
+  }
+
+  private void scheduleMetricsExport(WebChannelTransportOptions transportOptions) {
+    final MetricsExporter exporter = transportOptions.getMetricsExporter();
+    if (exporter == null) {
+      return;
+    }
+    final Runnable exportTask =
+        new Runnable() {
+          public void run() {
+            try {
+              exporter.export(metrics.snapshot());
+            } catch (RuntimeException e) {
+              logger.atWarning().withCause(e).log("Metrics exporter exception");
+            }
+          }
+        };
+    long intervalMs = transportOptions.getMetricsExportIntervalMs();
+    // The exporter may block, and so runs off the event loops.
+    eventLoops[0].scheduleWithFixedDelay(
+        new Runnable() {
+          public void run() {
+            networkExecutor.execute(exportTask);
+          }
+        },
+        intervalMs,
+        intervalMs,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Nullable
+  private OpenScheduler createOpenScheduler(WebChannelTransportOptions transportOptions) {
+    double opensPerSecond = transportOptions.getMaxOpensPerSecond();
+    if (opensPerSecond == 0) {
+      return null;
+    }
+    int burst = transportOptions.getOpenBurst();
+    if (burst == 0) {
+      burst = (int) Math.max(1, Math.ceil(opensPerSecond));
+    }
+    return new OpenScheduler(eventLoops[0], opensPerSecond, burst, transportOptions.getOpenJitterMs());
+  }
+
+  @Nullable
+  private WarmChannelPool createWarmChannelPool(WebChannelTransportOptions transportOptions) {
+    int size = transportOptions.getWarmChannelsPerUrl();
+    if (size == 0) {
+      return null;
+    }
+    long idleTimeoutMs = transportOptions.getWarmChannelIdleTimeoutMs();
+    final WarmChannelPool pool =
+        new WarmChannelPool(
+            new WarmChannelPool.ChannelFactory() {
+              public EventLoop nextEventLoop() {
+                return BasicWebChannelTransport.this.nextEventLoop();
+              }
+
+              public AsyncWebChannel create(
+                  String urlPath, WebChannelOptions options, EventLoop apiThreadExecutor) {
+                return createChannel(urlPath, options, apiThreadExecutor, false);
+              }
+            },
+            size,
+            idleTimeoutMs);
+    eventLoops[0].scheduleWithFixedDelay(
+        new Runnable() {
+          public void run() {
+            pool.closeExpiredChannels();
+          }
+        },
+        idleTimeoutMs / 2,
+        idleTimeoutMs / 2,
+        TimeUnit.MILLISECONDS);
+    return pool;
   }
 
   /**
@@ -93,7 +248,37 @@ public final class BasicWebChannelTransport extends WebChannelTransport {
    * @return Reusable transport, i.e., a factory for creating {@link AsyncWebChannel} instances.
    */
   public static BasicWebChannelTransport createTransport() {
-    return new BasicWebChannelTransport();
+    return new BasicWebChannelTransport(1, 0, new WebChannelTransportOptions.Builder().build());
+  }
+
+  /**
+   * Factory method to be used for creating instances of BasicWebChannelTransport.
+   *
+   * @param transportOptions The transport options. Unless specified, one event loop is created per
+   *     available processor, and the timers are precise.
+   * @return Reusable transport, i.e., a factory for creating {@link AsyncWebChannel} instances.
+   */
+  public static BasicWebChannelTransport createTransport(
+      WebChannelTransportOptions transportOptions) {
+    Preconditions.checkNotNull(transportOptions);
+    int eventLoopCount = transportOptions.getEventLoopCount();
+    Preconditions.checkArgument(eventLoopCount >= 0, "Negative event loop count");
+    if (eventLoopCount == 0) {
+      eventLoopCount = Runtime.getRuntime().availableProcessors();
+    }
+    long timerTickMs = transportOptions.getTimerTickMs();
+    Preconditions.checkArgument(timerTickMs >= 0, "Negative timer tick");
+    Preconditions.checkArgument(
+        transportOptions.getMetricsExportIntervalMs() > 0, "Non-positive metrics export interval");
+    Preconditions.checkArgument(
+        transportOptions.getMaxOpensPerSecond() >= 0, "Negative open rate");
+    Preconditions.checkArgument(transportOptions.getOpenBurst() >= 0, "Negative open burst");
+    Preconditions.checkArgument(transportOptions.getOpenJitterMs() >= 0, "Negative open jitter");
+    Preconditions.checkArgument(
+        transportOptions.getWarmChannelsPerUrl() >= 0, "Negative warm channel count");
+    Preconditions.checkArgument(
+        transportOptions.getWarmChannelIdleTimeoutMs() > 1, "Warm channel idle timeout too short");
+    return new BasicWebChannelTransport(eventLoopCount, timerTickMs, transportOptions);
   }
 
   @Override
@@ -107,9 +292,79 @@ public final class BasicWebChannelTransport extends WebChannelTransport {
     Preconditions.checkNotNull(urlPath);
     Preconditions.checkNotNull(options);
     Preconditions.checkState(!shutdown.get(), "Cannot create channels from a shut down Transport");
-    BasicWebChannelSupport support = new BasicWebChannelSupport(apiThreadExecutor, networkExecutor);
-    WebChannelTransport transport = WebChannelTransports.createTransport(support);
-    return new ThreadSafeWebChannelWrapper(transport.createAsyncWebChannel(urlPath, options));
+    if (warmChannelPool != null) {
+      AsyncWebChannel channel = warmChannelPool.take(urlPath, options);
+      if (channel != null) {
+        return channel;
+      }
+    }
+    return createChannel(urlPath, options, nextEventLoop(), true);
+  }
+
+  /**
+   * @param dispatchCallbacks Whether to call the channel handler from the callback executor of the
+   *     options, if any, rather than from the API thread.
+   */
+  private AsyncWebChannel createChannel(
+      String urlPath,
+      WebChannelOptions options,
+      EventLoop apiThreadExecutor,
+      boolean dispatchCallbacks) {
+    // All the code of a channel must run on the same thread.
+    BasicWebChannelSupport support =
+        new BasicWebChannelSupport(
+            apiThreadExecutor,
+            networkExecutor,
+            metrics,
+            jfrEvents,
+            openScheduler,
+            options.getOpenPriority());
+    WebChannelTransport transport = WebChannelTransports.createTransport(support, context);
+    return new ThreadSafeWebChannelWrapper(
+        transport.createAsyncWebChannel(urlPath, options),
+        apiThreadExecutor,
+        options,
+        dispatchCallbacks);
+  }
+
+  private EventLoop nextEventLoop() {
+    int index = nextEventLoop.getAndIncrement() & Integer.MAX_VALUE;
+    return eventLoops[index % eventLoops.length];
+  }
+
+  /**
+   * @return A snapshot of the metrics of each event loop, e.g. the queue depth and busy time.
+   */
+  public List<EventLoopStats> getEventLoopStats() {
+    List<EventLoopStats> result = new ArrayList<>(eventLoops.length);
+    for (EventLoop eventLoop : eventLoops) {
+      result.add(eventLoop.getStats());
+    }
+    return result;
+  }
+
+  /**
+   * @return A snapshot of the stats of all the channels created by the transport.
+   */
+  public MetricsSnapshot getMetrics() {
+    return metrics.snapshot();
+  }
+
+  /**
+   * @return A snapshot of the retry budget and of the circuit breaker of each server, shared by the
+   *     channels of the transport.
+   */
+  public TransportContextStats getTransportContextStats() {
+    return context.getStats();
+  }
+
+  /**
+   * @return A snapshot of the metrics of the queue of the channel opens, or null if the rate of the
+   *     opens is not limited. The max queue delay is reset by each snapshot.
+   */
+  @Nullable
+  public OpenSchedulerStats getOpenSchedulerStats() {
+    return openScheduler == null ? null : openScheduler.getStats();
   }
 
   /**
@@ -124,64 +379,240 @@ public final class BasicWebChannelTransport extends WebChannelTransport {
    */
   public void shutdown() {
     Preconditions.checkState(!shutdown.getAndSet(true), "Duplicit Transport shutdown");
-    apiThreadExecutor.shutdown();
+    if (warmChannelPool != null) {
+      warmChannelPool.shutdown();
+    }
+    for (EventLoop eventLoop : eventLoops) {
+      eventLoop.shutdown();
+    }
     networkExecutor.shutdown();
   }
 
   /**
    * Wraps an AsyncWebChannel implementation of WebChannelBaseTransport so that it runs all the code
    * in the given {@code apiThreadExecutor}.
+   *
+   * <p>Messages are appended to a lock-free inbox by any number of producer threads, which is then
+   * drained in bulk by a single task in {@code apiThreadExecutor}.
    */
   @ThreadSafe
   private class ThreadSafeWebChannelWrapper implements AsyncWebChannel {
     private final AsyncWebChannel delegate;
+    private final ScheduledExecutorService apiThreadExecutor;
+    private final WebChannelOptions options;
+    private final boolean dispatchCallbacks;
     private final Object lock = new Object();
 
-    @GuardedBy("lock")
-    private boolean openned = false;
+    /** Messages to send, i.e. the messages, {@link AsyncSend} or {@link BulkSend} objects. */
+    private final ConcurrentLinkedQueue<Object> inbox = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    private final Runnable drainTask =
+        new Runnable() {
+          public void run() {
+            drainInbox();
+          }
+        };
+
+    /** Written under the lock, read by the lock-free send path. */
+    private volatile boolean openned = false;
 
-    @GuardedBy("lock")
-    private boolean closed = false;
+    /** Written under the lock, read by the lock-free send path. */
+    private volatile boolean closed = false;
 
-    private ThreadSafeWebChannelWrapper(AsyncWebChannel delegate) {
+    /** Whether the delegate has been closed. Confined to {@code apiThreadExecutor}. */
+    private boolean delegateClosed = false;
+
+    /** Whether the delegate has been opened. Confined to {@code apiThreadExecutor}. */
+    private boolean delegateOpened = false;
+
+    /** The open() queued by the open scheduler, if any. Guarded by the lock. */
+    @Nullable private OpenScheduler.PendingOpen queuedOpen = null;
+
+    private ThreadSafeWebChannelWrapper(
+        AsyncWebChannel delegate,
+        ScheduledExecutorService apiThreadExecutor,
+        WebChannelOptions options,
+        boolean dispatchCallbacks) {
       Preconditions.checkNotNull(delegate);
       this.delegate = delegate;
+      this.apiThreadExecutor = apiThreadExecutor;
+      this.options = options;
+      this.dispatchCallbacks = dispatchCallbacks;
     }
 
     @Override
     public void open() {
+      final Runnable openTask =
+          new Runnable() {
+            public void run() {
+              if (delegateClosed) {
+                return;
+              }
+              delegateOpened = true;
+              delegate.open();
+            }
+          };
       synchronized (lock) {
         Preconditions.checkState(!openned, "Channel open() called twice");
         openned = true;
-        apiThreadExecutor.execute(new Runnable() {
-          public void run() {
-            delegate.open();
-          }
-        });
+        if (openScheduler == null) {
+          apiThreadExecutor.execute(openTask);
+          return;
+        }
+      }
+      OpenScheduler.PendingOpen pending =
+          openScheduler.submit(
+              new Runnable() {
+                public void run() {
+                  apiThreadExecutor.execute(openTask);
+                }
+              },
+              options.getOpenPriority());
+      synchronized (lock) {
+        queuedOpen = pending;
+        if (closed) {
+          openScheduler.cancel(pending);
+        }
       }
     }
 
     @Override
     public <T> void send(@Nonnull final T message) throws IllegalArgumentException {
+      checkMessage(message);
+      Preconditions.checkState(openned && !closed, "Channel send() called before open()");
+      inbox.offer(message);
+      scheduleDrain();
+    }
+
+    @Override
+    public void sendAll(@Nonnull Collection<?> messages) throws IllegalArgumentException {
+      Preconditions.checkNotNull(messages);
+      Preconditions.checkState(openned && !closed, "Channel sendAll() called before open()");
+      if (messages.isEmpty()) {
+        return;
+      }
+      List<Object> copy = new ArrayList<Object>(messages);
+      for (Object message : copy) {
+        checkMessage(message);
+      }
+      inbox.offer(new BulkSend(copy));
+      scheduleDrain();
+    }
+
+    @Override
+    public <T> CompletableFuture<Void> sendAsync(@Nonnull final T message)
+        throws IllegalArgumentException {
+      checkMessage(message);
+      Preconditions.checkState(openned && !closed, "Channel sendAsync() called before open()");
+      CompletableFuture<Void> result = new CompletableFuture<>();
+      inbox.offer(new AsyncSend(message, result));
+      scheduleDrain();
+      return result;
+    }
+
+    /**
+     * Checks the message on the calling thread, so that an unsupported one is rejected before
+     * anything is queued, as the delegate only supports serialized JSON strings.
+     */
+    private void checkMessage(Object message) throws IllegalArgumentException {
       Preconditions.checkNotNull(message);
-      synchronized (lock) {
-        Preconditions.checkState(openned && !closed, "Channel send() called before open()");
-        apiThreadExecutor.execute(new Runnable() {
-          public void run() {
-            delegate.send(message);
-          }
-        });
+      if (!(message instanceof String)) {
+        throw new IllegalArgumentException("Serialized JSON string only. " + message.getClass());
+      }
+    }
+
+    private void scheduleDrain() {
+      if (!drainScheduled.get() && drainScheduled.compareAndSet(false, true)) {
+        apiThreadExecutor.execute(drainTask);
+      }
+    }
+
+    /**
+     * Sends all the messages from the inbox to the delegate.
+     *
+     * <p>To be called from {@code apiThreadExecutor}.
+     */
+    private void drainInbox() {
+      // Reset before polling so that no message offered from now on is missed.
+      drainScheduled.set(false);
+
+      List<Object> batch = new ArrayList<>();
+      Object item;
+      while ((item = inbox.poll()) != null) {
+        if (item instanceof AsyncSend) {
+          flush(batch);
+          sendAsync((AsyncSend) item);
+        } else if (item instanceof BulkSend) {
+          batch.addAll(((BulkSend) item).messages);
+        } else {
+          batch.add(item);
+        }
+      }
+      flush(batch);
+    }
+
+    private void flush(List<Object> batch) {
+      if (batch.isEmpty()) {
+        return;
+      }
+      if (delegateClosed) {
+        logger.atWarning().log("Dropped %d messages sent after close()", batch.size());
+      } else {
+        // All the messages have been checked by send() and sendAll().
+        delegate.sendAll(batch);
+      }
+      batch.clear();
+    }
+
+    private void sendAsync(final AsyncSend send) {
+      if (delegateClosed) {
+        send.result.completeExceptionally(new UndeliveredMessageException(send.message, false));
+        return;
+      }
+      try {
+        delegate.sendAsync(send.message).whenComplete(send);
+      } catch (RuntimeException e) {
+        send.result.completeExceptionally(e);
       }
     }
 
+    @Override
+    public void pauseReceiving() {
+      apiThreadExecutor.execute(new Runnable() {
+        public void run() {
+          delegate.pauseReceiving();
+        }
+      });
+    }
+
+    @Override
+    public void resumeReceiving() {
+      apiThreadExecutor.execute(new Runnable() {
+        public void run() {
+          delegate.resumeReceiving();
+        }
+      });
+    }
+
     @Override
     public void close() {
       synchronized (lock) {
         Preconditions.checkState(openned && !closed, "Channel close() called before open()");
         closed = true;
+        if (queuedOpen != null) {
+          // Not to take the place of another open, if still queued.
+          openScheduler.cancel(queuedOpen);
+        }
         apiThreadExecutor.execute(new Runnable() {
           public void run() {
-            delegate.close();
+            // Messages sent before close() are to be sent first.
+            drainInbox();
+            delegateClosed = true;
+            if (delegateOpened) {
+              delegate.close();
+            }
           }
         });
       }
@@ -198,8 +629,47 @@ public final class BasicWebChannelTransport extends WebChannelTransport {
       Preconditions.checkNotNull(eventHandler);
       synchronized (lock) {
         Preconditions.checkState(!openned, "Channel handler modified after calling open()");
+        if (dispatchCallbacks && options.getCallbackExecutor() != null) {
+          // Keep the application code off the API thread.
+          eventHandler =
+              new SerialEventDispatcher(
+                  eventHandler,
+                  options.getCallbackExecutor(),
+                  options.getCallbackQueueCapacity(),
+                  options.getCallbackOverflowPolicy(),
+                  this);
+        }
         delegate.setChannelHandler(eventHandler);
       }
     }
   }
+
+  /** A sendAsync() call in the inbox, which relays the completion of the delegate's future. */
+  private static final class AsyncSend implements BiConsumer<Void, Throwable> {
+    private final Object message;
+    private final CompletableFuture<Void> result;
+
+    private AsyncSend(Object message, CompletableFuture<Void> result) {
+      this.message = message;
+      this.result = result;
+    }
+
+    @Override
+    public void accept(Void value, Throwable error) {
+      if (error != null) {
+        result.completeExceptionally(error);
+      } else {
+        result.complete(value);
+      }
+    }
+  }
+
+  /** A sendAll() call in the inbox. */
+  private static final class BulkSend {
+    private final List<Object> messages;
+
+    private BulkSend(List<Object> messages) {
+      this.messages = messages;
+    }
+  }
 }
@@ -0,0 +1,77 @@
+package bidiweb.webchannel.client.support.basic;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A single-threaded executor that runs all the code of the channels pinned to it, i.e. the
+ * {@code apiThreadExecutor} of these channels.
+ *
+ * <p>Keeps track of the time spent running tasks, for monitoring purposes.
+ */
+@ThreadSafe
+class EventLoop extends ScheduledThreadPoolExecutor {
+  private final int index;
+
+  /** The timer wheel of the channels, unless they use the precise timers of the executor. */
+  @Nullable private final HashedWheelTimer timer;
+
+  /** The zero-delay timers of the channels. */
+  private final MicrotaskQueue microtasks;
+
+  /** Written by the loop thread only. */
+  private volatile long busyTimeNanos = 0;
+
+  /** Confined to the loop thread. */
+  private long taskStartNanos = 0;
+
+  EventLoop(int index, ThreadFactory threadFactory, long timerTickMs) {
+    super(1, threadFactory);
+    this.index = index;
+    this.timer = timerTickMs > 0 ? new HashedWheelTimer(this, timerTickMs) : null;
+    this.microtasks = new MicrotaskQueue();
+    setRemoveOnCancelPolicy(true);
+  }
+
+  @Nullable
+  HashedWheelTimer getTimer() {
+    return timer;
+  }
+
+  MicrotaskQueue getMicrotasks() {
+    return microtasks;
+  }
+
+  @Override
+  protected void beforeExecute(Thread thread, Runnable task) {
+    super.beforeExecute(thread, task);
+    taskStartNanos = System.nanoTime();
+  }
+
+  /** Also drains the zero-delay timers queued by the task, before the next task is taken. */
+  @Override
+  protected void afterExecute(Runnable task, Throwable throwable) {
+    microtasks.drain();
+    busyTimeNanos += System.nanoTime() - taskStartNanos;
+    super.afterExecute(task, throwable);
+  }
+
+  /** Takes a snapshot of the loop's metrics. */
+  EventLoopStats getStats() {
+    if (timer == null) {
+      return new EventLoopStats(
+          index, getQueue().size(), busyTimeNanos, getCompletedTaskCount(), 0, 0, 0, 0);
+    }
+    return new EventLoopStats(
+        index,
+        getQueue().size(),
+        busyTimeNanos,
+        getCompletedTaskCount(),
+        timer.getPendingTimers(),
+        timer.getExpiredTimers(),
+        timer.getCancelledTimers(),
+        timer.getMaxTickLagMs());
+  }
+}
@@ -0,0 +1,91 @@
+package bidiweb.webchannel.client.support.basic;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A snapshot of the metrics of a single event loop of {@link BasicWebChannelTransport}.
+ */
+@Immutable
+public final class EventLoopStats {
+  private final int index;
+  private final int queueDepth;
+  private final long busyTimeNanos;
+  private final long completedTaskCount;
+  private final int pendingTimers;
+  private final long expiredTimers;
+  private final long cancelledTimers;
+  private final long maxTimerLagMs;
+
+  EventLoopStats(
+      int index,
+      int queueDepth,
+      long busyTimeNanos,
+      long completedTaskCount,
+      int pendingTimers,
+      long expiredTimers,
+      long cancelledTimers,
+      long maxTimerLagMs) {
+    this.index = index;
+    this.queueDepth = queueDepth;
+    this.busyTimeNanos = busyTimeNanos;
+    this.completedTaskCount = completedTaskCount;
+    this.pendingTimers = pendingTimers;
+    this.expiredTimers = expiredTimers;
+    this.cancelledTimers = cancelledTimers;
+    this.maxTimerLagMs = maxTimerLagMs;
+  }
+
+  /** @return The index of the loop within the transport. */
+  public int getIndex() {
+    return index;
+  }
+
+  /** @return The number of queued tasks, including the timers yet to expire. */
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  /** @return The total time the loop thread has spent running tasks. */
+  public long getBusyTimeNanos() {
+    return busyTimeNanos;
+  }
+
+  public long getCompletedTaskCount() {
+    return completedTaskCount;
+  }
+
+  /**
+   * @return The number of timers armed on the timer wheel of the loop, or 0 if the loop has no
+   *     timer wheel.
+   */
+  public int getPendingTimers() {
+    return pendingTimers;
+  }
+
+  public long getExpiredTimers() {
+    return expiredTimers;
+  }
+
+  public long getCancelledTimers() {
+    return cancelledTimers;
+  }
+
+  /** @return The max delay of a tick of the timer wheel behind its schedule. */
+  public long getMaxTimerLagMs() {
+    return maxTimerLagMs;
+  }
+
+  @Override
+  public String toString() {
+    return "EventLoopStats{"
+        + "index=" + index
+        + ", queueDepth=" + queueDepth
+        + ", busyTimeNanos=" + busyTimeNanos
+        + ", completedTaskCount=" + completedTaskCount
+        + ", pendingTimers=" + pendingTimers
+        + ", expiredTimers=" + expiredTimers
+        + ", cancelledTimers=" + cancelledTimers
+        + ", maxTimerLagMs=" + maxTimerLagMs
+        + '}';
+  }
+}
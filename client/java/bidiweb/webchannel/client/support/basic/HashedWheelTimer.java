@@ -0,0 +1,229 @@
+package bidiweb.webchannel.client.support.basic;
+
+import bidiweb.webchannel.client.support.Support.TimeoutHandler;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.flogger.GoogleLogger;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Hashed timing wheel for the timers of all the channels pinned to the same event loop.
+ *
+ * <p>Arming and cancelling a timer are O(1) list operations with no allocation beyond the timer
+ * object itself, as opposed to the O(log n) heap operations of a {@link ScheduledExecutorService}.
+ * The price is the resolution of the timers, which expire up to one tick late, and never early.
+ *
+ * <p>The wheel ticks only when there are pending timers, right after the tick boundaries. Each
+ * tick expires all the due timers in a batch, catching up with any ticks missed while the loop was
+ * busy.
+ *
+ * <p>All the methods are to be called from the single thread of the event loop. The metrics may be
+ * read from any thread.
+ */
+@NotThreadSafe
+class HashedWheelTimer {
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
+  private static final int WHEEL_SIZE = 512;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+  private final ScheduledExecutorService eventLoop;
+  private final long tickMs;
+  private final long tickNanos;
+  private final Ticker ticker;
+  private final long startNanos;
+  private final Timeout[] wheel = new Timeout[WHEEL_SIZE];
+
+  private final Runnable tickTask =
+      new Runnable() {
+        public void run() {
+          tick();
+        }
+      };
+
+  @Nullable private ScheduledFuture<?> tickFuture = null;
+
+  /** The last tick that has been processed. */
+  private long currentTick = 0;
+
+  /** Whether the due timers are being expired, during which the wheel keeps ticking. */
+  private boolean ticking = false;
+
+  // Metrics, written by the loop thread only.
+  private volatile int pendingTimers = 0;
+  private volatile long expiredTimers = 0;
+  private volatile long cancelledTimers = 0;
+  private volatile long maxTickLagMs = 0;
+
+  /** A timer armed on the wheel, which is the timer object returned by setTimeout(). */
+  static final class Timeout {
+    private final TimeoutHandler handler;
+    private final long expiryTick;
+    private Timeout prev;
+    private Timeout next;
+    private boolean pending = true;
+
+    private Timeout(TimeoutHandler handler, long expiryTick) {
+      this.handler = handler;
+      this.expiryTick = expiryTick;
+    }
+  }
+
+  HashedWheelTimer(ScheduledExecutorService eventLoop, long tickMs) {
+    this(eventLoop, tickMs, Ticker.systemTicker());
+  }
+
+  /**
+   * @param ticker The source of the time, e.g. a fake one for the tests, which then run the ticks
+   *     with {@link #tick()}.
+   */
+  HashedWheelTimer(ScheduledExecutorService eventLoop, long tickMs, Ticker ticker) {
+    Preconditions.checkArgument(tickMs > 0, "Non-positive tick: %s", tickMs);
+    this.eventLoop = eventLoop;
+    this.tickMs = tickMs;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+    this.ticker = ticker;
+    this.startNanos = ticker.read();
+  }
+
+  private long nowNanos() {
+    return ticker.read() - startNanos;
+  }
+
+  private long nowTick() {
+    return nowNanos() / tickNanos;
+  }
+
+  /**
+   * Arms a timer to expire after the given delay, rounded up to the tick resolution.
+   */
+  Timeout newTimeout(TimeoutHandler handler, long delayMs) {
+    long now = nowNanos();
+    if (tickFuture == null) {
+      // Skip the ticks of the idle period, which have no timers to expire.
+      currentTick = now / tickNanos;
+    }
+    // The first tick that starts no earlier than the deadline, which is measured from the time
+    // now rather than from the current tick, or the timer would expire up to a tick early.
+    long deadline = now + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+    long expiryTick = Math.max(currentTick + 1, (deadline + tickNanos - 1) / tickNanos);
+    Timeout timeout = new Timeout(handler, expiryTick);
+    int index = (int) (timeout.expiryTick & WHEEL_MASK);
+    timeout.next = wheel[index];
+    if (timeout.next != null) {
+      timeout.next.prev = timeout;
+    }
+    wheel[index] = timeout;
+    pendingTimers++;
+
+    if (tickFuture == null) {
+      // Right after the tick boundaries, rather than a whole tick after now.
+      tickFuture =
+          eventLoop.scheduleAtFixedRate(
+              tickTask, tickNanos - now % tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+    return timeout;
+  }
+
+  void cancel(Timeout timeout) {
+    if (!timeout.pending) {
+      return;
+    }
+    unlink(timeout);
+    cancelledTimers++;
+    stopTickingIfIdle();
+  }
+
+  private void unlink(Timeout timeout) {
+    timeout.pending = false;
+    if (timeout.prev != null) {
+      timeout.prev.next = timeout.next;
+    } else {
+      wheel[(int) (timeout.expiryTick & WHEEL_MASK)] = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.prev = null;
+    timeout.next = null;
+    pendingTimers--;
+  }
+
+  private void stopTickingIfIdle() {
+    if (pendingTimers == 0 && tickFuture != null && !ticking) {
+      tickFuture.cancel(false);
+      tickFuture = null;
+    }
+  }
+
+  /**
+   * Expires all the timers that are due, one tick after another. Run by the tick task, or
+   * directly by the tests.
+   */
+  void tick() {
+    long targetTick = nowTick();
+    long lagMs = (targetTick - currentTick - 1) * tickMs;
+    if (lagMs > maxTickLagMs) {
+      maxTickLagMs = lagMs;
+    }
+
+    ticking = true;
+    try {
+      expireUntil(targetTick);
+    } finally {
+      ticking = false;
+    }
+    currentTick = Math.max(currentTick, targetTick);
+    stopTickingIfIdle();
+  }
+
+  private void expireUntil(long targetTick) {
+    while (currentTick < targetTick && pendingTimers > 0) {
+      currentTick++;
+      Timeout timeout = wheel[(int) (currentTick & WHEEL_MASK)];
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.expiryTick <= currentTick) {
+          unlink(timeout);
+          expiredTimers++;
+          try {
+            timeout.handler.onTimeout();
+          } catch (RuntimeException e) {
+            logger.atSevere().withCause(e).log("Timeout handler exception");
+          }
+          // The handler may have cancelled the next timer
+          if (next != null && !next.pending) {
+            next = wheel[(int) (currentTick & WHEEL_MASK)];
+          }
+        }
+        timeout = next;
+      }
+    }
+  }
+
+  long getTickMs() {
+    return tickMs;
+  }
+
+  int getPendingTimers() {
+    return pendingTimers;
+  }
+
+  long getExpiredTimers() {
+    return expiredTimers;
+  }
+
+  long getCancelledTimers() {
+    return cancelledTimers;
+  }
+
+  /** @return The max delay of a tick behind its schedule, e.g. due to a busy event loop. */
+  long getMaxTickLagMs() {
+    return maxTickLagMs;
+  }
+}
@@ -0,0 +1,215 @@
+package bidiweb.webchannel.client.support.basic;
+
+import bidiweb.webchannel.client.support.Support.Tracer;
+
+import javax.annotation.concurrent.ThreadSafe;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits the protocol events of the channels as Java Flight Recorder events, so that they can be
+ * lined up with the GC and CPU samples of a recording.
+ *
+ * <p>Only installed if {@link
+ * bidiweb.webchannel.client.WebChannelTransportOptions.Builder#jfrEvents} is set. The events may
+ * still be disabled per type in the recording settings, in which case they are never allocated, as
+ * the enabled state of each event type is checked first.
+ */
+@ThreadSafe
+final class JfrTracer extends Tracer {
+  static final JfrTracer INSTANCE = new JfrTracer();
+
+  private JfrTracer() {}
+
+  @Name("bidiweb.webchannel.Request")
+  @Label("WebChannel Request")
+  @Category("WebChannel")
+  @Description("A phase of a forward or back channel HTTP request")
+  @StackTrace(false)
+  static final class RequestEvent extends Event {
+    private static final RequestEvent PROTOTYPE = new RequestEvent();
+
+    @Label("Phase")
+    String phase;
+
+    @Label("RID")
+    String rid;
+
+    @Label("Verb")
+    String verb;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Status")
+    int status;
+  }
+
+  @Name("bidiweb.webchannel.StateChange")
+  @Label("WebChannel State Change")
+  @Category("WebChannel")
+  @StackTrace(false)
+  static final class StateChangeEvent extends Event {
+    private static final StateChangeEvent PROTOTYPE = new StateChangeEvent();
+
+    @Label("From")
+    String fromState;
+
+    @Label("To")
+    String toState;
+  }
+
+  @Name("bidiweb.webchannel.Retry")
+  @Label("WebChannel Retry")
+  @Category("WebChannel")
+  @Description("A retry scheduled after a failed request")
+  @StackTrace(false)
+  static final class RetryEvent extends Event {
+    private static final RetryEvent PROTOTYPE = new RetryEvent();
+
+    @Label("Type")
+    String retryType;
+
+    @Label("Retry Count")
+    int retryCount;
+
+    @Label("Delay")
+    @Timespan(Timespan.MILLISECONDS)
+    long delay;
+  }
+
+  @Name("bidiweb.webchannel.DeadBackChannel")
+  @Label("WebChannel Dead Back Channel")
+  @Category("WebChannel")
+  @StackTrace(false)
+  static final class DeadBackChannelEvent extends Event {
+    private static final DeadBackChannelEvent PROTOTYPE = new DeadBackChannelEvent();
+  }
+
+  @Name("bidiweb.webchannel.Codec")
+  @Label("WebChannel Codec")
+  @Category("WebChannel")
+  @Description("The encoding of a POST or the decoding of a response")
+  @StackTrace(false)
+  static final class CodecEvent extends Event {
+    private static final CodecEvent PROTOTYPE = new CodecEvent();
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Messages")
+    int count;
+
+    @Label("Length")
+    @DataAmount
+    long length;
+
+    @Label("Codec Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long codecDuration;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return RequestEvent.PROTOTYPE.isEnabled()
+        || StateChangeEvent.PROTOTYPE.isEnabled()
+        || RetryEvent.PROTOTYPE.isEnabled()
+        || DeadBackChannelEvent.PROTOTYPE.isEnabled()
+        || CodecEvent.PROTOTYPE.isEnabled();
+  }
+
+  @Override
+  public void requestSent(String rid, String verb, int bytes) {
+    commitRequestEvent("send", rid, verb, bytes, 0);
+  }
+
+  @Override
+  public void requestFirstByte(String rid, String verb) {
+    commitRequestEvent("firstByte", rid, verb, 0, 0);
+  }
+
+  @Override
+  public void requestCompleted(String rid, String verb, int status, long bytes) {
+    commitRequestEvent("complete", rid, verb, bytes, status);
+  }
+
+  @Override
+  public void requestTimedOut(String rid, String verb) {
+    commitRequestEvent("timeout", rid, verb, 0, 0);
+  }
+
+  private static void commitRequestEvent(
+      String phase, String rid, String verb, long bytes, int status) {
+    if (!RequestEvent.PROTOTYPE.isEnabled()) {
+      return;
+    }
+    RequestEvent event = new RequestEvent();
+    event.phase = phase;
+    event.rid = rid;
+    event.verb = verb;
+    event.bytes = bytes;
+    event.status = status;
+    event.commit();
+  }
+
+  @Override
+  public void stateChanged(String fromState, String toState) {
+    if (!StateChangeEvent.PROTOTYPE.isEnabled()) {
+      return;
+    }
+    StateChangeEvent event = new StateChangeEvent();
+    event.fromState = fromState;
+    event.toState = toState;
+    event.commit();
+  }
+
+  @Override
+  public void retryScheduled(String retryType, int retryCount, long delayMs) {
+    if (!RetryEvent.PROTOTYPE.isEnabled()) {
+      return;
+    }
+    RetryEvent event = new RetryEvent();
+    event.retryType = retryType;
+    event.retryCount = retryCount;
+    event.delay = delayMs;
+    event.commit();
+  }
+
+  @Override
+  public void deadBackChannelDetected() {
+    if (!DeadBackChannelEvent.PROTOTYPE.isEnabled()) {
+      return;
+    }
+    new DeadBackChannelEvent().commit();
+  }
+
+  @Override
+  public void messagesEncoded(int count, int length, long durationNanos) {
+    commitCodecEvent("encode", count, length, durationNanos);
+  }
+
+  @Override
+  public void responseDecoded(int length, long durationNanos) {
+    commitCodecEvent("decode", 0, length, durationNanos);
+  }
+
+  private static void commitCodecEvent(
+      String operation, int count, long length, long durationNanos) {
+    if (!CodecEvent.PROTOTYPE.isEnabled()) {
+      return;
+    }
+    CodecEvent event = new CodecEvent();
+    event.operation = operation;
+    event.count = count;
+    event.length = length;
+    event.codecDuration = durationNanos;
+    event.commit();
+  }
+}
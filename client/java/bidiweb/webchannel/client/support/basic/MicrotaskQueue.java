@@ -0,0 +1,62 @@
+package bidiweb.webchannel.client.support.basic;
+
+import bidiweb.webchannel.client.support.Support.TimeoutHandler;
+import com.google.common.flogger.GoogleLogger;
+
+import java.util.ArrayDeque;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * FIFO of the handlers to run soon on an event loop, i.e. the zero-delay timers of the channels
+ * pinned to the loop.
+ *
+ * <p>The queue is drained by the loop itself, at the end of each of its tasks, before the loop
+ * takes its next task, so that the handlers run ahead of any timers that are due, and a burst of
+ * zero-delay timers costs no task of the loop's executor at all. The handlers queued by a running
+ * handler are run in the same drain, as the microtasks of a JS event loop.
+ *
+ * <p>All the methods are to be called from the single thread of the event loop, i.e. from its
+ * tasks, which is what has the queue drained.
+ */
+@NotThreadSafe
+class MicrotaskQueue {
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
+  private final ArrayDeque<Microtask> queue = new ArrayDeque<>();
+
+  /** A queued handler, which is the timer object returned by setImmediate(). */
+  static final class Microtask {
+    private final TimeoutHandler handler;
+    private boolean cancelled = false;
+
+    private Microtask(TimeoutHandler handler) {
+      this.handler = handler;
+    }
+  }
+
+  Microtask add(TimeoutHandler handler) {
+    Microtask microtask = new Microtask(handler);
+    queue.add(microtask);
+    return microtask;
+  }
+
+  /** Cancels the microtask, which stays queued until the next drain. */
+  void cancel(Microtask microtask) {
+    microtask.cancelled = true;
+  }
+
+  /** Runs the queued handlers, until none is left. Called by the loop after each of its tasks. */
+  void drain() {
+    Microtask microtask;
+    while ((microtask = queue.poll()) != null) {
+      if (microtask.cancelled) {
+        continue;
+      }
+      try {
+        microtask.handler.onTimeout();
+      } catch (RuntimeException e) {
+        logger.atSevere().withCause(e).log("Timeout handler exception");
+      }
+    }
+  }
+}
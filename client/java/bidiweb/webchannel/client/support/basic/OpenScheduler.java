@@ -0,0 +1,205 @@
+package bidiweb.webchannel.client.support.basic;
+
+import bidiweb.webchannel.client.WebChannelOptions.OpenPriority;
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Admits the channel opens of a transport at a limited rate, so that many channels opened at once,
+ * e.g. reopened after a server restart, don't all run their connection test and handshake in the
+ * same second.
+ *
+ * <p>The rate is enforced by a token bucket, which allows a burst of opens after a quiet period.
+ * The interactive opens are admitted before the background ones. Each admitted open may be further
+ * delayed by a random jitter, to spread the opens admitted together. The cancelled opens are
+ * skipped without taking a token.
+ */
+@ThreadSafe
+class OpenScheduler {
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final ScheduledExecutorService timer;
+  private final double opensPerSecond;
+  private final int burst;
+  private final long maxJitterMs;
+
+  private final Object lock = new Object();
+
+  @GuardedBy("lock")
+  private final ArrayDeque<PendingOpen> interactiveOpens = new ArrayDeque<>();
+
+  @GuardedBy("lock")
+  private final ArrayDeque<PendingOpen> backgroundOpens = new ArrayDeque<>();
+
+  @GuardedBy("lock")
+  private double tokens;
+
+  @GuardedBy("lock")
+  private long lastRefillNanos;
+
+  @GuardedBy("lock")
+  private boolean admissionScheduled = false;
+
+  @GuardedBy("lock")
+  private long admittedOpens = 0;
+
+  /** The cancelled opens still in the queues, which aren't counted as queued. */
+  @GuardedBy("lock")
+  private int cancelledInteractiveOpens = 0;
+
+  @GuardedBy("lock")
+  private int cancelledBackgroundOpens = 0;
+
+  /** The max queue delay since the previous snapshot of the stats. */
+  @GuardedBy("lock")
+  private long maxQueueDelayMs = 0;
+
+  private final Runnable admitTask =
+      new Runnable() {
+        public void run() {
+          synchronized (lock) {
+            admissionScheduled = false;
+          }
+          admit();
+        }
+      };
+
+  /** A queued open, to be cancelled with {@link #cancel}. */
+  static final class PendingOpen {
+    private final Runnable open;
+    private final OpenPriority priority;
+    private final long enqueueNanos = System.nanoTime();
+
+    /** Guarded by the lock of the scheduler, as is {@link #cancelled}. */
+    private boolean admitted = false;
+
+    private boolean cancelled = false;
+
+    private PendingOpen(Runnable open, OpenPriority priority) {
+      this.open = open;
+      this.priority = priority;
+    }
+  }
+
+  /**
+   * @param timer The executor to delay the opens with.
+   * @param opensPerSecond The sustained rate of admitted opens.
+   * @param burst The max number of opens admitted at once, i.e. the capacity of the bucket.
+   * @param maxJitterMs The max random delay of an admitted open, or 0.
+   */
+  OpenScheduler(
+      ScheduledExecutorService timer, double opensPerSecond, int burst, long maxJitterMs) {
+    Preconditions.checkArgument(opensPerSecond > 0, "Non-positive open rate");
+    Preconditions.checkArgument(burst > 0, "Non-positive open burst");
+    Preconditions.checkArgument(maxJitterMs >= 0, "Negative open jitter");
+    this.timer = timer;
+    this.opensPerSecond = opensPerSecond;
+    this.burst = burst;
+    this.maxJitterMs = maxJitterMs;
+    this.tokens = burst;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Queues the open, which is run once admitted.
+   *
+   * @return The queued open, to cancel it with.
+   */
+  PendingOpen submit(Runnable open, OpenPriority priority) {
+    PendingOpen pending = new PendingOpen(open, priority);
+    synchronized (lock) {
+      if (priority == OpenPriority.INTERACTIVE) {
+        interactiveOpens.add(pending);
+      } else {
+        backgroundOpens.add(pending);
+      }
+    }
+    admit();
+    return pending;
+  }
+
+  /**
+   * Cancels an open that is still queued, which is then skipped without taking a token. An open
+   * that has already been admitted may still be run.
+   */
+  void cancel(PendingOpen pending) {
+    synchronized (lock) {
+      if (pending.admitted || pending.cancelled) {
+        return;
+      }
+      pending.cancelled = true;
+      if (pending.priority == OpenPriority.INTERACTIVE) {
+        cancelledInteractiveOpens++;
+      } else {
+        cancelledBackgroundOpens++;
+      }
+    }
+  }
+
+  private void admit() {
+    List<Runnable> admitted = new ArrayList<>();
+    synchronized (lock) {
+      long now = System.nanoTime();
+      tokens = Math.min(burst, tokens + (now - lastRefillNanos) * opensPerSecond / NANOS_PER_SECOND);
+      lastRefillNanos = now;
+      while (tokens >= 1) {
+        PendingOpen pending = interactiveOpens.poll();
+        if (pending == null) {
+          pending = backgroundOpens.poll();
+        }
+        if (pending == null) {
+          break;
+        }
+        if (pending.cancelled) {
+          if (pending.priority == OpenPriority.INTERACTIVE) {
+            cancelledInteractiveOpens--;
+          } else {
+            cancelledBackgroundOpens--;
+          }
+          continue;
+        }
+        pending.admitted = true;
+        tokens--;
+        admittedOpens++;
+        maxQueueDelayMs =
+            Math.max(maxQueueDelayMs, TimeUnit.NANOSECONDS.toMillis(now - pending.enqueueNanos));
+        admitted.add(pending.open);
+      }
+      if (!admissionScheduled && (!interactiveOpens.isEmpty() || !backgroundOpens.isEmpty())) {
+        admissionScheduled = true;
+        long delayNanos = (long) Math.ceil((1 - tokens) * NANOS_PER_SECOND / opensPerSecond);
+        timer.schedule(admitTask, delayNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+    for (Runnable open : admitted) {
+      if (maxJitterMs > 0) {
+        timer.schedule(
+            open, ThreadLocalRandom.current().nextLong(maxJitterMs + 1), TimeUnit.MILLISECONDS);
+      } else {
+        open.run();
+      }
+    }
+  }
+
+  /** @return The stats, whose max queue delay is then reset. */
+  OpenSchedulerStats getStats() {
+    synchronized (lock) {
+      OpenSchedulerStats stats =
+          new OpenSchedulerStats(
+              interactiveOpens.size() - cancelledInteractiveOpens,
+              backgroundOpens.size() - cancelledBackgroundOpens,
+              admittedOpens,
+              maxQueueDelayMs);
+      maxQueueDelayMs = 0;
+      return stats;
+    }
+  }
+}
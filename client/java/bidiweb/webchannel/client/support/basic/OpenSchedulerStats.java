@@ -0,0 +1,58 @@
+package bidiweb.webchannel.client.support.basic;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A snapshot of the metrics of the admission of the channel opens of a {@link
+ * BasicWebChannelTransport}.
+ */
+@Immutable
+public final class OpenSchedulerStats {
+  private final int queuedInteractiveOpens;
+  private final int queuedBackgroundOpens;
+  private final long admittedOpens;
+  private final long maxQueueDelayMs;
+
+  OpenSchedulerStats(
+      int queuedInteractiveOpens,
+      int queuedBackgroundOpens,
+      long admittedOpens,
+      long maxQueueDelayMs) {
+    this.queuedInteractiveOpens = queuedInteractiveOpens;
+    this.queuedBackgroundOpens = queuedBackgroundOpens;
+    this.admittedOpens = admittedOpens;
+    this.maxQueueDelayMs = maxQueueDelayMs;
+  }
+
+  /** @return The number of interactive opens waiting to be admitted. */
+  public int getQueuedInteractiveOpens() {
+    return queuedInteractiveOpens;
+  }
+
+  /** @return The number of background opens waiting to be admitted. */
+  public int getQueuedBackgroundOpens() {
+    return queuedBackgroundOpens;
+  }
+
+  public long getAdmittedOpens() {
+    return admittedOpens;
+  }
+
+  /**
+   * @return The max time an open has waited to be admitted since the previous snapshot, not
+   *     including the jitter.
+   */
+  public long getMaxQueueDelayMs() {
+    return maxQueueDelayMs;
+  }
+
+  @Override
+  public String toString() {
+    return "OpenSchedulerStats{"
+        + "queuedInteractiveOpens=" + queuedInteractiveOpens
+        + ", queuedBackgroundOpens=" + queuedBackgroundOpens
+        + ", admittedOpens=" + admittedOpens
+        + ", maxQueueDelayMs=" + maxQueueDelayMs
+        + '}';
+  }
+}
@@ -0,0 +1,248 @@
+package bidiweb.webchannel.client.support.basic;
+
+import bidiweb.webchannel.client.AsyncWebChannel;
+import bidiweb.webchannel.client.AsyncWebChannel.EventHandler;
+import bidiweb.webchannel.client.ErrorStatus;
+import bidiweb.webchannel.client.WebChannelOptions.CallbackOverflowPolicy;
+import com.google.common.base.Preconditions;
+import com.google.common.flogger.GoogleLogger;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Relays the events of a single channel to the application's {@link EventHandler} on a
+ * (user-supplied) callback executor, so that a slow handler doesn't stall the API thread and
+ * thereby the timers and the network handling of all the channels sharing that thread.
+ *
+ * <p>Events are queued and delivered serially, in the order they are generated. The number of
+ * queued messages is bounded by the given capacity, beyond which the overflow policy applies.
+ * The open, close and error events are always delivered.
+ *
+ * <p>Should the callback executor reject the delivery, e.g. having been shut down, the queued
+ * events are dropped and the channel is failed, with the error and the close delivered on the
+ * rejecting thread.
+ */
+@ThreadSafe
+class SerialEventDispatcher extends EventHandler implements Runnable {
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
+  /** The max number of events to deliver before yielding the callback executor. */
+  private static final int MAX_EVENTS_PER_RUN = 64;
+
+  private final EventHandler handler;
+  private final Executor callbackExecutor;
+  private final int capacity;
+  private final int lowWatermark;
+  private final CallbackOverflowPolicy overflowPolicy;
+
+  /** The thread-safe channel, for pausing, resuming or failing it. */
+  private final AsyncWebChannel channel;
+
+  private final ConcurrentLinkedQueue<Runnable> events = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queuedMessages = new AtomicInteger();
+  private final AtomicBoolean running = new AtomicBoolean(false);
+  private final AtomicLong droppedMessages = new AtomicLong();
+
+  /** Whether the callback executor has rejected the delivery, after which nothing is queued. */
+  private final AtomicBoolean rejected = new AtomicBoolean(false);
+
+  /** Serializes the pause and resume calls with the state they are decided on. */
+  private final Object pauseLock = new Object();
+
+  @GuardedBy("pauseLock")
+  private boolean paused = false;
+
+  /** Confined to the API thread. */
+  private boolean failed = false;
+
+  SerialEventDispatcher(
+      EventHandler handler,
+      Executor callbackExecutor,
+      int capacity,
+      CallbackOverflowPolicy overflowPolicy,
+      AsyncWebChannel channel) {
+    Preconditions.checkArgument(capacity > 0, "Non-positive callback queue capacity");
+    this.handler = Preconditions.checkNotNull(handler);
+    this.callbackExecutor = Preconditions.checkNotNull(callbackExecutor);
+    this.capacity = capacity;
+    this.lowWatermark = capacity / 2;
+    this.overflowPolicy = Preconditions.checkNotNull(overflowPolicy);
+    this.channel = channel;
+  }
+
+  long getDroppedMessageCount() {
+    return droppedMessages.get();
+  }
+
+  @Override
+  public void onOpen() {
+    dispatch(new Runnable() {
+      public void run() {
+        handler.onOpen();
+      }
+    });
+  }
+
+  @Override
+  public void onClose() {
+    dispatch(new Runnable() {
+      public void run() {
+        handler.onClose();
+      }
+    });
+  }
+
+  @Override
+  public void onError(final ErrorStatus error) {
+    dispatch(new Runnable() {
+      public void run() {
+        handler.onError(error);
+      }
+    });
+  }
+
+  @Override
+  public <T> void onMessage(final T message) {
+    if (failed) {
+      return;
+    }
+    if (queuedMessages.get() >= capacity) {
+      switch (overflowPolicy) {
+        case DROP:
+          droppedMessages.incrementAndGet();
+          logger.atWarning().atMostEvery(10, TimeUnit.SECONDS).log(
+              "Callback queue full, dropped %d messages so far", droppedMessages.get());
+          return;
+        case FAIL:
+          fail();
+          return;
+        case BLOCK:
+          // The message that has already been received is queued over the capacity.
+          pause();
+          break;
+      }
+    }
+    queuedMessages.incrementAndGet();
+    dispatch(new Runnable() {
+      public void run() {
+        try {
+          handler.onMessage(message);
+        } finally {
+          onMessageDelivered();
+        }
+      }
+    });
+  }
+
+  private void fail() {
+    failed = true;
+    logger.atWarning().log("Callback queue full, failing the channel");
+    onError(
+        new ErrorStatus(ErrorStatus.StatusEnum.NETWORK_ERROR, "Callback queue overflow"));
+    try {
+      channel.close();
+    } catch (IllegalStateException e) {
+      // already closed by the application
+    }
+  }
+
+  private void pause() {
+    synchronized (pauseLock) {
+      // Unless the queue has just been drained, see onMessageDelivered().
+      if (!paused && queuedMessages.get() > lowWatermark) {
+        paused = true;
+        channel.pauseReceiving();
+      }
+    }
+  }
+
+  private void onMessageDelivered() {
+    if (queuedMessages.decrementAndGet() != lowWatermark) {
+      return;
+    }
+    synchronized (pauseLock) {
+      if (paused) {
+        paused = false;
+        channel.resumeReceiving();
+      }
+    }
+  }
+
+  private void dispatch(Runnable event) {
+    if (rejected.get()) {
+      return;
+    }
+    events.offer(event);
+    if (!running.get() && running.compareAndSet(false, true)) {
+      execute();
+    }
+  }
+
+  private void execute() {
+    try {
+      callbackExecutor.execute(this);
+    } catch (RejectedExecutionException e) {
+      running.set(false);
+      reject(e);
+    }
+  }
+
+  /**
+   * Fails the channel once the callback executor has rejected the delivery. The error and the
+   * close can't be queued any more, and are delivered on the current thread instead.
+   */
+  private void reject(RejectedExecutionException e) {
+    if (!rejected.compareAndSet(false, true)) {
+      return;
+    }
+    logger.atSevere().withCause(e).log(
+        "Callback executor rejected the events, failing the channel");
+    events.clear();
+    queuedMessages.set(0);
+    try {
+      handler.onError(
+          new ErrorStatus(
+              ErrorStatus.StatusEnum.NETWORK_ERROR, "Callback executor rejected the events"));
+    } catch (RuntimeException ex) {
+      logger.atSevere().withCause(ex).log("Event handler exception");
+    }
+    try {
+      channel.close();
+    } catch (IllegalStateException ex) {
+      // already closed
+    }
+    try {
+      handler.onClose();
+    } catch (RuntimeException ex) {
+      logger.atSevere().withCause(ex).log("Event handler exception");
+    }
+  }
+
+  /** Delivers the queued events. To be run by the callback executor. */
+  @Override
+  public void run() {
+    for (int i = 0; i < MAX_EVENTS_PER_RUN; i++) {
+      Runnable event = events.poll();
+      if (event == null) {
+        break;
+      }
+      try {
+        event.run();
+      } catch (RuntimeException e) {
+        logger.atSevere().withCause(e).log("Event handler exception");
+      }
+    }
+    running.set(false);
+    if (!events.isEmpty() && running.compareAndSet(false, true)) {
+      execute();
+    }
+  }
+}
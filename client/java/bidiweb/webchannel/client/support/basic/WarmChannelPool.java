@@ -0,0 +1,491 @@
+package bidiweb.webchannel.client.support.basic;
+
+import bidiweb.webchannel.client.AsyncWebChannel;
+import bidiweb.webchannel.client.AsyncWebChannel.EventHandler;
+import bidiweb.webchannel.client.ErrorStatus;
+import bidiweb.webchannel.client.WebChannelOptions;
+import bidiweb.webchannel.client.WebChannelRuntimeProperties;
+import com.google.common.base.Preconditions;
+import com.google.common.flogger.GoogleLogger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps a number of channels opened ahead of time for each URL and options that channels have been
+ * requested for, so that a channel can be handed out without waiting for the channel test, the
+ * handshake and the first back channel request.
+ *
+ * <p>The pool is only filled on demand, i.e. after a channel has been taken for the same URL and
+ * options. The channels that stay idle for too long after having been opened, that fail while
+ * idle, or that receive too many messages while idle are closed. They are replaced as long as
+ * channels keep being taken for the same URL and options within the idle timeout, except for the
+ * channels that fail to open, which are only replaced by the next take() so that an unreachable
+ * server isn't retried in a loop.
+ */
+@ThreadSafe
+class WarmChannelPool {
+  private static final GoogleLogger logger = GoogleLogger.forEnclosingClass();
+
+  /** The max number of events buffered by an idle channel, beyond which it's closed. */
+  private static final int MAX_BUFFERED_EVENTS = 256;
+
+  /** Creates the channels of the pool. */
+  interface ChannelFactory {
+    /** @return The API thread for the next channel to be created. */
+    EventLoop nextEventLoop();
+
+    /**
+     * Creates a channel which runs on the given API thread, and which calls its handler from that
+     * thread, even if the options have a callback executor.
+     */
+    AsyncWebChannel create(String urlPath, WebChannelOptions options, EventLoop apiThreadExecutor);
+  }
+
+  private final ChannelFactory factory;
+  private final int size;
+  private final long idleTimeoutMs;
+
+  private final Object lock = new Object();
+
+  @GuardedBy("lock")
+  private final Map<PoolKey, ArrayDeque<WarmChannel>> idleChannels = new HashMap<>();
+
+  /** When a channel has last been taken for each key of {@link #idleChannels}. */
+  @GuardedBy("lock")
+  private final Map<PoolKey, Long> lastTakeTimes = new HashMap<>();
+
+  @GuardedBy("lock")
+  private boolean shutdown = false;
+
+  WarmChannelPool(ChannelFactory factory, int size, long idleTimeoutMs) {
+    Preconditions.checkArgument(size > 0, "Non-positive pool size");
+    Preconditions.checkArgument(idleTimeoutMs > 0, "Non-positive idle timeout");
+    this.factory = factory;
+    this.size = size;
+    this.idleTimeoutMs = idleTimeoutMs;
+  }
+
+  private static final class PoolKey {
+    private final String urlPath;
+    private final WebChannelOptions options;
+
+    private PoolKey(String urlPath, WebChannelOptions options) {
+      this.urlPath = urlPath;
+      this.options = options;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof PoolKey)) {
+        return false;
+      }
+      PoolKey that = (PoolKey) other;
+      return urlPath.equals(that.urlPath) && options.equals(that.options);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(urlPath, options);
+    }
+  }
+
+  /**
+   * Takes a channel opened ahead of time for the given URL and options, if any, and opens another
+   * one in its place.
+   *
+   * @return The channel, which is yet to be given a handler and opened like a new channel, or null.
+   */
+  @Nullable
+  AsyncWebChannel take(String urlPath, WebChannelOptions options) {
+    PoolKey key = new PoolKey(urlPath, options);
+    WarmChannel result = null;
+    int missing;
+    synchronized (lock) {
+      if (shutdown) {
+        return null;
+      }
+      ArrayDeque<WarmChannel> channels = idleChannels.get(key);
+      if (channels == null) {
+        channels = new ArrayDeque<>();
+        idleChannels.put(key, channels);
+      }
+      lastTakeTimes.put(key, System.currentTimeMillis());
+      while (result == null && !channels.isEmpty()) {
+        WarmChannel channel = channels.poll();
+        if (channel.relay.take()) {
+          result = channel;
+        }
+      }
+      missing = size - channels.size();
+    }
+    for (int i = 0; i < missing; i++) {
+      open(key);
+    }
+    return result == null ? null : new PooledWebChannel(result);
+  }
+
+  private void open(PoolKey key) {
+    EventLoop apiThreadExecutor = factory.nextEventLoop();
+    WarmChannel channel =
+        new WarmChannel(
+            key, factory.create(key.urlPath, key.options, apiThreadExecutor), apiThreadExecutor);
+    synchronized (lock) {
+      if (shutdown) {
+        return;
+      }
+      idleChannels.get(key).add(channel);
+    }
+    channel.delegate.setChannelHandler(channel.relay);
+    channel.delegate.open();
+  }
+
+  /**
+   * Closes the channels that have been idle for longer than the idle timeout, and replaces them
+   * unless no channel has been taken for the same URL and options within the idle timeout.
+   */
+  void closeExpiredChannels() {
+    long now = System.currentTimeMillis();
+    List<WarmChannel> expired = new ArrayList<>();
+    List<PoolKey> replaced = new ArrayList<>();
+    synchronized (lock) {
+      for (Map.Entry<PoolKey, ArrayDeque<WarmChannel>> entry : idleChannels.entrySet()) {
+        boolean inUse = isInUse(entry.getKey(), now);
+        for (Iterator<WarmChannel> it = entry.getValue().iterator(); it.hasNext(); ) {
+          WarmChannel channel = it.next();
+          long idleSince = channel.idleSince;
+          if (idleSince != 0 && now - idleSince >= idleTimeoutMs) {
+            it.remove();
+            expired.add(channel);
+            if (inUse) {
+              replaced.add(entry.getKey());
+            }
+          }
+        }
+      }
+    }
+    close(expired);
+    for (PoolKey key : replaced) {
+      open(key);
+    }
+  }
+
+  @GuardedBy("lock")
+  private boolean isInUse(PoolKey key, long now) {
+    return now - lastTakeTimes.get(key) < idleTimeoutMs;
+  }
+
+  void shutdown() {
+    List<WarmChannel> channels = new ArrayList<>();
+    synchronized (lock) {
+      shutdown = true;
+      for (ArrayDeque<WarmChannel> idle : idleChannels.values()) {
+        channels.addAll(idle);
+      }
+      idleChannels.clear();
+    }
+    close(channels);
+  }
+
+  private void close(List<WarmChannel> channels) {
+    for (WarmChannel channel : channels) {
+      if (channel.relay.take()) {
+        channel.delegate.close();
+      }
+    }
+  }
+
+  /** Removes a channel that has failed or overflowed while idle, and replaces it if opened. */
+  private void onIdleChannelFailed(WarmChannel channel, String reason) {
+    boolean replace;
+    synchronized (lock) {
+      ArrayDeque<WarmChannel> channels = idleChannels.get(channel.key);
+      if (channels == null || !channels.remove(channel)) {
+        return;
+      }
+      replace = channel.idleSince != 0 && isInUse(channel.key, System.currentTimeMillis());
+    }
+    logger.atInfo().log("Pre-opened channel to %s %s while idle", channel.key.urlPath, reason);
+    if (replace) {
+      open(channel.key);
+    }
+  }
+
+  private final class WarmChannel {
+    private final PoolKey key;
+    private final AsyncWebChannel delegate;
+    private final EventLoop apiThreadExecutor;
+    private final RelayHandler relay;
+
+    /** When the channel has been opened, or 0 while it's still opening. */
+    private volatile long idleSince = 0;
+
+    private WarmChannel(PoolKey key, AsyncWebChannel delegate, EventLoop apiThreadExecutor) {
+      this.key = key;
+      this.delegate = delegate;
+      this.apiThreadExecutor = apiThreadExecutor;
+      this.relay = new RelayHandler(this);
+    }
+  }
+
+  /**
+   * Buffers the events of an idle channel, until the channel is handed out and given the
+   * application's handler.
+   *
+   * <p>The events are received on the API thread of the channel, which is also where the buffered
+   * events are handed to the application's handler, so that they are delivered in order and in the
+   * same way as the subsequent ones, i.e. through the callback executor if any.
+   */
+  @ThreadSafe
+  private final class RelayHandler extends EventHandler {
+    private final WarmChannel channel;
+    private final Object relayLock = new Object();
+
+    /** Confined to the API thread. */
+    private final List<Event> bufferedEvents = new ArrayList<>();
+
+    /** Confined to the API thread. */
+    @Nullable private EventHandler handler = null;
+
+    /** Whether the idle channel has overflowed, and its events are dropped. Confined. */
+    private boolean discarded = false;
+
+    @GuardedBy("relayLock")
+    private boolean taken = false;
+
+    @GuardedBy("relayLock")
+    private boolean failed = false;
+
+    private RelayHandler(WarmChannel channel) {
+      this.channel = channel;
+    }
+
+    /** @return true if the channel has been taken out of the pool, unless it had failed. */
+    private boolean take() {
+      synchronized (relayLock) {
+        if (taken || failed) {
+          return false;
+        }
+        taken = true;
+        return true;
+      }
+    }
+
+    /**
+     * Delivers the buffered events and any subsequent ones to the given handler, from the API
+     * thread.
+     */
+    private void attach(final EventHandler handler) {
+      channel.apiThreadExecutor.execute(
+          new Runnable() {
+            public void run() {
+              for (Event event : bufferedEvents) {
+                deliver(handler, event);
+              }
+              bufferedEvents.clear();
+              RelayHandler.this.handler = handler;
+            }
+          });
+    }
+
+    private void deliver(EventHandler handler, Event event) {
+      try {
+        event.deliverTo(handler);
+      } catch (RuntimeException e) {
+        logger.atSevere().withCause(e).log("Event handler exception");
+      }
+    }
+
+    private void relay(Event event) {
+      if (handler != null) {
+        deliver(handler, event);
+        return;
+      }
+      if (discarded) {
+        return;
+      }
+      if (bufferedEvents.size() >= MAX_BUFFERED_EVENTS && !event.isFinal() && discard()) {
+        return;
+      }
+      bufferedEvents.add(event);
+      boolean failedWhileIdle = false;
+      if (event.isFinal()) {
+        synchronized (relayLock) {
+          if (!taken) {
+            failed = true;
+            failedWhileIdle = true;
+          }
+        }
+      }
+      if (failedWhileIdle) {
+        onIdleChannelFailed(channel, "failed");
+      }
+    }
+
+    /**
+     * Closes the channel and drops its events, unless it has been taken, in which case the events
+     * are about to be delivered to the application's handler.
+     *
+     * @return true if the channel has been discarded.
+     */
+    private boolean discard() {
+      synchronized (relayLock) {
+        if (taken || failed) {
+          return false;
+        }
+        failed = true;
+      }
+      discarded = true;
+      bufferedEvents.clear();
+      onIdleChannelFailed(channel, "overflowed " + MAX_BUFFERED_EVENTS + " buffered events");
+      channel.delegate.close();
+      return true;
+    }
+
+    @Override
+    public void onOpen() {
+      channel.idleSince = System.currentTimeMillis();
+      relay(new Event() {
+        void deliverTo(EventHandler handler) {
+          handler.onOpen();
+        }
+      });
+    }
+
+    @Override
+    public void onClose() {
+      relay(new Event() {
+        void deliverTo(EventHandler handler) {
+          handler.onClose();
+        }
+
+        boolean isFinal() {
+          return true;
+        }
+      });
+    }
+
+    @Override
+    public void onError(final ErrorStatus error) {
+      relay(new Event() {
+        void deliverTo(EventHandler handler) {
+          handler.onError(error);
+        }
+
+        boolean isFinal() {
+          return true;
+        }
+      });
+    }
+
+    @Override
+    public <T> void onMessage(final T message) {
+      relay(new Event() {
+        void deliverTo(EventHandler handler) {
+          handler.onMessage(message);
+        }
+      });
+    }
+  }
+
+  private abstract static class Event {
+    abstract void deliverTo(EventHandler handler);
+
+    boolean isFinal() {
+      return false;
+    }
+  }
+
+  /**
+   * A channel taken out of the pool, which enforces the same call sequencing as a new channel.
+   */
+  @ThreadSafe
+  private static final class PooledWebChannel implements AsyncWebChannel {
+    private final WarmChannel channel;
+    private final AtomicBoolean openned = new AtomicBoolean(false);
+    private volatile EventHandler eventHandler = new EventHandler() {};
+
+    private PooledWebChannel(WarmChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public void setChannelHandler(EventHandler eventHandler) {
+      Preconditions.checkNotNull(eventHandler);
+      Preconditions.checkState(!openned.get(), "Channel handler set after open()");
+      WebChannelOptions options = channel.key.options;
+      if (options.getCallbackExecutor() != null) {
+        // Keep the application code off the API thread, as for a new channel.
+        eventHandler =
+            new SerialEventDispatcher(
+                eventHandler,
+                options.getCallbackExecutor(),
+                options.getCallbackQueueCapacity(),
+                options.getCallbackOverflowPolicy(),
+                this);
+      }
+      this.eventHandler = eventHandler;
+    }
+
+    @Override
+    public void open() {
+      Preconditions.checkState(openned.compareAndSet(false, true), "Channel open() called twice");
+      channel.relay.attach(eventHandler);
+    }
+
+    @Override
+    public void close() {
+      Preconditions.checkState(openned.get(), "Channel close() called before open()");
+      channel.delegate.close();
+    }
+
+    @Override
+    public <T> void send(T message) throws IllegalArgumentException {
+      Preconditions.checkState(openned.get(), "Channel send() called before open()");
+      channel.delegate.send(message);
+    }
+
+    @Override
+    public void sendAll(Collection<?> messages) throws IllegalArgumentException {
+      Preconditions.checkState(openned.get(), "Channel sendAll() called before open()");
+      channel.delegate.sendAll(messages);
+    }
+
+    @Override
+    public <T> CompletableFuture<Void> sendAsync(T message) throws IllegalArgumentException {
+      Preconditions.checkState(openned.get(), "Channel sendAsync() called before open()");
+      return channel.delegate.sendAsync(message);
+    }
+
+    @Override
+    public void pauseReceiving() {
+      channel.delegate.pauseReceiving();
+    }
+
+    @Override
+    public void resumeReceiving() {
+      channel.delegate.resumeReceiving();
+    }
+
+    /**
+     * Not implemented, as for the other channels of {@link BasicWebChannelTransport}.
+     *
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public WebChannelRuntimeProperties getRuntimeProperties() {
+      throw new UnsupportedOperationException("Not implemented for BasicWebChannelTransport.");
+    }
+  }
+}
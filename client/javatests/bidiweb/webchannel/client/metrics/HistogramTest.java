@@ -0,0 +1,126 @@
+package bidiweb.webchannel.client.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests of the {@link Histogram} and its snapshots.
+ */
+@RunWith(JUnit4.class)
+public class HistogramTest {
+
+  @Test
+  public void bucketIndex_smallValuesExact() {
+    for (int value = 0; value < Histogram.SUB_BUCKET_COUNT; value++) {
+      assertEquals(value, Histogram.bucketIndex(value));
+      assertEquals(value, Histogram.bucketUpperBound(value));
+    }
+  }
+
+  @Test
+  public void bucketUpperBound_coversTheValueWithinTheRelativeError() {
+    for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+      int index = Histogram.bucketIndex(value);
+      long upperBound = Histogram.bucketUpperBound(index);
+      assertTrue(value + " over " + upperBound, upperBound >= value);
+      assertTrue(
+          value + " under " + upperBound,
+          (double) (upperBound - value) / value < 1.0 / Histogram.SUB_BUCKET_COUNT);
+      // The next value past the bound is in the next bucket.
+      assertEquals(index + 1, Histogram.bucketIndex(upperBound + 1));
+    }
+  }
+
+  @Test
+  public void bucketIndex_maxValueInRange() {
+    assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.bucketIndex(Long.MAX_VALUE));
+    assertEquals(Long.MAX_VALUE, Histogram.bucketUpperBound(Histogram.BUCKET_COUNT - 1));
+  }
+
+  @Test
+  public void snapshot_countSumMeanMax() {
+    Histogram histogram = new Histogram();
+    histogram.record(10);
+    histogram.record(30);
+    histogram.record(-5);
+
+    HistogramSnapshot snapshot = histogram.snapshot();
+
+    assertEquals(3, snapshot.getCount());
+    assertEquals(40, snapshot.getSum());
+    assertEquals(40.0 / 3, snapshot.getMean(), 1e-9);
+    assertEquals(30, snapshot.getMax());
+    // The negative value is recorded as 0.
+    assertEquals(0, snapshot.getValueAtPercentile(0));
+  }
+
+  @Test
+  public void getValueAtPercentile_withinTheBucketPrecision() {
+    Histogram histogram = new Histogram();
+    for (int value = 1; value <= 1000; value++) {
+      histogram.record(value);
+    }
+
+    HistogramSnapshot snapshot = histogram.snapshot();
+
+    assertWithinPrecision(500, snapshot.getValueAtPercentile(50));
+    assertWithinPrecision(990, snapshot.getValueAtPercentile(99));
+    assertEquals(1000, snapshot.getValueAtPercentile(100));
+    assertEquals(1, snapshot.getValueAtPercentile(0));
+  }
+
+  @Test
+  public void getValueAtPercentile_empty() {
+    HistogramSnapshot snapshot = new Histogram().snapshot();
+
+    assertEquals(0, snapshot.getCount());
+    assertEquals(0, snapshot.getValueAtPercentile(50));
+    assertEquals(0, snapshot.getMean(), 0);
+  }
+
+  @Test
+  public void record_concurrently_noValueLost() throws Exception {
+    final Histogram histogram = new Histogram();
+    final int threads = 4;
+    final int valuesPerThread = 100000;
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] recorders = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      final int offset = i;
+      recorders[i] =
+          new Thread(
+              new Runnable() {
+                public void run() {
+                  try {
+                    start.await();
+                  } catch (InterruptedException e) {
+                    return;
+                  }
+                  for (int value = 0; value < valuesPerThread; value++) {
+                    histogram.record(value + offset);
+                  }
+                }
+              });
+      recorders[i].start();
+    }
+    start.countDown();
+    for (Thread recorder : recorders) {
+      recorder.join();
+    }
+
+    HistogramSnapshot snapshot = histogram.snapshot();
+    assertEquals(threads * valuesPerThread, snapshot.getCount());
+    assertEquals(valuesPerThread - 1 + threads - 1, snapshot.getMax());
+  }
+
+  private static void assertWithinPrecision(long expected, long actual) {
+    assertTrue(
+        actual + " instead of " + expected,
+        Math.abs(actual - expected) <= expected / Histogram.SUB_BUCKET_COUNT);
+  }
+}
@@ -0,0 +1,57 @@
+package bidiweb.webchannel.client.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import bidiweb.webchannel.client.support.Support.Measurement;
+import bidiweb.webchannel.client.support.Support.RequestStat;
+import bidiweb.webchannel.client.support.Support.ServerReachability;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests of the counters and histograms of {@link WebChannelMetrics}.
+ */
+@RunWith(JUnit4.class)
+public class WebChannelMetricsTest {
+
+  @Test
+  public void snapshot_countsEveryEvent() {
+    WebChannelMetrics metrics = new WebChannelMetrics();
+    metrics.recordStatEvent(RequestStat.CONNECT_ATTEMPT);
+    metrics.recordStatEvent(RequestStat.CONNECT_ATTEMPT);
+    metrics.recordStatEvent(RequestStat.ERROR_NETWORK);
+    metrics.recordServerReachabilityEvent(ServerReachability.REQUEST_FAILED);
+
+    MetricsSnapshot snapshot = metrics.snapshot();
+
+    assertEquals(Long.valueOf(2), snapshot.getRequestStats().get(RequestStat.CONNECT_ATTEMPT));
+    assertEquals(Long.valueOf(1), snapshot.getRequestStats().get(RequestStat.ERROR_NETWORK));
+    assertEquals(Long.valueOf(0), snapshot.getRequestStats().get(RequestStat.ERROR_OTHER));
+    assertEquals(
+        Long.valueOf(1),
+        snapshot.getServerReachabilityEvents().get(ServerReachability.REQUEST_FAILED));
+    assertEquals(
+        Long.valueOf(0),
+        snapshot.getServerReachabilityEvents().get(ServerReachability.REQUEST_MADE));
+  }
+
+  @Test
+  public void snapshot_histogramPerMeasurement() {
+    WebChannelMetrics metrics = new WebChannelMetrics();
+    metrics.recordMeasurement(Measurement.FORWARD_CHANNEL_RTT_MS, 20);
+    metrics.recordMeasurement(Measurement.FORWARD_CHANNEL_RTT_MS, 40);
+    metrics.recordMeasurement(Measurement.BACK_CHANNEL_LIFETIME_MS, 1000);
+
+    MetricsSnapshot snapshot = metrics.snapshot();
+
+    HistogramSnapshot rtt = snapshot.getMeasurements().get(Measurement.FORWARD_CHANNEL_RTT_MS);
+    assertEquals(2, rtt.getCount());
+    assertEquals(40, rtt.getMax());
+    HistogramSnapshot lifetime =
+        snapshot.getMeasurements().get(Measurement.BACK_CHANNEL_LIFETIME_MS);
+    assertEquals(1, lifetime.getCount());
+    assertEquals(Measurement.values().length, snapshot.getMeasurements().size());
+  }
+}
@@ -0,0 +1,410 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import bidiweb.webchannel.client.support.Support;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Checks that with the debug logging off, sending a request and decoding its response chunks
+ * doesn't build any of the debug messages, by measuring the bytes allocated by the thread.
+ */
+@RunWith(JUnit4.class)
+public class ChannelRequestAllocationTest {
+  private static final int CHUNK_SIZE = 4096;
+  private static final int CHUNKS_PER_REQUEST = 4;
+  private static final int WARMUP_ITERATIONS = 20000;
+  private static final int ITERATIONS = 2000;
+  private static final int SMALL_POST_SIZE = 16;
+  private static final int LARGE_POST_SIZE = 16 * 1024;
+
+  /** The bytes per request that may differ between two runs of the same code, e.g. on a GC. */
+  private static final int ALLOCATION_SLACK_PER_REQUEST = 64;
+
+  @Test
+  public void debugLoggingOff_noMessagesBuilt() {
+    String chunk = chunk(CHUNK_SIZE);
+    FakeSupport off = new FakeSupport(false);
+    FakeSupport on = new FakeSupport(true);
+
+    run(off, null, chunk, ITERATIONS);
+    run(on, null, chunk, ITERATIONS);
+
+    assertEquals(0, off.debugger.messageCount);
+    assertTrue(on.debugger.messageCount > 0);
+  }
+
+  /**
+   * The POST data isn't copied anywhere but into the debug messages. So with the logging off, the
+   * bytes allocated per request must not grow with its size, beyond the fixed baseline of the
+   * request itself, measured with a small POST.
+   */
+  @Test
+  public void debugLoggingOff_allocatesNothingBeyondBaseline() {
+    com.sun.management.ThreadMXBean threadMXBean = getThreadMXBean();
+    String chunk = chunk(CHUNK_SIZE);
+    String smallPost = postData(SMALL_POST_SIZE);
+    String largePost = postData(LARGE_POST_SIZE);
+
+    FakeSupport off = new FakeSupport(false);
+    run(off, smallPost, chunk, WARMUP_ITERATIONS);
+    run(off, largePost, chunk, WARMUP_ITERATIONS);
+
+    long baseline = measure(threadMXBean, off, smallPost, chunk);
+    long allocated = measure(threadMXBean, off, largePost, chunk);
+
+    assertTrue(
+        "Allocated " + allocated + " bytes with large POSTs, " + baseline + " with small ones",
+        allocated <= baseline + (long) ITERATIONS * ALLOCATION_SLACK_PER_REQUEST);
+
+    // Whereas with the logging on, the POST data is copied into the messages.
+    FakeSupport on = new FakeSupport(true);
+    run(on, largePost, chunk, WARMUP_ITERATIONS);
+    long allocatedOn = measure(threadMXBean, on, largePost, chunk);
+    assertTrue(allocatedOn >= allocated + (long) ITERATIONS * LARGE_POST_SIZE);
+  }
+
+  private static com.sun.management.ThreadMXBean getThreadMXBean() {
+    assumeTrue(
+        ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threadMXBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+    threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    return threadMXBean;
+  }
+
+  private static long measure(
+      com.sun.management.ThreadMXBean threadMXBean,
+      FakeSupport support,
+      String postData,
+      String chunk) {
+    long threadId = Thread.currentThread().getId();
+    long start = threadMXBean.getThreadAllocatedBytes(threadId);
+    run(support, postData, chunk, ITERATIONS);
+    return threadMXBean.getThreadAllocatedBytes(threadId) - start;
+  }
+
+  /**
+   * Sends POSTs of the given data, or GETs if null, i.e. sendHttp(), and feeds each of them its
+   * response chunks.
+   */
+  private static void run(FakeSupport support, String postData, String chunk, int iterations) {
+    FakeChannel channel = new FakeChannel(support);
+    Support.Uri uri = support.newUriBuilder("http://localhost/channel?SID=sid").getUri();
+    for (int i = 0; i < iterations; i++) {
+      ChannelRequest request =
+          ChannelRequest.createChannelRequest(support, channel, "sid", "rpc", i);
+      if (postData != null) {
+        request.httpPost(uri, postData, true);
+      } else {
+        request.httpGet(uri, true, true);
+      }
+      for (int c = 0; c < CHUNKS_PER_REQUEST; c++) {
+        channel.httpRequest.respond(chunk);
+      }
+      request.cancel();
+    }
+  }
+
+  private static String postData(int size) {
+    StringBuilder postData = new StringBuilder("count=1&ofs=0&req0_x=");
+    while (postData.length() < size) {
+      postData.append('x');
+    }
+    return postData.toString();
+  }
+
+  private static String chunk(int size) {
+    StringBuilder json = new StringBuilder("[[1,\"");
+    while (json.length() < size - 3) {
+      json.append('x');
+    }
+    json.append("\"]]");
+    return json.length() + "\n" + json;
+  }
+
+  private static final class FakeDebugger extends Support.Debugger {
+    private final boolean debugLoggable;
+    private int messageCount;
+    private volatile String lastMessage; // so that the messages escape
+
+    FakeDebugger(boolean debugLoggable) {
+      this.debugLoggable = debugLoggable;
+    }
+
+    @Override
+    public boolean isLoggable(Level level) {
+      return level != Level.DEBUG || debugLoggable;
+    }
+
+    @Override
+    public void info(String text) {
+      messageCount++;
+      lastMessage = text;
+    }
+
+    @Override
+    public void warning(String text) {
+      info(text);
+    }
+
+    @Override
+    public void dumpException(Exception ex, String msg) {
+      info(msg);
+    }
+
+    @Override
+    public void severe(String text) {
+      info(text);
+    }
+
+    @Override
+    public void assertCondition(boolean condition, String text) {}
+  }
+
+  private static final class FakeSupport extends Support {
+    private static final Object TIMER = new Object();
+
+    private final FakeDebugger debugger;
+
+    FakeSupport(boolean debugLoggable) {
+      this.debugger = new FakeDebugger(debugLoggable);
+    }
+
+    @Override
+    public Object setTimeout(TimeoutHandler handler, long timeout) {
+      return TIMER;
+    }
+
+    @Override
+    public void clearTimeout(Object timer) {}
+
+    @Override
+    public UriBuilder newUriBuilder(Uri uri) {
+      return new FakeUriBuilder(uri.toString());
+    }
+
+    @Override
+    public UriBuilder newUriBuilder(String uri) {
+      return new FakeUriBuilder(uri);
+    }
+
+    @Override
+    public Debugger getDebugger() {
+      return debugger;
+    }
+
+    @Override
+    public HttpRequest newHttpRequest() {
+      return new FakeHttpRequest();
+    }
+
+    @Override
+    public UrlEncoder getUrlEncoder() {
+      return new UrlEncoder() {
+        @Override
+        public String encode(String data) {
+          return data;
+        }
+      };
+    }
+
+    @Override
+    public JsonDecoder getJsonDecoder() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Base64Encoder getBase64Encoder() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Base64Decoder getBase64Decoder() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static final class FakeUriBuilder extends Support.UriBuilder {
+    private String uri;
+
+    FakeUriBuilder(String uri) {
+      this.uri = uri;
+    }
+
+    @Override
+    public Support.UriBuilder addQueryParameter(String name, String value) {
+      uri += (uri.indexOf('?') >= 0 ? "&" : "?") + name + "=" + value;
+      return this;
+    }
+
+    @Override
+    public String getAuthority() {
+      return "localhost";
+    }
+
+    @Override
+    public Support.Uri getUri() {
+      final String result = uri;
+      return new Support.Uri() {
+        @Override
+        public String toString() {
+          return result;
+        }
+      };
+    }
+
+    @Override
+    public Support.UriBuilder clone() {
+      return new FakeUriBuilder(uri);
+    }
+
+    @Override
+    public String toString() {
+      return uri;
+    }
+  }
+
+  /** A request which is answered by the test, on the calling thread. */
+  private static final class FakeHttpRequest extends Support.HttpRequest {
+    private final StringBuilder pendingText = new StringBuilder();
+    private Support.RequestReadyState readyState = Support.RequestReadyState.UNINITIALIZED;
+
+    void respond(String text) {
+      pendingText.append(text);
+      readyState = Support.RequestReadyState.INTERACTIVE;
+      getReadyStateChangeHandler().onReadyStateChangeEvent(this);
+    }
+
+    @Override
+    public void drainResponseText(StringBuilder buffer) {
+      if (buffer != null) {
+        buffer.append(pendingText);
+      }
+      pendingText.setLength(0);
+    }
+
+    @Override
+    public String getResponseHeader(String name) {
+      return null;
+    }
+
+    @Override
+    public Support.RequestReadyState getReadyState() {
+      return readyState;
+    }
+
+    @Override
+    public Support.RequestErrorCode getLastErrorCode() {
+      return Support.RequestErrorCode.NO_ERROR;
+    }
+
+    @Override
+    public int getStatus() {
+      return 200;
+    }
+
+    @Override
+    public void send(
+        Support.UriBuilder uri, String verb, String postData, Map<String, String> headers) {
+      readyState = Support.RequestReadyState.LOADING;
+    }
+
+    @Override
+    public void abort() {
+      readyState = Support.RequestReadyState.COMPLETE;
+    }
+  }
+
+  private static final class FakeChannel implements Channel {
+    private final Support support;
+    private FakeHttpRequest httpRequest;
+
+    FakeChannel(Support support) {
+      this.support = support;
+    }
+
+    @Override
+    public Support.HttpRequest createHttpRequest() {
+      httpRequest = (FakeHttpRequest) support.newHttpRequest();
+      return httpRequest;
+    }
+
+    @Override
+    public void onRequestComplete(ChannelRequest request) {}
+
+    @Override
+    public boolean isClosed() {
+      return false;
+    }
+
+    @Override
+    public void onRequestData(ChannelRequest request, String responseText) {}
+
+    @Override
+    public boolean isActive() {
+      return true;
+    }
+
+    @Override
+    public Support.UriBuilder getForwardChannelUri(String path) {
+      return support.newUriBuilder(path);
+    }
+
+    @Override
+    public Support.UriBuilder getBackChannelUri(String path) {
+      return support.newUriBuilder(path);
+    }
+
+    @Override
+    public Support.UriBuilder createDataUri(String path, Integer overidePort) {
+      return support.newUriBuilder(path);
+    }
+
+    @Override
+    public void testConnectionFinished(BaseTestChannel testChannel, boolean useChunked) {}
+
+    @Override
+    public void testConnectionFailure(
+        BaseTestChannel testChannel, ChannelRequest.ErrorEnum errorCode) {}
+
+    @Override
+    public ConnectionState getConnectionState() {
+      return new ConnectionState();
+    }
+
+    @Override
+    public void setHttpSessionIdParam(String httpSessionIdParam) {}
+
+    @Override
+    public String getHttpSessionIdParam() {
+      return null;
+    }
+
+    @Override
+    public void setHttpSessionId(String httpSessionId) {}
+
+    @Override
+    public String getHttpSessionId() {
+      return null;
+    }
+
+    @Override
+    public boolean getBackgroundChannelTest() {
+      return false;
+    }
+
+    @Override
+    public Object getWireCodec() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import bidiweb.webchannel.client.AsyncWebChannel;
+import bidiweb.webchannel.client.WebChannelOptions;
+import bidiweb.webchannel.client.WebChannelTransportOptions;
+import bidiweb.webchannel.client.protocol_v8.StripedBackChannelTest.Recorder;
+import bidiweb.webchannel.client.support.basic.BasicWebChannelTransport;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests of the automatic resumption of a failed session with OSID and OAID, against a local
+ * {@link StandInServer}.
+ */
+@RunWith(JUnit4.class)
+public class ChannelResumeTest {
+  private static final long TIMEOUT_MS = 10000;
+
+  private StandInServer server;
+  private BasicWebChannelTransport transport;
+  private AsyncWebChannel channel;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new StandInServer(1);
+    transport =
+        BasicWebChannelTransport.createTransport(
+            new WebChannelTransportOptions.Builder().eventLoopCount(1).build());
+  }
+
+  @After
+  public void tearDown() {
+    if (channel != null) {
+      channel.close();
+    }
+    transport.shutdown();
+    server.close();
+  }
+
+  @Test
+  public void resume_afterGap_arraysDeliveredOnceInOrder() throws Exception {
+    Recorder recorder = open();
+    server.skipArray(1);
+
+    server.push(10);
+    server.awaitSent(10, TIMEOUT_MS);
+    // The arrays after the missing one are held back, not delivered.
+    assertNull(recorder.messages.poll(200, TimeUnit.MILLISECONDS));
+
+    server.expireSession();
+
+    assertEquals(
+        StripedBackChannelTest.expectedMessages(1, 10), recorder.takeMessages(10));
+    assertEquals(1, server.getResumeCount());
+    assertNull(recorder.messages.poll(200, TimeUnit.MILLISECONDS));
+    assertNull(recorder.error);
+  }
+
+  @Test
+  public void resume_afterDeliveredArrays_noneDeliveredAgain() throws Exception {
+    Recorder recorder = open();
+
+    server.push(5);
+    assertEquals(StripedBackChannelTest.expectedMessages(1, 5), recorder.takeMessages(5));
+    server.expireSession();
+    server.push(5);
+
+    assertEquals(StripedBackChannelTest.expectedMessages(6, 10), recorder.takeMessages(5));
+    assertEquals(1, server.getResumeCount());
+    assertNull(recorder.messages.poll(200, TimeUnit.MILLISECONDS));
+  }
+
+  private Recorder open() throws InterruptedException {
+    channel =
+        transport.createAsyncWebChannel(
+            server.getUrl(),
+            new WebChannelOptions.Builder()
+                .backgroundChannelTest(true)
+                .autoReconnectMaxAttempts(3)
+                .build());
+    Recorder recorder = new Recorder();
+    channel.setChannelHandler(recorder);
+    channel.open();
+    assertTrue(recorder.opened.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    return recorder;
+  }
+}
@@ -0,0 +1,72 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import bidiweb.webchannel.client.WebChannelTransportOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests of the network test verdicts shared by the channels of a {@link TransportContext}.
+ */
+@RunWith(JUnit4.class)
+public class NetworkVerdictTest {
+  private static final String URI = "http://localhost/generate_204";
+
+  private final TransportContext context =
+      TransportContext.create(
+          new WebChannelTransportOptions.Builder().networkTestCacheTtlMs(60000).build());
+
+  private final List<String> verdicts = new ArrayList<>();
+
+  @Test
+  public void waitingChannels_notifiedOnceWhenTheVerdictIsPut() {
+    assertTrue(context.startNetworkTest(URI));
+    assertFalse(context.startNetworkTest(URI));
+    assertTrue(context.addNetworkVerdictListener(URI, record("first")));
+    assertTrue(context.addNetworkVerdictListener(URI, record("second")));
+
+    context.putNetworkVerdict(URI, true);
+    context.putNetworkVerdict(URI, false);
+
+    assertEquals(Arrays.asList("first: true", "second: true"), verdicts);
+  }
+
+  @Test
+  public void removedListener_notNotified() {
+    assertTrue(context.startNetworkTest(URI));
+    TransportContext.NetworkVerdictListener listener = record("removed");
+    assertTrue(context.addNetworkVerdictListener(URI, listener));
+    assertTrue(context.addNetworkVerdictListener(URI, record("kept")));
+
+    context.removeNetworkVerdictListener(URI, listener);
+    context.putNetworkVerdict(URI, false);
+
+    assertEquals(Arrays.asList("kept: false"), verdicts);
+  }
+
+  @Test
+  public void verdictAlreadyCached_listenerNotAdded() {
+    assertTrue(context.startNetworkTest(URI));
+    context.putNetworkVerdict(URI, true);
+
+    assertFalse(context.addNetworkVerdictListener(URI, record("late")));
+    assertEquals(Boolean.TRUE, context.getNetworkVerdict(URI));
+    assertEquals(Arrays.asList(), verdicts);
+  }
+
+  private TransportContext.NetworkVerdictListener record(final String channel) {
+    return new TransportContext.NetworkVerdictListener() {
+      public void onNetworkVerdict(boolean networkUp) {
+        verdicts.add(channel + ": " + networkUp);
+      }
+    };
+  }
+}
@@ -0,0 +1,88 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests of the {@link RttEstimator}.
+ */
+@RunWith(JUnit4.class)
+public class RttEstimatorTest {
+
+  @Test
+  public void noSample_maxEstimate() {
+    RttEstimator estimator = new RttEstimator(100, 3000);
+
+    assertFalse(estimator.hasSample());
+    assertEquals(3000, estimator.getEstimate());
+  }
+
+  @Test
+  public void firstSample_varianceHalfTheRtt() {
+    RttEstimator estimator = new RttEstimator(10, 3000);
+
+    estimator.addSample(100);
+
+    assertTrue(estimator.hasSample());
+    assertEquals(100, estimator.getSmoothedRtt());
+    assertEquals(50, estimator.getRttVariance());
+    assertEquals(100 + 4 * 50, estimator.getEstimate());
+  }
+
+  @Test
+  public void nextSamples_smoothedPerRfc6298() {
+    RttEstimator estimator = new RttEstimator(10, 3000);
+
+    estimator.addSample(100);
+    estimator.addSample(200);
+
+    // RTTVAR = 3/4 * 50 + 1/4 * |100 - 200|, SRTT = 7/8 * 100 + 1/8 * 200
+    assertEquals(113, estimator.getSmoothedRtt()); // 112.5
+    assertEquals(63, estimator.getRttVariance()); // 62.5
+    assertEquals(363, estimator.getEstimate()); // 112.5 + 4 * 62.5
+  }
+
+  @Test
+  public void steadyRtt_varianceDecays() {
+    RttEstimator estimator = new RttEstimator(10, 3000);
+
+    for (int i = 0; i < 100; i++) {
+      estimator.addSample(100);
+    }
+
+    assertEquals(100, estimator.getSmoothedRtt());
+    assertEquals(0, estimator.getRttVariance());
+    assertEquals(100, estimator.getEstimate());
+  }
+
+  @Test
+  public void estimate_clampedToTheBounds() {
+    RttEstimator low = new RttEstimator(500, 3000);
+    low.addSample(1);
+    assertEquals(500, low.getEstimate());
+
+    RttEstimator high = new RttEstimator(10, 3000);
+    high.addSample(10000);
+    assertEquals(3000, high.getEstimate());
+  }
+
+  @Test
+  public void negativeSample_ignored() {
+    RttEstimator estimator = new RttEstimator(10, 3000);
+
+    estimator.addSample(-1);
+
+    assertFalse(estimator.hasSample());
+    assertEquals(3000, estimator.getEstimate());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void minOverMax_rejected() {
+    new RttEstimator(3000, 100);
+  }
+}
@@ -0,0 +1,385 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import bidiweb.webchannel.client.WebChannelConstants;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A local HTTP stand-in for a WebChannel server, which speaks the subset of the v8 protocol that
+ * the client uses once the connection test is skipped: the initial POST, the forward channel POSTs
+ * and the (striped) back channel GETs of a single session.
+ *
+ * <p>The arrays pushed by the test are sent on the back channel, the array with id N on the stripe
+ * N % k, each GET being answered with the pending arrays of its stripe and then completed. The
+ * responses of a stripe can be delayed, e.g. to have the arrays received out of order, and cut
+ * short, to fail the GETs of a stripe. Once the session is expired, the requests of the session
+ * fail with an unknown SID, and a new session opened with the OSID and OAID of the old one resumes
+ * its arrays after OAID.
+ */
+final class StandInServer implements Closeable {
+  private static final String SID = "standin";
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final int maxStripes;
+
+  private final Object lock = new Object();
+
+  /** The payloads of the arrays pushed so far, the array id N being at N - 1. */
+  @GuardedBy("lock")
+  private final List<String> arrays = new ArrayList<>();
+
+  @GuardedBy("lock")
+  private int stripes = 1;
+
+  /** The last array id which has been fully sent on each stripe. */
+  @GuardedBy("lock")
+  private long[] lastSentArrayIds = new long[1];
+
+  @GuardedBy("lock")
+  private final Map<Integer, Long> responseDelaysMs = new HashMap<>();
+
+  @GuardedBy("lock")
+  private final Map<Integer, Integer> pendingFailures = new HashMap<>();
+
+  @GuardedBy("lock")
+  private final Map<Integer, Integer> getCounts = new HashMap<>();
+
+  @GuardedBy("lock")
+  private int maxArraysPerResponse = Integer.MAX_VALUE;
+
+  /** The ids of the arrays that are not sent until the session is resumed. */
+  @GuardedBy("lock")
+  private final Set<Long> skippedArrayIds = new HashSet<>();
+
+  @GuardedBy("lock")
+  private boolean expired;
+
+  @GuardedBy("lock")
+  private int resumeCount;
+
+  @GuardedBy("lock")
+  private boolean closed;
+
+  /**
+   * @param maxStripes The number of back channel stripes granted at most, 1 if the server doesn't
+   *     support striped back channels.
+   */
+  StandInServer(int maxStripes) throws IOException {
+    this.maxStripes = maxStripes;
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    this.executor = Executors.newCachedThreadPool();
+    this.server.setExecutor(executor);
+    this.server.createContext(
+        "/channel",
+        new HttpHandler() {
+          @Override
+          public void handle(HttpExchange exchange) throws IOException {
+            try {
+              StandInServer.this.handle(exchange);
+            } finally {
+              exchange.close();
+            }
+          }
+        });
+    this.server.start();
+  }
+
+  String getUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/channel";
+  }
+
+  /** Pushes the given number of arrays to the client, the payload of array N being "mN". */
+  void push(int count) {
+    synchronized (lock) {
+      for (int i = 0; i < count; i++) {
+        arrays.add("m" + (arrays.size() + 1));
+      }
+      lock.notifyAll();
+    }
+  }
+
+  /** Delays the responses to the GETs of the given stripe. */
+  void setResponseDelayMs(int stripe, long delayMs) {
+    synchronized (lock) {
+      responseDelaysMs.put(stripe, delayMs);
+    }
+  }
+
+  /** Cuts short the responses to the next GETs of the given stripe. */
+  void failNextGets(int stripe, int count) {
+    synchronized (lock) {
+      pendingFailures.put(stripe, count);
+    }
+  }
+
+  /** Leaves out the given array from the responses, until the session is resumed. */
+  void skipArray(long arrayId) {
+    synchronized (lock) {
+      skippedArrayIds.add(arrayId);
+    }
+  }
+
+  /** Fails the pending and next requests of the session with an unknown SID. */
+  void expireSession() {
+    synchronized (lock) {
+      expired = true;
+      lock.notifyAll();
+    }
+  }
+
+  /** Blocks until the arrays up to the given id have been sent, skipped ones aside. */
+  void awaitSent(long arrayId, long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    synchronized (lock) {
+      while (getLastSentArrayId() < arrayId) {
+        long remainingMs = deadline - System.currentTimeMillis();
+        if (remainingMs <= 0) {
+          throw new IllegalStateException("Array " + arrayId + " not sent");
+        }
+        lock.wait(remainingMs);
+      }
+    }
+  }
+
+  /** @return The number of sessions resumed with OSID and OAID. */
+  int getResumeCount() {
+    synchronized (lock) {
+      return resumeCount;
+    }
+  }
+
+  void setMaxArraysPerResponse(int maxArraysPerResponse) {
+    synchronized (lock) {
+      this.maxArraysPerResponse = maxArraysPerResponse;
+    }
+  }
+
+  /** @return The number of GETs received on the given stripe. */
+  int getGetCount(int stripe) {
+    synchronized (lock) {
+      Integer count = getCounts.get(stripe);
+      return count != null ? count : 0;
+    }
+  }
+
+  /** @return The number of stripes granted to the session, 1 if none has been granted. */
+  int getStripes() {
+    synchronized (lock) {
+      return stripes;
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (lock) {
+      closed = true;
+      lock.notifyAll();
+    }
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+    drain(exchange.getRequestBody());
+    if ("terminate".equals(params.get("TYPE"))) {
+      respond(exchange, "");
+    } else if (params.get("SID") != null && isExpired()) {
+      respondUnknownSid(exchange);
+    } else if ("GET".equals(exchange.getRequestMethod())) {
+      handleBackChannel(exchange, params);
+    } else if (params.get("SID") == null) {
+      handleOpen(exchange, params);
+    } else {
+      handleForwardChannel(exchange);
+    }
+  }
+
+  private void handleOpen(HttpExchange exchange, Map<String, String> params) throws IOException {
+    long firstArrayId = 0;
+    if (SID.equals(params.get("OSID"))) {
+      // Resumes the arrays after OAID, the "c" array taking the id OAID.
+      firstArrayId = Long.parseLong(params.get("OAID"));
+      synchronized (lock) {
+        expired = false;
+        skippedArrayIds.clear();
+        resumeCount++;
+      }
+    }
+    String requested = params.get("BCS");
+    if (requested != null && maxStripes > 1) {
+      synchronized (lock) {
+        stripes = Math.min(maxStripes, Integer.parseInt(requested));
+      }
+      exchange
+          .getResponseHeaders()
+          .set(WebChannelConstants.X_BACK_CHANNEL_STRIPES, Integer.toString(getStripes()));
+    }
+    synchronized (lock) {
+      lastSentArrayIds = new long[stripes];
+      Arrays.fill(lastSentArrayIds, firstArrayId);
+    }
+    respond(exchange, chunk("[[" + firstArrayId + ",[\"c\",\"" + SID + "\",null,8]]]"));
+  }
+
+  private void handleForwardChannel(HttpExchange exchange) throws IOException {
+    int lastArrayId;
+    synchronized (lock) {
+      lastArrayId = arrays.size();
+    }
+    respond(exchange, chunk("[1," + lastArrayId + ",0]"));
+  }
+
+  private void handleBackChannel(HttpExchange exchange, Map<String, String> params)
+      throws IOException {
+    int stripe = params.containsKey("STRIPE") ? Integer.parseInt(params.get("STRIPE")) : 0;
+    long ackedArrayId = Long.parseLong(params.get("AID"));
+    long delayMs;
+    boolean fail;
+    StringBuilder response = new StringBuilder();
+    long lastSentArrayId;
+    synchronized (lock) {
+      Integer count = getCounts.get(stripe);
+      getCounts.put(stripe, count != null ? count + 1 : 1);
+      Integer failures = pendingFailures.get(stripe);
+      fail = failures != null && failures > 0;
+      if (fail) {
+        pendingFailures.put(stripe, failures - 1);
+      }
+      Long delay = responseDelaysMs.get(stripe);
+      delayMs = delay != null ? delay : 0;
+
+      // Arrays above AID are resent, unless they have been sent on this stripe already.
+      long fromArrayId = Math.max(ackedArrayId, lastSentArrayIds[stripe]);
+      lastSentArrayId = fromArrayId;
+      while (!closed && !expired && !fail && lastSentArrayId == fromArrayId) {
+        int sent = 0;
+        for (long arrayId = fromArrayId + 1;
+            arrayId <= arrays.size() && sent < maxArraysPerResponse;
+            arrayId++) {
+          if (arrayId % stripes == stripe) {
+            if (!skippedArrayIds.contains(arrayId)) {
+              response.append(
+                  chunk("[[" + arrayId + ",\"" + arrays.get((int) arrayId - 1) + "\"]]"));
+            }
+            lastSentArrayId = arrayId;
+            sent++;
+          }
+        }
+        if (lastSentArrayId == fromArrayId) {
+          try {
+            lock.wait();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      }
+    }
+
+    if (delayMs > 0) {
+      try {
+        Thread.sleep(delayMs);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    if (fail) {
+      // A chunk that never completes, which the client fails as bad data.
+      respond(exchange, "10\n[[");
+      return;
+    }
+    if (isExpired()) {
+      respondUnknownSid(exchange);
+      return;
+    }
+    respond(exchange, response.toString());
+    synchronized (lock) {
+      if (lastSentArrayId > lastSentArrayIds[stripe]) {
+        lastSentArrayIds[stripe] = lastSentArrayId;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  @GuardedBy("lock")
+  private long getLastSentArrayId() {
+    long lastSentArrayId = Long.MAX_VALUE;
+    for (long arrayId : lastSentArrayIds) {
+      lastSentArrayId = Math.min(lastSentArrayId, arrayId);
+    }
+    return lastSentArrayId;
+  }
+
+  private boolean isExpired() {
+    synchronized (lock) {
+      return expired;
+    }
+  }
+
+  private static String chunk(String json) {
+    return json.length() + "\n" + json;
+  }
+
+  private static void respondUnknownSid(HttpExchange exchange) throws IOException {
+    respond(exchange, 400, "<html>Unknown SID</html>");
+  }
+
+  private static void respond(HttpExchange exchange, String body) throws IOException {
+    respond(exchange, 200, body);
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+    if (bytes.length > 0) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    }
+  }
+
+  private static void drain(InputStream in) throws IOException {
+    byte[] buffer = new byte[4096];
+    while (in.read(buffer) >= 0) {}
+  }
+
+  private static Map<String, String> parseQuery(String query) throws IOException {
+    Map<String, String> params = new HashMap<>();
+    if (query == null) {
+      return params;
+    }
+    for (String param : query.split("&")) {
+      int eq = param.indexOf('=');
+      if (eq > 0) {
+        params.put(
+            URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+            URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+      }
+    }
+    return params;
+  }
+}
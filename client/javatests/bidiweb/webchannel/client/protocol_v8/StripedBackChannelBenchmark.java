@@ -0,0 +1,94 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import bidiweb.webchannel.client.AsyncWebChannel;
+import bidiweb.webchannel.client.WebChannelOptions;
+import bidiweb.webchannel.client.WebChannelTransportOptions;
+import bidiweb.webchannel.client.support.basic.BasicWebChannelTransport;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the back channel throughput as a function of the number of stripes K, against a local
+ * {@link StandInServer} which answers each GET with a bounded number of arrays after a fixed
+ * delay, i.e. the round trip that a single back channel pays for every response.
+ *
+ * <p>Run as a plain program: {@code StripedBackChannelBenchmark [arrays] [delayMs]}.
+ */
+public final class StripedBackChannelBenchmark {
+  private static final int[] STRIPES = {1, 2, 4, 8};
+  private static final int ARRAYS_PER_RESPONSE = 50;
+  private static final int WARMUP_ARRAYS = 1000;
+
+  private StripedBackChannelBenchmark() {}
+
+  public static void main(String[] args) throws Exception {
+    int arrays = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    long delayMs = args.length > 1 ? Long.parseLong(args[1]) : 5;
+
+    BasicWebChannelTransport transport =
+        BasicWebChannelTransport.createTransport(
+            new WebChannelTransportOptions.Builder().eventLoopCount(1).build());
+    try {
+      run(transport, 1, WARMUP_ARRAYS, delayMs);
+      System.out.printf("%8s %12s %14s%n", "K", "elapsed ms", "arrays/s");
+      for (int stripes : STRIPES) {
+        long elapsedNanos = run(transport, stripes, arrays, delayMs);
+        System.out.printf(
+            "%8d %12d %14.0f%n",
+            stripes,
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+            arrays * 1e9 / elapsedNanos);
+      }
+    } finally {
+      transport.shutdown();
+    }
+  }
+
+  /** @return The time taken to receive the given number of arrays, in nanoseconds. */
+  private static long run(
+      BasicWebChannelTransport transport, int stripes, int arrays, long delayMs)
+      throws Exception {
+    try (StandInServer server = new StandInServer(stripes)) {
+      server.setMaxArraysPerResponse(ARRAYS_PER_RESPONSE);
+      for (int stripe = 0; stripe < stripes; stripe++) {
+        server.setResponseDelayMs(stripe, delayMs);
+      }
+
+      final CountDownLatch opened = new CountDownLatch(1);
+      final CountDownLatch received = new CountDownLatch(arrays);
+      AsyncWebChannel channel =
+          transport.createAsyncWebChannel(
+              server.getUrl(),
+              new WebChannelOptions.Builder()
+                  .backgroundChannelTest(true)
+                  .backChannelStripes(stripes)
+                  .build());
+      channel.setChannelHandler(
+          new AsyncWebChannel.EventHandler() {
+            @Override
+            public void onOpen() {
+              opened.countDown();
+            }
+
+            @Override
+            public <T> void onMessage(T message) {
+              received.countDown();
+            }
+          });
+      channel.open();
+      if (!opened.await(10, TimeUnit.SECONDS)) {
+        throw new IllegalStateException("Channel not opened with K=" + stripes);
+      }
+
+      long start = System.nanoTime();
+      server.push(arrays);
+      if (!received.await(10, TimeUnit.MINUTES)) {
+        throw new IllegalStateException("Arrays not received with K=" + stripes);
+      }
+      long elapsedNanos = System.nanoTime() - start;
+      channel.close();
+      return elapsedNanos;
+    }
+  }
+}
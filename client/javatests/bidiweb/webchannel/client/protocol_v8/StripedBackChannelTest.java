@@ -0,0 +1,207 @@
+package bidiweb.webchannel.client.protocol_v8;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import bidiweb.webchannel.client.AsyncWebChannel;
+import bidiweb.webchannel.client.ErrorStatus;
+import bidiweb.webchannel.client.WebChannelOptions;
+import bidiweb.webchannel.client.WebChannelTransportOptions;
+import bidiweb.webchannel.client.support.basic.BasicWebChannelTransport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests of the striped back channels, against a local {@link StandInServer}.
+ */
+@RunWith(JUnit4.class)
+public class StripedBackChannelTest {
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private StandInServer server;
+  private BasicWebChannelTransport transport;
+  private AsyncWebChannel channel;
+
+  @Before
+  public void setUp() {
+    transport =
+        BasicWebChannelTransport.createTransport(
+            new WebChannelTransportOptions.Builder().eventLoopCount(1).build());
+  }
+
+  @After
+  public void tearDown() {
+    if (channel != null) {
+      channel.close();
+    }
+    transport.shutdown();
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void stripedDelivery_arraysDeliveredInOrder() throws Exception {
+    server = new StandInServer(4);
+    Recorder recorder = open(4);
+
+    server.push(100);
+
+    assertEquals(expectedMessages(1, 100), recorder.takeMessages(100));
+    assertEquals(4, server.getStripes());
+    for (int stripe = 0; stripe < 4; stripe++) {
+      assertTrue("No GET on stripe " + stripe, server.getGetCount(stripe) > 0);
+    }
+    assertNull(recorder.error);
+  }
+
+  @Test
+  public void stripedDelivery_fewerStripesGranted() throws Exception {
+    server = new StandInServer(2);
+    Recorder recorder = open(4);
+
+    server.push(20);
+
+    assertEquals(expectedMessages(1, 20), recorder.takeMessages(20));
+    assertEquals(2, server.getStripes());
+    assertEquals(0, server.getGetCount(2));
+  }
+
+  @Test
+  public void stripedDelivery_notSupportedByServer() throws Exception {
+    server = new StandInServer(1);
+    Recorder recorder = open(4);
+
+    server.push(20);
+
+    assertEquals(expectedMessages(1, 20), recorder.takeMessages(20));
+    assertEquals(1, server.getStripes());
+    assertEquals(0, server.getGetCount(1));
+  }
+
+  @Test
+  public void reordering_laterArraysHeldBackUntilTheMissingOnesArrive() throws Exception {
+    server = new StandInServer(2);
+    server.setResponseDelayMs(0, 300);
+    Recorder recorder = open(2);
+
+    server.push(20);
+
+    // The odd arrays of the stripe 1 are received first, and held back for the even ones.
+    assertEquals(expectedMessages(1, 20), recorder.takeMessages(20));
+    assertNull(recorder.error);
+  }
+
+  @Test
+  public void reordering_manySmallResponses() throws Exception {
+    server = new StandInServer(3);
+    server.setMaxArraysPerResponse(2);
+    server.setResponseDelayMs(1, 20);
+    Recorder recorder = open(3);
+
+    server.push(60);
+
+    assertEquals(expectedMessages(1, 60), recorder.takeMessages(60));
+  }
+
+  @Test
+  public void stripeFailure_retriedWithoutLosingArrays() throws Exception {
+    server = new StandInServer(2);
+    Recorder recorder = open(2);
+    server.failNextGets(1, WebChannelBase.BACK_CHANNEL_MAX_RETRIES);
+
+    server.push(20);
+
+    assertEquals(expectedMessages(1, 20), recorder.takeMessages(20));
+    assertTrue(server.getGetCount(1) > WebChannelBase.BACK_CHANNEL_MAX_RETRIES);
+    assertNull(recorder.error);
+  }
+
+  @Test
+  public void stripeFailure_retriesExhausted_channelFails() throws Exception {
+    server = new StandInServer(2);
+    Recorder recorder = open(2);
+    server.failNextGets(1, Integer.MAX_VALUE);
+
+    server.push(20);
+
+    assertTrue(recorder.closed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertNotNull(recorder.error);
+    assertEquals(ErrorStatus.StatusEnum.NETWORK_ERROR, recorder.error.getStatusEnum());
+    // Nothing is delivered, the first array being on the failed stripe.
+    assertTrue(recorder.messages.isEmpty());
+  }
+
+  private Recorder open(int stripes) throws InterruptedException {
+    channel =
+        transport.createAsyncWebChannel(
+            server.getUrl(),
+            new WebChannelOptions.Builder()
+                .backgroundChannelTest(true)
+                .adaptiveTimeouts(true)
+                .backChannelStripes(stripes)
+                .build());
+    Recorder recorder = new Recorder();
+    channel.setChannelHandler(recorder);
+    channel.open();
+    assertTrue(recorder.opened.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    return recorder;
+  }
+
+  static List<Object> expectedMessages(int first, int last) {
+    List<Object> messages = new ArrayList<>();
+    for (int arrayId = first; arrayId <= last; arrayId++) {
+      messages.add("m" + arrayId);
+    }
+    return messages;
+  }
+
+  static class Recorder extends AsyncWebChannel.EventHandler {
+    final CountDownLatch opened = new CountDownLatch(1);
+    final CountDownLatch closed = new CountDownLatch(1);
+    final BlockingQueue<Object> messages = new LinkedBlockingQueue<>();
+    volatile ErrorStatus error;
+
+    @Override
+    public void onOpen() {
+      opened.countDown();
+    }
+
+    @Override
+    public void onClose() {
+      closed.countDown();
+    }
+
+    @Override
+    public void onError(ErrorStatus error) {
+      this.error = error;
+    }
+
+    @Override
+    public <T> void onMessage(T message) {
+      messages.add(message);
+    }
+
+    List<Object> takeMessages(int count) throws InterruptedException {
+      List<Object> taken = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        Object message = messages.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("Missing message " + (i + 1), message);
+        taken.add(message);
+      }
+      return taken;
+    }
+  }
+}
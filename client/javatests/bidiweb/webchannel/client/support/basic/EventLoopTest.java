@@ -0,0 +1,129 @@
+package bidiweb.webchannel.client.support.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import bidiweb.webchannel.client.support.Support.TimeoutHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests of the microtasks of the {@link EventLoop}.
+ */
+@RunWith(JUnit4.class)
+public class EventLoopTest {
+  private EventLoop eventLoop;
+
+  /** Confined to the loop thread until the test has waited for the loop. */
+  private final List<String> events = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    eventLoop = new EventLoop(0, Executors.defaultThreadFactory(), 0);
+  }
+
+  @After
+  public void tearDown() {
+    eventLoop.shutdownNow();
+  }
+
+  @Test
+  public void microtasks_runBeforeDueTimers() throws Exception {
+    runOnLoop(
+        new Runnable() {
+          public void run() {
+            eventLoop.schedule(record("timer"), 0, TimeUnit.MILLISECONDS);
+            eventLoop.getMicrotasks().add(recordHandler("microtask 1"));
+            eventLoop.getMicrotasks().add(
+                new TimeoutHandler() {
+                  public void onTimeout() {
+                    events.add("microtask 2");
+                    eventLoop.getMicrotasks().add(recordHandler("microtask 3"));
+                  }
+                });
+          }
+        });
+    awaitLoop();
+
+    assertEquals(Arrays.asList("microtask 1", "microtask 2", "microtask 3", "timer"), events);
+  }
+
+  @Test
+  public void microtasks_cancelledNotRun() throws Exception {
+    runOnLoop(
+        new Runnable() {
+          public void run() {
+            MicrotaskQueue.Microtask microtask =
+                eventLoop.getMicrotasks().add(recordHandler("cancelled"));
+            eventLoop.getMicrotasks().add(recordHandler("microtask"));
+            eventLoop.getMicrotasks().cancel(microtask);
+          }
+        });
+    awaitLoop();
+
+    assertEquals(Arrays.asList("microtask"), events);
+  }
+
+  @Test
+  public void microtasks_handlerExceptionDoesNotStopTheDrain() throws Exception {
+    runOnLoop(
+        new Runnable() {
+          public void run() {
+            eventLoop.getMicrotasks().add(
+                new TimeoutHandler() {
+                  public void onTimeout() {
+                    throw new IllegalStateException("Expected");
+                  }
+                });
+            eventLoop.getMicrotasks().add(recordHandler("microtask"));
+          }
+        });
+    awaitLoop();
+
+    assertEquals(Arrays.asList("microtask"), events);
+  }
+
+  private void runOnLoop(Runnable task) {
+    eventLoop.execute(task);
+  }
+
+  /** Waits for the tasks and timers queued so far to have run. */
+  private void awaitLoop() throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(1);
+    eventLoop.schedule(
+        new Runnable() {
+          public void run() {
+            done.countDown();
+          }
+        },
+        10,
+        TimeUnit.MILLISECONDS);
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+
+  private Runnable record(final String event) {
+    return new Runnable() {
+      public void run() {
+        events.add(event);
+      }
+    };
+  }
+
+  private TimeoutHandler recordHandler(final String event) {
+    return new TimeoutHandler() {
+      public void onTimeout() {
+        events.add(event);
+      }
+    };
+  }
+}
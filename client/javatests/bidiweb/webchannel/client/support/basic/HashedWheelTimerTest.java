@@ -0,0 +1,213 @@
+package bidiweb.webchannel.client.support.basic;
+
+import static org.junit.Assert.assertEquals;
+
+import bidiweb.webchannel.client.support.Support.TimeoutHandler;
+import com.google.common.base.Ticker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests of the {@link HashedWheelTimer}, on a fake time and with the ticks run by hand.
+ */
+@RunWith(JUnit4.class)
+public class HashedWheelTimerTest {
+  private static final long TICK_MS = 10;
+
+  private final FakeTicker ticker = new FakeTicker();
+  private final List<String> events = new ArrayList<>();
+
+  private ManualExecutor executor;
+  private HashedWheelTimer timer;
+
+  @Before
+  public void setUp() {
+    executor = new ManualExecutor();
+    timer = new HashedWheelTimer(executor, TICK_MS, ticker);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void newTimeout_roundedUpToTheNextTick_neverEarly() {
+    advanceNanos(TimeUnit.MILLISECONDS.toNanos(TICK_MS) - 1);
+    timer.newTimeout(record("timer"), TICK_MS);
+
+    // The deadline is a nanosecond short of 2 ticks, and the tick 1 is too early.
+    advanceTo(TICK_MS);
+    timer.tick();
+    assertEquals(Arrays.asList(), events);
+
+    advanceTo(2 * TICK_MS - 1);
+    timer.tick();
+    assertEquals(Arrays.asList(), events);
+
+    advanceTo(2 * TICK_MS);
+    timer.tick();
+    assertEquals(Arrays.asList("timer"), events);
+    assertEquals(0, timer.getPendingTimers());
+  }
+
+  @Test
+  public void newTimeout_zeroDelay_expiresOnTheNextTick() {
+    timer.newTimeout(record("timer"), 0);
+
+    timer.tick();
+    assertEquals(Arrays.asList(), events);
+
+    advanceTo(TICK_MS);
+    timer.tick();
+    assertEquals(Arrays.asList("timer"), events);
+  }
+
+  @Test
+  public void cancel_fromTheHandler_ofTheNextTimerInTheSameSlot() {
+    timer.newTimeout(record("c"), TICK_MS);
+    final HashedWheelTimer.Timeout b = timer.newTimeout(record("b"), TICK_MS);
+    // Armed last, and therefore expired first of the slot.
+    timer.newTimeout(
+        new TimeoutHandler() {
+          public void onTimeout() {
+            events.add("a");
+            timer.cancel(b);
+          }
+        },
+        TICK_MS);
+
+    advanceTo(TICK_MS);
+    timer.tick();
+
+    assertEquals(Arrays.asList("a", "c"), events);
+    assertEquals(0, timer.getPendingTimers());
+    assertEquals(2, timer.getExpiredTimers());
+    assertEquals(1, timer.getCancelledTimers());
+  }
+
+  @Test
+  public void cancel_fromTheHandler_ofTheLastOtherTimer_keepsTicking() {
+    final HashedWheelTimer.Timeout b = timer.newTimeout(record("b"), 5 * TICK_MS);
+    timer.newTimeout(
+        new TimeoutHandler() {
+          public void onTimeout() {
+            timer.cancel(b);
+            timer.newTimeout(record("rearmed"), TICK_MS);
+          }
+        },
+        TICK_MS);
+
+    advanceTo(TICK_MS);
+    timer.tick();
+    advanceTo(2 * TICK_MS);
+    timer.tick();
+
+    assertEquals(Arrays.asList("rearmed"), events);
+    // Scheduled once, and stopped only once idle after the last tick.
+    assertEquals(1, executor.scheduledTicks);
+    assertEquals(0, timer.getPendingTimers());
+  }
+
+  @Test
+  public void wrapAround_timerOnALaterRotation_notExpiredEarly() {
+    // 600 ticks share the slot of 88 ticks, a rotation of the 512-slot wheel earlier.
+    timer.newTimeout(record("600"), 600 * TICK_MS);
+    timer.newTimeout(record("88"), 88 * TICK_MS);
+
+    for (int i = 1; i <= 599; i++) {
+      advanceTo(i * TICK_MS);
+      timer.tick();
+    }
+    assertEquals(Arrays.asList("88"), events);
+
+    advanceTo(600 * TICK_MS);
+    timer.tick();
+    assertEquals(Arrays.asList("88", "600"), events);
+  }
+
+  @Test
+  public void tick_afterALag_catchesUpInOrder() {
+    timer.newTimeout(record("20"), 20 * TICK_MS);
+    timer.newTimeout(record("1"), TICK_MS);
+    timer.newTimeout(record("700"), 700 * TICK_MS);
+    timer.newTimeout(record("5"), 5 * TICK_MS);
+
+    // Missed all the ticks, past a whole rotation of the wheel.
+    advanceTo(800 * TICK_MS);
+    timer.tick();
+
+    assertEquals(Arrays.asList("1", "5", "20", "700"), events);
+    assertEquals(799 * TICK_MS, timer.getMaxTickLagMs());
+    assertEquals(0, timer.getPendingTimers());
+  }
+
+  @Test
+  public void newTimeout_afterAnIdlePeriod_measuredFromNow() {
+    timer.newTimeout(record("first"), TICK_MS);
+    advanceTo(TICK_MS);
+    timer.tick();
+
+    advanceTo(1000 * TICK_MS);
+    timer.newTimeout(record("second"), 2 * TICK_MS);
+    advanceTo(1001 * TICK_MS);
+    timer.tick();
+    assertEquals(Arrays.asList("first"), events);
+
+    advanceTo(1002 * TICK_MS);
+    timer.tick();
+    assertEquals(Arrays.asList("first", "second"), events);
+    assertEquals(2, executor.scheduledTicks);
+  }
+
+  private void advanceTo(long ms) {
+    ticker.nanos = TimeUnit.MILLISECONDS.toNanos(ms);
+  }
+
+  private void advanceNanos(long nanos) {
+    ticker.nanos += nanos;
+  }
+
+  private TimeoutHandler record(final String event) {
+    return new TimeoutHandler() {
+      public void onTimeout() {
+        events.add(event);
+      }
+    };
+  }
+
+  private static class FakeTicker extends Ticker {
+    long nanos = 0;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+
+  /** Doesn't run the tick task, which the tests run with tick() instead. */
+  private static class ManualExecutor extends ScheduledThreadPoolExecutor {
+    int scheduledTicks = 0;
+
+    ManualExecutor() {
+      super(1);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(
+        Runnable command, long initialDelay, long period, TimeUnit unit) {
+      scheduledTicks++;
+      return schedule(command, 1, TimeUnit.DAYS);
+    }
+  }
+}
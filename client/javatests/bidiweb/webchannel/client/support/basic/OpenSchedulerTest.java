@@ -0,0 +1,83 @@
+package bidiweb.webchannel.client.support.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import bidiweb.webchannel.client.WebChannelOptions.OpenPriority;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests of the admission of the opens by the {@link OpenScheduler}.
+ */
+@RunWith(JUnit4.class)
+public class OpenSchedulerTest {
+  /** A token every 50 ms, with a single one in the bucket. */
+  private static final double OPENS_PER_SECOND = 20;
+
+  private final List<String> opened = new CopyOnWriteArrayList<>();
+
+  private ScheduledThreadPoolExecutor timer;
+  private OpenScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    timer = new ScheduledThreadPoolExecutor(1);
+    scheduler = new OpenScheduler(timer, OPENS_PER_SECOND, 1, 0);
+  }
+
+  @After
+  public void tearDown() {
+    timer.shutdownNow();
+  }
+
+  @Test
+  public void cancel_queuedOpen_skippedWithoutTakingAToken() throws Exception {
+    scheduler.submit(record("a", null), OpenPriority.INTERACTIVE);
+    OpenScheduler.PendingOpen b = scheduler.submit(record("b", null), OpenPriority.INTERACTIVE);
+    CountDownLatch cOpened = new CountDownLatch(1);
+    scheduler.submit(record("c", cOpened), OpenPriority.INTERACTIVE);
+
+    scheduler.cancel(b);
+    assertEquals(1, scheduler.getStats().getQueuedInteractiveOpens());
+
+    // Admitted with the next token, which the cancelled open hasn't taken.
+    assertTrue(cOpened.await(10, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("a", "c"), opened);
+    OpenSchedulerStats stats = scheduler.getStats();
+    assertEquals(0, stats.getQueuedInteractiveOpens());
+    assertEquals(2, stats.getAdmittedOpens());
+  }
+
+  @Test
+  public void getStats_resetsTheMaxQueueDelay() throws Exception {
+    scheduler.submit(record("a", null), OpenPriority.BACKGROUND);
+    CountDownLatch bOpened = new CountDownLatch(1);
+    scheduler.submit(record("b", bOpened), OpenPriority.BACKGROUND);
+    assertTrue(bOpened.await(10, TimeUnit.SECONDS));
+
+    assertTrue(scheduler.getStats().getMaxQueueDelayMs() > 0);
+    assertEquals(0, scheduler.getStats().getMaxQueueDelayMs());
+  }
+
+  private Runnable record(final String open, final CountDownLatch done) {
+    return new Runnable() {
+      public void run() {
+        opened.add(open);
+        if (done != null) {
+          done.countDown();
+        }
+      }
+    };
+  }
+}